@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.robo4j.core.configuration.Configuration;
+
+/**
+ * Measures message throughput of a fan-out unit graph, with the different
+ * execution modes and pool sizes. A source unit forwards every message to a
+ * number of worker units (think a scan going to mapping, feature extraction and
+ * telemetry), each spending some CPU on every message.
+ * 
+ * <p>
+ * gradle :robo4j-core:jmh -PjmhInclude=DispatcherBenchmark
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DispatcherBenchmark {
+	private static final int BURST = 1000;
+	private static final int FAN_OUT = 3;
+	private static final int WORK_TOKENS = 200;
+
+	@Param({ "pool", "forkJoin" })
+	public String executionMode;
+
+	@Param({ "1", "2", "4" })
+	public int poolSize;
+
+	private RoboSystem system;
+	private RoboReference<Integer> source;
+	private volatile CountDownLatch latch;
+
+	private static class SourceUnit extends RoboUnit<Integer> {
+		private final List<RoboReference<Integer>> targets = new ArrayList<>();
+
+		SourceUnit(RoboContext context, String id) {
+			super(Integer.class, context, id);
+		}
+
+		@Override
+		protected void onInitialization(Configuration configuration) throws ConfigurationException {
+		}
+
+		@Override
+		public void onMessage(Integer message) {
+			for (RoboReference<Integer> target : targets) {
+				target.sendMessage(message);
+			}
+		}
+	}
+
+	private class WorkerUnit extends RoboUnit<Integer> {
+		WorkerUnit(RoboContext context, String id) {
+			super(Integer.class, context, id);
+		}
+
+		@Override
+		protected void onInitialization(Configuration configuration) throws ConfigurationException {
+		}
+
+		@Override
+		public void onMessage(Integer message) {
+			Blackhole.consumeCPU(WORK_TOKENS);
+			latch.countDown();
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		system = new RoboSystem(ExecutionMode.getByName(executionMode), poolSize, 16);
+		SourceUnit sourceUnit = new SourceUnit(system, "source");
+		system.addUnits(sourceUnit);
+		for (int i = 0; i < FAN_OUT; i++) {
+			WorkerUnit worker = new WorkerUnit(system, "worker" + i);
+			system.addUnits(worker);
+			sourceUnit.targets.add(system.getReference(worker));
+		}
+		system.start();
+		source = system.getReference(sourceUnit);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		system.shutdown();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BURST * FAN_OUT)
+	public void fanOut() throws InterruptedException {
+		latch = new CountDownLatch(BURST * FAN_OUT);
+		for (int i = 0; i < BURST; i++) {
+			source.sendMessage(i);
+		}
+		latch.await();
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TransferQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the lock free {@link CoreBusQueue} with the previous, lock based,
+ * implementation. Three producers offer commands of mixed priorities, while a
+ * single consumer polls.
+ * 
+ * <p>
+ * The consumer polls rather than takes, since a consumer blocked in take would
+ * never see the end of the iteration. Both queues are unbounded, and are
+ * therefore recreated for every iteration.
+ * 
+ * <p>
+ * gradle :robo4j-core:jmh -PjmhInclude=CoreBusQueueBenchmark
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CoreBusQueueBenchmark {
+	private static final int PRIORITIES = 3;
+	private static final Entry[] ENTRIES = { new Entry(0), new Entry(1), new Entry(2) };
+
+	@Param({ "legacy", "lanes" })
+	public String queueType;
+
+	private TransferQueue<Entry> queue;
+
+	private static class Command implements TransferSignal, Comparable<Command> {
+		private final int priority;
+
+		Command(int priority) {
+			this.priority = priority;
+		}
+
+		@Override
+		public int compareTo(Command other) {
+			return Integer.compare(priority, other.priority);
+		}
+	}
+
+	private static class Entry extends QueueFIFOEntry<Command> {
+		Entry(int priority) {
+			super(new Command(priority));
+		}
+	}
+
+	private static class LaneQueue extends CoreBusQueue<Entry> {
+		private static final long serialVersionUID = 1L;
+
+		LaneQueue() {
+			super(1, PRIORITIES);
+		}
+
+		@Override
+		protected int getPriority(Entry element) {
+			return element.getEntry().priority;
+		}
+	}
+
+	private static class LegacyQueue extends LegacyCoreBusQueue<Entry> {
+		private static final long serialVersionUID = 1L;
+
+		LegacyQueue() {
+			super(1);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ProducerState {
+		private int next;
+
+		Entry nextEntry() {
+			next = (next + 1) % PRIORITIES;
+			return ENTRIES[next];
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		switch (queueType) {
+		case "legacy":
+			queue = new LegacyQueue();
+			break;
+		case "lanes":
+			queue = new LaneQueue();
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown queue type " + queueType);
+		}
+	}
+
+	@Benchmark
+	@Group("mpsc")
+	@GroupThreads(3)
+	public boolean offer(ProducerState state) {
+		return queue.offer(state.nextEntry());
+	}
+
+	@Benchmark
+	@Group("mpsc")
+	@GroupThreads(1)
+	public Entry poll() {
+		return queue.poll();
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link RingBufferMailbox} with the LinkedBlockingQueue which
+ * used to back the system work queue. Three producers offer, and a single
+ * consumer polls, just like when a bunch of units send to one unit.
+ * 
+ * <p>
+ * Both queues are bounded to the same capacity, so that the benchmark does not
+ * measure heap growth. Run with -prof gc to see the allocation rate of the
+ * linked queue.
+ * 
+ * <p>
+ * gradle :robo4j-core:jmh -PjmhInclude=MailboxBenchmark
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MailboxBenchmark {
+	private static final Integer MESSAGE = 42;
+
+	@Param({ "systemQueue", "ring" })
+	public String mailboxType;
+
+	@Param({ "1024" })
+	public int capacity;
+
+	private Mailbox<Integer> mailbox;
+
+	/**
+	 * The way the system work queue was used, adapted to the mailbox
+	 * interface.
+	 */
+	private static class BlockingQueueMailbox<T> implements Mailbox<T> {
+		private final LinkedBlockingQueue<T> queue;
+
+		BlockingQueueMailbox(int capacity) {
+			queue = new LinkedBlockingQueue<>(capacity);
+		}
+
+		@Override
+		public boolean offer(T message) {
+			return queue.offer(message);
+		}
+
+		@Override
+		public T poll() {
+			return queue.poll();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return queue.isEmpty();
+		}
+
+		@Override
+		public int size() {
+			return queue.size();
+		}
+
+		@Override
+		public long getDroppedCount() {
+			return 0;
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		switch (mailboxType) {
+		case "systemQueue":
+			mailbox = new BlockingQueueMailbox<>(capacity);
+			break;
+		case "ring":
+			mailbox = new RingBufferMailbox<>(capacity);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown mailbox type " + mailboxType);
+		}
+	}
+
+	@Benchmark
+	@Group("mpsc")
+	@GroupThreads(3)
+	public boolean offer() {
+		return mailbox.offer(MESSAGE);
+	}
+
+	@Benchmark
+	@Group("mpsc")
+	@GroupThreads(1)
+	public Integer poll() {
+		return mailbox.poll();
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures creating {@link QueueFIFOEntry} instances from four producers, each
+ * producing for a queue of its own. Compares stamping with one sequence
+ * shared by all producers, as the former global sequence, to stamping with
+ * the sequence of the queue.
+ * 
+ * <p>
+ * gradle :robo4j-core:jmh -PjmhInclude=QueueFIFOEntryBenchmark
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Threads(4)
+@Fork(1)
+public class QueueFIFOEntryBenchmark {
+	private static final Command COMMAND = new Command();
+
+	private static class Command implements TransferSignal, Comparable<Command> {
+		@Override
+		public int compareTo(Command other) {
+			return 0;
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class SharedState {
+		private final AtomicLong sequence = new PaddedSequence();
+	}
+
+	@State(Scope.Thread)
+	public static class QueueState {
+		private final AtomicLong sequence = new PaddedSequence();
+	}
+
+	@Benchmark
+	public QueueFIFOEntry<Command> globalSequence(SharedState shared) {
+		return new QueueFIFOEntry<>(COMMAND, shared.sequence);
+	}
+
+	@Benchmark
+	public QueueFIFOEntry<Command> queueSequence(QueueState queue) {
+		return new QueueFIFOEntry<>(COMMAND, queue.sequence);
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.robo4j.core.ConfigurationException;
+import com.robo4j.core.RoboContext;
+import com.robo4j.core.RoboSystem;
+import com.robo4j.core.RoboUnit;
+import com.robo4j.core.configuration.Configuration;
+import com.robo4j.core.configuration.ConfigurationFactory;
+
+/**
+ * Measures scheduling and cancelling a periodic message while a number of
+ * other periodic messages are scheduled, think one per sensor, servo and
+ * watchdog. The scheduled messages are sent to a unit which does nothing.
+ * 
+ * <p>
+ * gradle :robo4j-core:jmh -PjmhInclude=SchedulerBenchmark
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SchedulerBenchmark {
+	private static final String MESSAGE = "tick";
+
+	@Param({ SchedulerFactory.SCHEDULER_DEFAULT, SchedulerFactory.SCHEDULER_TIMING_WHEEL })
+	public String schedulerType;
+
+	@Param({ "10000" })
+	public int schedules;
+
+	private RoboSystem system;
+	private Scheduler scheduler;
+	private IdleUnit target;
+	private final List<ScheduledFuture<?>> background = new ArrayList<>();
+
+	private static class IdleUnit extends RoboUnit<String> {
+		IdleUnit(RoboContext context, String id) {
+			super(String.class, context, id);
+		}
+
+		@Override
+		protected void onInitialization(Configuration configuration) throws ConfigurationException {
+		}
+
+		@Override
+		public void onMessage(String message) {
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		system = new RoboSystem();
+		target = new IdleUnit(system, "idle");
+		system.addUnits(target);
+		system.start();
+		Configuration configuration = ConfigurationFactory.createEmptyConfiguration();
+		configuration.setString(SchedulerFactory.CONFIGURATION_KEY_TYPE, schedulerType);
+		scheduler = SchedulerFactory.create(system, configuration);
+		// Spread over a second, with periods from 100 ms to a second
+		for (int i = 0; i < schedules; i++) {
+			background.add(scheduler.schedule(target, MESSAGE, i % 1000, 100 + i % 900, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		background.forEach(future -> future.cancel(false));
+		background.clear();
+		scheduler.shutdown();
+		system.shutdown();
+	}
+
+	@Benchmark
+	public boolean scheduleAndCancel() {
+		return scheduler.schedule(target, MESSAGE, 500, 500, TimeUnit.MILLISECONDS).cancel(false);
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the latest published values of the attributes of a unit. Reads never
+ * block, and neither do updates of an attribute once it has been published
+ * the first time.
+ * 
+ * <p>
+ * Attributes are keyed on name. A value is only returned if the type of the
+ * requested descriptor matches the type it was published with.
+ * 
+ * <p>
+ * Subscriptions are notified of every published value, on the publishing
+ * thread, and drop values older than the last one they delivered. Versions
+ * keep increasing when an attribute is removed and published again.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public final class AttributeStore {
+	// Marks a removed attribute, keeping its version
+	private static final AttributeDescriptor<Void> REMOVED = DefaultAttributeDescriptor.create(Void.class, "removed");
+	private final ConcurrentMap<String, AtomicReference<AttributeValue<?>>> values = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, List<AttributeSubscription<?>>> subscriptions = new ConcurrentHashMap<>();
+
+	/**
+	 * Publishes a new value for the attribute.
+	 * 
+	 * @param descriptor
+	 *            the descriptor of the attribute.
+	 * @param value
+	 *            the new value. May be null.
+	 * @return the published value.
+	 */
+	public <T> AttributeValue<T> publish(AttributeDescriptor<T> descriptor, T value) {
+		AtomicReference<AttributeValue<?>> reference = values.computeIfAbsent(descriptor.getAttributeName(),
+				name -> new AtomicReference<>());
+		while (true) {
+			AttributeValue<?> current = reference.get();
+			AttributeValue<T> next = new AttributeValue<>(descriptor, value,
+					current == null ? 1 : current.getVersion() + 1);
+			if (reference.compareAndSet(current, next)) {
+				notifySubscriptions(next);
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * Returns the latest published value of the attribute.
+	 * 
+	 * @param descriptor
+	 *            the descriptor of the attribute.
+	 * @return the latest value, or null if no value of the requested type has
+	 *         been published.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> AttributeValue<T> get(AttributeDescriptor<T> descriptor) {
+		AtomicReference<AttributeValue<?>> reference = values.get(descriptor.getAttributeName());
+		if (reference == null) {
+			return null;
+		}
+		AttributeValue<?> value = reference.get();
+		if (value == null || value.getDescriptor() == REMOVED
+				|| value.getDescriptor().getAttributeType() != descriptor.getAttributeType()) {
+			return null;
+		}
+		return (AttributeValue<T>) value;
+	}
+
+	/**
+	 * Removes the published value of the attribute, so that it is computed on
+	 * demand again.
+	 * 
+	 * @param descriptor
+	 *            the descriptor of the attribute.
+	 */
+	public void remove(AttributeDescriptor<?> descriptor) {
+		AtomicReference<AttributeValue<?>> reference = values.get(descriptor.getAttributeName());
+		if (reference == null) {
+			return;
+		}
+		while (true) {
+			AttributeValue<?> current = reference.get();
+			if (current == null || current.getDescriptor() == REMOVED
+					|| reference.compareAndSet(current, new AttributeValue<>(REMOVED, null, current.getVersion() + 1))) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Adds a subscription, and immediately notifies it of the current value,
+	 * if one has been published.
+	 * 
+	 * @param subscription
+	 *            the subscription to add.
+	 */
+	void subscribe(AttributeSubscription<?> subscription) {
+		subscriptions.computeIfAbsent(subscription.getDescriptor().getAttributeName(),
+				name -> new CopyOnWriteArrayList<>()).add(subscription);
+		AttributeValue<?> current = get(subscription.getDescriptor());
+		if (current != null) {
+			notifySubscription(subscription, current);
+		}
+	}
+
+	void unsubscribe(AttributeSubscription<?> subscription) {
+		List<AttributeSubscription<?>> list = subscriptions.get(subscription.getDescriptor().getAttributeName());
+		if (list != null) {
+			list.remove(subscription);
+		}
+	}
+
+	private void notifySubscriptions(AttributeValue<?> value) {
+		List<AttributeSubscription<?>> list = subscriptions.get(value.getDescriptor().getAttributeName());
+		if (list != null) {
+			for (AttributeSubscription<?> subscription : list) {
+				notifySubscription(subscription, value);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> void notifySubscription(AttributeSubscription<T> subscription, AttributeValue<?> value) {
+		if (subscription.getDescriptor().getAttributeType() == value.getDescriptor().getAttributeType()) {
+			subscription.onPublish((AttributeValue<T>) value);
+		}
+	}
+}
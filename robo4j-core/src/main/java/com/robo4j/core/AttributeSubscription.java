@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import com.robo4j.core.scheduler.Scheduler;
+
+/**
+ * A subscription to the changes of a published attribute, see
+ * {@link RoboReference#subscribe(AttributeDescriptor, RoboReference, long, TimeUnit, double)}.
+ * New values are sent as messages to the subscriber.
+ * 
+ * <p>
+ * Values published less than the minimum interval after the last delivered
+ * one are coalesced; only the latest is delivered, once the interval has
+ * passed. Numeric values which differ less than the deadband from the last
+ * delivered value are not delivered at all. Values older than the last one
+ * delivered, by {@link AttributeValue#getVersion()}, are dropped, so that
+ * values published concurrently are never delivered out of order.
+ * 
+ * <p>
+ * Values are sent to the subscriber without holding any lock, one at a time,
+ * by the publishing thread which first finds values to send.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public final class AttributeSubscription<T> {
+	private final AttributeStore store;
+	private final AttributeDescriptor<T> descriptor;
+	private final RoboReference<T> subscriber;
+	private final Scheduler scheduler;
+	private final long minIntervalNanos;
+	private final double deadband;
+	private volatile boolean cancelled;
+
+	// Guarded by this
+	private boolean delivered;
+	private T lastDelivered;
+	private long lastDeliveryTime;
+	private long lastVersion;
+	private AttributeValue<T> pending;
+	private boolean flushScheduled;
+	private final Queue<AttributeValue<T>> outgoing = new ArrayDeque<>();
+	private boolean sending;
+
+	AttributeSubscription(AttributeStore store, AttributeDescriptor<T> descriptor, RoboReference<T> subscriber,
+			Scheduler scheduler, long minIntervalNanos, double deadband) {
+		this.store = store;
+		this.descriptor = descriptor;
+		this.subscriber = subscriber;
+		this.scheduler = scheduler;
+		this.minIntervalNanos = minIntervalNanos;
+		this.deadband = deadband;
+	}
+
+	/**
+	 * @return the descriptor of the attribute subscribed to.
+	 */
+	public AttributeDescriptor<T> getDescriptor() {
+		return descriptor;
+	}
+
+	/**
+	 * @return the subscriber the values are sent to.
+	 */
+	public RoboReference<T> getSubscriber() {
+		return subscriber;
+	}
+
+	/**
+	 * Cancels the subscription. No values are delivered after this returns,
+	 * apart from a value already being sent.
+	 */
+	public void cancel() {
+		synchronized (this) {
+			cancelled = true;
+			pending = null;
+			outgoing.clear();
+		}
+		store.unsubscribe(this);
+	}
+
+	/**
+	 * @return true if the subscription has been cancelled.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	void onPublish(AttributeValue<T> value) {
+		long delay;
+		synchronized (this) {
+			if (cancelled || isStale(value)) {
+				return;
+			}
+			if (!isOutsideDeadband(value.getValue())) {
+				// Whatever is pending is older, and the subscriber already
+				// has a value close enough
+				pending = null;
+				return;
+			}
+			long now = System.nanoTime();
+			delay = delivered ? lastDeliveryTime + minIntervalNanos - now : 0;
+			if (delay > 0) {
+				pending = value;
+				if (flushScheduled) {
+					return;
+				}
+				flushScheduled = true;
+			} else if (!accept(value, now)) {
+				return;
+			}
+		}
+		if (delay > 0) {
+			scheduler.schedule(this::flush, delay, TimeUnit.NANOSECONDS);
+		} else {
+			send();
+		}
+	}
+
+	private void flush() {
+		synchronized (this) {
+			flushScheduled = false;
+			if (cancelled || pending == null) {
+				return;
+			}
+			AttributeValue<T> value = pending;
+			pending = null;
+			if (!accept(value, System.nanoTime())) {
+				return;
+			}
+		}
+		send();
+	}
+
+	private boolean isStale(AttributeValue<T> value) {
+		return value.getVersion() <= lastVersion || (pending != null && value.getVersion() <= pending.getVersion());
+	}
+
+	/**
+	 * Queues the value to be sent. Called holding the lock.
+	 * 
+	 * @return true if the caller is to send the queued values, false if
+	 *         another thread already is.
+	 */
+	private boolean accept(AttributeValue<T> value, long now) {
+		delivered = true;
+		lastDelivered = value.getValue();
+		lastDeliveryTime = now;
+		lastVersion = value.getVersion();
+		outgoing.add(value);
+		if (sending) {
+			return false;
+		}
+		sending = true;
+		return true;
+	}
+
+	private void send() {
+		while (true) {
+			AttributeValue<T> value;
+			synchronized (this) {
+				value = outgoing.poll();
+				if (value == null) {
+					sending = false;
+					return;
+				}
+			}
+			try {
+				subscriber.sendMessage(value.getValue());
+			} catch (RuntimeException e) {
+				synchronized (this) {
+					sending = false;
+				}
+				throw e;
+			}
+		}
+	}
+
+	private boolean isOutsideDeadband(T value) {
+		if (!delivered || deadband <= 0 || !(value instanceof Number) || !(lastDelivered instanceof Number)) {
+			return true;
+		}
+		return Math.abs(((Number) value).doubleValue() - ((Number) lastDelivered).doubleValue()) >= deadband;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core;
+
+/**
+ * An immutable, versioned snapshot of a published attribute value.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ * 
+ * @see AttributeStore
+ */
+public final class AttributeValue<T> {
+	private final AttributeDescriptor<T> descriptor;
+	private final T value;
+	private final long version;
+
+	AttributeValue(AttributeDescriptor<T> descriptor, T value, long version) {
+		this.descriptor = descriptor;
+		this.value = value;
+		this.version = version;
+	}
+
+	/**
+	 * @return the descriptor of the attribute.
+	 */
+	public AttributeDescriptor<T> getDescriptor() {
+		return descriptor;
+	}
+
+	/**
+	 * @return the value of the attribute. May be null.
+	 */
+	public T getValue() {
+		return value;
+	}
+
+	/**
+	 * @return the version of the value, starting at 1 and increasing by one for
+	 *         every value published for the attribute.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s [name=%s, version=%d, value=%s]", getClass().getSimpleName(),
+				descriptor.getAttributeName(), version, value);
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import com.robo4j.core.logging.SimpleLoggingUtil;
+
+/**
+ * The dependencies between a set of units, see
+ * {@link RoboUnit#getDependencies()}, used to start and stop units in
+ * parallel, while still starting a unit after the units it depends on.
+ * Dependencies on units outside of the set are ignored, and dependency
+ * cycles are broken.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+final class DependencyGraph {
+	private final List<RoboUnit<?>> units;
+	private final Map<RoboUnit<?>, List<RoboUnit<?>>> dependencies = new HashMap<>();
+	private final Map<RoboUnit<?>, List<RoboUnit<?>>> dependents = new HashMap<>();
+
+	DependencyGraph(Collection<RoboUnit<?>> units) {
+		this.units = new ArrayList<>(units);
+		Map<String, RoboUnit<?>> unitsById = new HashMap<>();
+		for (RoboUnit<?> unit : this.units) {
+			unitsById.put(unit.getId(), unit);
+			dependencies.put(unit, new ArrayList<>());
+			dependents.put(unit, new ArrayList<>());
+		}
+		for (RoboUnit<?> unit : this.units) {
+			for (String id : unit.getDependencies()) {
+				RoboUnit<?> dependency = unitsById.get(id);
+				if (dependency != null && dependency != unit && !dependencies.get(unit).contains(dependency)) {
+					dependencies.get(unit).add(dependency);
+					dependents.get(dependency).add(unit);
+				}
+			}
+		}
+		breakCycles();
+	}
+
+	/**
+	 * Runs the action for every unit, each on the executor, once the action
+	 * has completed for all the units it depends on. Returns when the action
+	 * has completed for all units.
+	 * 
+	 * @param executor
+	 *            the executor to run the actions on.
+	 * @param reverse
+	 *            if true, the action for a unit is instead run once it has
+	 *            completed for all units depending on it, e.g. when stopping.
+	 * @param action
+	 *            the action to run.
+	 * @throws RuntimeException
+	 *             the first exception thrown by an action, or by the executor
+	 *             when rejecting one, once the action has been run, or
+	 *             rejected, for all units.
+	 */
+	void traverse(Executor executor, boolean reverse, Consumer<RoboUnit<?>> action) throws InterruptedException {
+		Map<RoboUnit<?>, List<RoboUnit<?>>> before = reverse ? dependents : dependencies;
+		Map<RoboUnit<?>, List<RoboUnit<?>>> after = reverse ? dependencies : dependents;
+		Map<RoboUnit<?>, AtomicInteger> pending = new HashMap<>();
+		for (RoboUnit<?> unit : units) {
+			pending.put(unit, new AtomicInteger(before.get(unit).size()));
+		}
+		CountDownLatch done = new CountDownLatch(units.size());
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		Consumer<RoboUnit<?>> run = new Consumer<RoboUnit<?>>() {
+			@Override
+			public void accept(RoboUnit<?> unit) {
+				try {
+					executor.execute(() -> {
+						try {
+							action.accept(unit);
+						} catch (RuntimeException e) {
+							fail(unit, e);
+						} finally {
+							complete(unit);
+						}
+					});
+				} catch (RuntimeException e) {
+					// Rejected, e.g. by an executor shut down, counted as done
+					fail(unit, e);
+					complete(unit);
+				}
+			}
+
+			private void fail(RoboUnit<?> unit, RuntimeException e) {
+				SimpleLoggingUtil.error(getClass(), "Failed to process the unit " + unit.getId(), e);
+				if (!failure.compareAndSet(null, e)) {
+					failure.get().addSuppressed(e);
+				}
+			}
+
+			private void complete(RoboUnit<?> unit) {
+				// A failed unit does not hold up the others
+				for (RoboUnit<?> next : after.get(unit)) {
+					if (pending.get(next).decrementAndGet() == 0) {
+						accept(next);
+					}
+				}
+				done.countDown();
+			}
+		};
+		for (RoboUnit<?> unit : units) {
+			if (before.get(unit).isEmpty()) {
+				run.accept(unit);
+			}
+		}
+		done.await();
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+	}
+
+	/**
+	 * Removes the dependencies between units taking part in a cycle, keeping
+	 * their dependencies on other units.
+	 */
+	private void breakCycles() {
+		Map<RoboUnit<?>, Integer> remaining = new HashMap<>();
+		Deque<RoboUnit<?>> ready = new ArrayDeque<>();
+		for (RoboUnit<?> unit : units) {
+			remaining.put(unit, dependencies.get(unit).size());
+			if (dependencies.get(unit).isEmpty()) {
+				ready.add(unit);
+			}
+		}
+		Set<RoboUnit<?>> ordered = new HashSet<>();
+		while (!ready.isEmpty()) {
+			RoboUnit<?> unit = ready.poll();
+			ordered.add(unit);
+			for (RoboUnit<?> next : dependents.get(unit)) {
+				if (remaining.merge(next, -1, Integer::sum) == 0) {
+					ready.add(next);
+				}
+			}
+		}
+		if (ordered.size() == units.size()) {
+			return;
+		}
+		// An edge is part of a cycle if the dependency can reach back
+		Map<RoboUnit<?>, Set<RoboUnit<?>>> reachable = new HashMap<>();
+		for (RoboUnit<?> unit : units) {
+			if (!ordered.contains(unit)) {
+				reachable.put(unit, getReachable(unit, ordered));
+			}
+		}
+		for (RoboUnit<?> unit : reachable.keySet()) {
+			if (dependencies.get(unit).removeIf(
+					dependency -> !ordered.contains(dependency) && reachable.get(dependency).contains(unit))) {
+				SimpleLoggingUtil.error(getClass(), "The unit " + unit.getId()
+						+ " is part of a dependency cycle, ignoring its dependencies within the cycle");
+			}
+			dependents.get(unit).removeIf(
+					dependent -> !ordered.contains(dependent) && reachable.get(unit).contains(dependent));
+		}
+	}
+
+	private Set<RoboUnit<?>> getReachable(RoboUnit<?> start, Set<RoboUnit<?>> ordered) {
+		Set<RoboUnit<?>> result = new HashSet<>();
+		Deque<RoboUnit<?>> stack = new ArrayDeque<>();
+		stack.push(start);
+		while (!stack.isEmpty()) {
+			for (RoboUnit<?> dependency : dependencies.get(stack.pop())) {
+				if (!ordered.contains(dependency) && result.add(dependency)) {
+					stack.push(dependency);
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core;
+
+/**
+ * The way a {@link RoboSystem} executes the message handling of its units.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public enum ExecutionMode {
+	/**
+	 * A fixed size pool of platform threads. This is the default.
+	 */
+	POOL("pool"),
+	/**
+	 * Every scheduler turn of a unit mailbox gets a virtual thread of its own,
+	 * so that units blocking in onMessage do not starve the other units. Falls
+	 * back to an elastic pool of platform threads on JVMs without virtual
+	 * threads.
+	 */
+	VIRTUAL("virtual"),
+	/**
+	 * A work stealing fork join pool in async mode. Mailbox turns scheduled
+	 * from within the pool are forked onto the local queue of the scheduling
+	 * worker, and idle workers steal them, which balances fan-out bursts
+	 * across all cores without contending on a single shared queue.
+	 */
+	FORK_JOIN("forkJoin"),
+	/**
+	 * A pool of platform threads which is periodically resized, within
+	 * configured bounds, based on the backlog of mailbox turns and the time
+	 * spent delivering messages.
+	 */
+	ADAPTIVE("adaptive");
+
+	private final String name;
+
+	ExecutionMode(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return the name used in configurations.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Looks up the execution mode by its configuration name.
+	 * 
+	 * @param name
+	 *            the configuration name.
+	 * @return the mode.
+	 * @throws IllegalArgumentException
+	 *             if there is no such mode.
+	 */
+	public static ExecutionMode getByName(String name) {
+		for (ExecutionMode mode : values()) {
+			if (mode.name.equals(name)) {
+				return mode;
+			}
+		}
+		throw new IllegalArgumentException("Unknown execution mode " + name);
+	}
+}
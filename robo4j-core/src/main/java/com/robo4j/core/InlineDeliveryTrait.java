@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link RoboUnit} as handling its messages quickly enough, and
+ * without blocking, for them to be delivered directly on the thread sending
+ * them, such as the scheduler thread, rather than being handed to the system
+ * executor. This saves a thread handoff for every periodic control message.
+ * 
+ * <p>
+ * A message is only delivered inline if the unit is idle, that is, if no
+ * other messages are pending for it, and it is not handling one, so messages
+ * are still delivered in order, and one at a time. Inline deliveries do not
+ * nest; messages sent while handling an inline delivered message are
+ * enqueued, so that units sending to themselves, or to each other, do not
+ * recurse. The exception are the units fused into a chain by the
+ * {@link RoboBuilder}, which are delivered to inline down the chain, up to a
+ * fixed depth. Blocking units, see {@link BlockingTrait}, are never delivered
+ * to inline.
+ * 
+ * <p>
+ * Can be overridden per unit with the inlineDelivery value of the unit
+ * configuration.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ * 
+ * @see RoboUnit#CONFIGURATION_KEY_INLINE_DELIVERY
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface InlineDeliveryTrait {
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.robo4j.core.configuration.Configuration;
+import com.robo4j.core.configuration.ConfigurationFactory;
+
+/**
+ * The temporary reference handed to the target of an
+ * {@link RoboReference#ask(Function, Class, long, TimeUnit)}.
+ * The first message sent to it completes the future of the request. A reply
+ * reference has no attributes, and can not be asked; subscriptions are
+ * cancelled right away, and requests fail.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+final class ReplyReference<R> implements RoboReference<R> {
+	private final Class<R> replyType;
+	private final CompletableFuture<R> future;
+
+	ReplyReference(Class<R> replyType, CompletableFuture<R> future) {
+		this.replyType = replyType;
+		this.future = future;
+	}
+
+	@Override
+	public void sendMessage(R message) {
+		future.complete(message);
+	}
+
+	@Override
+	public Class<R> getMessageType() {
+		return replyType;
+	}
+
+	@Override
+	public Configuration getConfiguration() {
+		return ConfigurationFactory.createEmptyConfiguration();
+	}
+
+	@Override
+	public <A> Future<A> getAttribute(AttributeDescriptor<A> attribute) {
+		return CompletableFuture.completedFuture(null);
+	}
+
+	@Override
+	public Collection<AttributeDescriptor<?>> getKnownAttributes() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Future<Map<AttributeDescriptor<?>, Object>> getAttributes() {
+		return CompletableFuture.completedFuture(Collections.emptyMap());
+	}
+
+	@Override
+	public <A> AttributeSubscription<A> subscribe(AttributeDescriptor<A> attribute, RoboReference<A> subscriber,
+			long minInterval, TimeUnit unit, double deadband) {
+		// Nothing will ever be published, and nothing is scheduled
+		AttributeSubscription<A> subscription = new AttributeSubscription<>(new AttributeStore(), attribute,
+				subscriber, null, unit.toNanos(minInterval), deadband);
+		subscription.cancel();
+		return subscription;
+	}
+
+	@Override
+	public <A> CompletableFuture<A> ask(Function<RoboReference<A>, R> request, Class<A> replyType,
+			long timeout, TimeUnit unit) {
+		CompletableFuture<A> result = new CompletableFuture<>();
+		result.completeExceptionally(new UnsupportedOperationException("Reply references can not be asked"));
+		return result;
+	}
+
+	@Override
+	public <A> A getMessageAttribute(AttributeDescriptor<A> descriptor, String name) {
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "Reply to " + replyType.getSimpleName() + (future.isDone() ? " (done)" : "");
+	}
+}
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -33,21 +34,62 @@ import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import com.robo4j.core.configuration.Configuration;
+import com.robo4j.core.configuration.ConfigurationFactoryException;
 import com.robo4j.core.configuration.XmlConfigurationFactory;
 import com.robo4j.core.logging.SimpleLoggingUtil;
 
 /**
  * Builds a RoboSystem from various different sources.
  * 
+ * <p>
+ * When building, linear chains of units are fused. A unit which is the
+ * target of exactly one unit, and of no topics, gets its messages delivered
+ * directly on the thread of the sending unit whenever it is idle, without a
+ * mailbox hop, see {@link InlineDeliveryTrait}. Fusion can be disabled for
+ * the whole system with the fuseChains system configuration key, or for a
+ * single unit by setting its inlineDelivery configuration key to false.
+ * 
+ * <p>
+ * Units declared with lazy="true" in the xml are not instantiated nor
+ * initialized until they are first looked up, see
+ * {@link RoboSystem#addLazyUnit(String, java.util.concurrent.Callable)}. Since
+ * a topic can not look up its subscribers, units subscribing to topics are
+ * always created up front.
+ * 
  * @author Marcus Hirt (@hirt)
  * @author Miroslav Wengner (@miragemiko)
  */
 public final class RoboBuilder {
+	/**
+	 * System configuration key. Set to false to not fuse linear chains of
+	 * units. Defaults to true.
+	 */
+	public static final String CONFIGURATION_KEY_FUSE_CHAINS = "fuseChains";
+	/**
+	 * The unit configuration key naming the unit a unit sends its messages
+	 * to, by convention.
+	 */
+	public static final String CONFIGURATION_KEY_TARGET = "target";
+
 	private final Set<RoboUnit<?>> units = new HashSet<>();
-	private final RoboSystem system = new RoboSystem();
+	private final Map<String, LazyUnit> lazyUnits = new HashMap<>();
+	private final RoboSystem system;
+	private final boolean fuseChains;
+
+	private static class LazyUnit {
+		private final Class<RoboUnit<?>> roboUnitClass;
+		private final Configuration configuration;
+		private boolean fused;
+
+		LazyUnit(Class<RoboUnit<?>> roboUnitClass, Configuration configuration) {
+			this.roboUnitClass = roboUnitClass;
+			this.configuration = configuration;
+		}
+	}
 
 	private class RoboXMLHandler extends DefaultHandler {
 		private String currentId = "";
+		private boolean currentLazy;
 		private String currentClassName = "";
 		private String currentConfiguration = "";
 		private String lastElement = "";
@@ -59,6 +101,7 @@ public final class RoboBuilder {
 			switch (qName) {
 			case "roboUnit":
 				currentId = attributes.getValue("id");
+				currentLazy = Boolean.parseBoolean(attributes.getValue("lazy"));
 				break;
 			case XmlConfigurationFactory.ELEMENT_CONFIG:
 				currentConfiguration = "";
@@ -84,7 +127,12 @@ public final class RoboBuilder {
 								.getContextClassLoader().loadClass(currentClassName.trim());
 						Configuration config = currentConfiguration.trim().equals("") ? null
 								: XmlConfigurationFactory.fromXml(currentConfiguration);
-						internalAddUnit(instantiateAndInitialize(roboUnitClass, currentId.trim(), config));
+						if (currentLazy && (config == null
+								|| config.getString(RoboUnit.CONFIGURATION_KEY_TOPICS, null) == null)) {
+							internalAddLazyUnit(currentId.trim(), roboUnitClass, config);
+						} else {
+							internalAddUnit(instantiateAndInitialize(roboUnitClass, currentId.trim(), config));
+						}
 					} catch (Exception e) {
 						throw new SAXException("Failed to parse robo unit", e);
 					}
@@ -127,6 +175,7 @@ public final class RoboBuilder {
 
 		private void clearCurrentVariables() {
 			currentId = "";
+			currentLazy = false;
 			currentClassName = "";
 			currentConfiguration = null;
 			currentConfiguration = "";
@@ -148,6 +197,35 @@ public final class RoboBuilder {
 		}
 	}
 
+	/**
+	 * Creates a builder for a {@link RoboSystem} with the default settings.
+	 */
+	public RoboBuilder() {
+		system = new RoboSystem();
+		fuseChains = true;
+	}
+
+	/**
+	 * Creates a builder for a {@link RoboSystem} configured by the provided
+	 * system configuration, for example selecting the execution mode.
+	 * 
+	 * @param systemConfiguration
+	 *            the xml containing the system configuration.
+	 * @throws RoboBuilderException
+	 *             if the configuration could not be read.
+	 * 
+	 * @see RoboSystem#RoboSystem(Configuration)
+	 */
+	public RoboBuilder(InputStream systemConfiguration) throws RoboBuilderException {
+		try {
+			Configuration configuration = XmlConfigurationFactory.fromXml(systemConfiguration);
+			system = new RoboSystem(configuration);
+			fuseChains = configuration.getBoolean(CONFIGURATION_KEY_FUSE_CHAINS, true);
+		} catch (ConfigurationFactoryException | IllegalArgumentException e) {
+			throw new RoboBuilderException("Could not initialize the system from xml", e);
+		}
+	}
+
 	/**
 	 * Adds a Robo4J unit to the builder.
 	 * 
@@ -208,7 +286,15 @@ public final class RoboBuilder {
 	 * @return the RoboContext.
 	 */
 	public RoboContext build() {
+		if (fuseChains) {
+			fuseChains();
+		}
 		system.addUnits(units);
+		lazyUnits.forEach((id, lazyUnit) -> system.addLazyUnit(id, () -> {
+			RoboUnit<?> unit = instantiateAndInitialize(lazyUnit.roboUnitClass, id, lazyUnit.configuration);
+			unit.setFused(lazyUnit.fused);
+			return unit;
+		}));
 		return system;
 	}
 
@@ -242,10 +328,60 @@ public final class RoboBuilder {
 		throw new UnsupportedOperationException("Not yet supported");
 	}
 
+	/**
+	 * Fuses every unit with its sender, when it has exactly one. Since fused
+	 * units only get inline deliveries when idle, messages from senders not
+	 * known to the builder, such as the scheduler, are still safe.
+	 */
+	private void fuseChains() {
+		Map<String, RoboUnit<?>> unitsById = new HashMap<>();
+		Map<String, Configuration> configurations = new HashMap<>();
+		for (RoboUnit<?> unit : units) {
+			unitsById.put(unit.getId(), unit);
+			configurations.put(unit.getId(), unit.getConfiguration());
+		}
+		lazyUnits.forEach((id, lazyUnit) -> configurations.put(id, lazyUnit.configuration));
+		Map<String, Integer> senders = new HashMap<>();
+		for (Configuration configuration : configurations.values()) {
+			String target = getTarget(configuration);
+			if (target != null) {
+				senders.merge(target, 1, Integer::sum);
+			}
+		}
+		for (Map.Entry<String, Configuration> entry : configurations.entrySet()) {
+			String target = getTarget(entry.getValue());
+			if (target == null || target.equals(entry.getKey()) || senders.get(target) != 1) {
+				continue;
+			}
+			RoboUnit<?> next = unitsById.get(target);
+			if (next != null && !next.isBlocking() && next.getConfiguredTopics().length == 0) {
+				SimpleLoggingUtil.debug(getClass(), "Fusing " + entry.getKey() + " -> " + target);
+				next.setFused(true);
+			} else if (lazyUnits.containsKey(target)) {
+				// Lazy units never subscribe to topics, and blocking ones
+				// ignore inline delivery
+				SimpleLoggingUtil.debug(getClass(), "Fusing " + entry.getKey() + " -> " + target);
+				lazyUnits.get(target).fused = true;
+			}
+		}
+	}
+
+	private static String getTarget(Configuration configuration) {
+		return configuration == null ? null : configuration.getString(CONFIGURATION_KEY_TARGET, null);
+	}
+
+	private void internalAddLazyUnit(String id, Class<RoboUnit<?>> roboUnitClass, Configuration configuration)
+			throws RoboBuilderException {
+		if (lazyUnits.containsKey(id) || units.stream().anyMatch(unit -> unit.getId().equals(id))) {
+			throw new RoboBuilderException("Only one unit with the id " + id + " can be active at a time.");
+		}
+		lazyUnits.put(id, new LazyUnit(roboUnitClass, configuration));
+	}
+
 	private void internalAddUnit(RoboUnit<?> unit) throws RoboBuilderException {
 		if (unit == null) {
 			throw new RoboBuilderException("Cannot add the null unit! Skipping");
-		} else if (units.contains(unit)) {
+		} else if (units.contains(unit) || lazyUnits.containsKey(unit.getId())) {
 			throw new RoboBuilderException("Only one unit with the id " + unit.getId()
 					+ " can be active at a time. Skipping " + unit.toString());
 		}
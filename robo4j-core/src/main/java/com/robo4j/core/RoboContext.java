@@ -17,7 +17,9 @@
 package com.robo4j.core;
 
 import java.util.Collection;
+import java.util.concurrent.ExecutorService;
 
+import com.robo4j.core.concurrency.ExecutorRegistry;
 import com.robo4j.core.scheduler.Scheduler;
 
 /**
@@ -65,4 +67,32 @@ public interface RoboContext {
 	 * @return the system scheduler.
 	 */
 	Scheduler getScheduler();
+
+	/**
+	 * Returns one of the executors shared by the units of the system, e.g.
+	 * {@link ExecutorRegistry#EXECUTOR_IO}. Units should use these rather than
+	 * creating thread pools of their own, and must not shut them down.
+	 * 
+	 * @param name
+	 *            the name of the executor.
+	 * @return the executor.
+	 * @throws IllegalArgumentException
+	 *             if there is no executor with that name.
+	 * 
+	 * @see ExecutorRegistry
+	 */
+	ExecutorService getExecutor(String name);
+
+	/**
+	 * Returns a named topic, creating it the first time it is asked for.
+	 * Producers publish to the topic, rather than sending to a target unit,
+	 * when the messages have several consumers.
+	 * 
+	 * @param name
+	 *            the name of the topic.
+	 * @return the topic.
+	 * 
+	 * @see Topic
+	 */
+	<T> Topic<T> getTopic(String name);
 }
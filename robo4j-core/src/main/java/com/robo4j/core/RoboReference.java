@@ -18,7 +18,10 @@ package com.robo4j.core;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import com.robo4j.core.configuration.Configuration;
 
@@ -38,6 +41,29 @@ public interface RoboReference<T> {
 	 */
 	void sendMessage(T message);
 
+	/**
+	 * Sends a message to this RoboUnit, which must be delivered within the
+	 * time to live. A message which has not been delivered in time is dropped,
+	 * and counted as the expiredMessages attribute, rather than delivered
+	 * late. Use for commands which are harmful when stale, such as movement
+	 * commands.
+	 *
+	 * <p>
+	 * The deadline also takes the message ahead of messages without one; in
+	 * a unit using a "deadline" mailbox, and, when scheduling the mailbox turn,
+	 * ahead of other units waiting for a system thread.
+	 *
+	 * @param message
+	 *            the message to send.
+	 * @param timeToLive
+	 *            the time the message may wait for delivery.
+	 * @param unit
+	 *            the unit of the time to live.
+	 */
+	default void sendMessage(T message, long timeToLive, TimeUnit unit) {
+		sendMessage(message);
+	}
+
 	/**
 	 * @return the type of messages this RoboUnit accepts. This should never
 	 *         change in runtime.
@@ -66,6 +92,69 @@ public interface RoboReference<T> {
 	 */
 	Future<Map<AttributeDescriptor<?>, Object>> getAttributes();
 
+	/**
+	 * Subscribes to the changes of an attribute. Every value published for the
+	 * attribute is sent as a message to the subscriber, starting with the
+	 * current value, if there is one. Only attributes published by the unit,
+	 * see {@link RoboUnit#publishAttribute(AttributeDescriptor, Object)}, are
+	 * pushed; attributes computed on demand must still be polled.
+	 * 
+	 * @param attribute
+	 *            the attribute to subscribe to.
+	 * @param subscriber
+	 *            the reference to send the values to.
+	 * @param minInterval
+	 *            the minimum time between two deliveries. Values published
+	 *            in between are coalesced, and only the latest one delivered.
+	 *            Zero to deliver every value.
+	 * @param unit
+	 *            the time unit of the minimum interval.
+	 * @param deadband
+	 *            for numeric attributes, the minimum change from the last
+	 *            delivered value for a new value to be delivered. Zero to
+	 *            deliver every change.
+	 * @return the subscription, which can be used to cancel it.
+	 */
+	<R> AttributeSubscription<R> subscribe(AttributeDescriptor<R> attribute, RoboReference<R> subscriber,
+			long minInterval, TimeUnit unit, double deadband);
+
+	/**
+	 * Subscribes to every change of an attribute.
+	 * 
+	 * @see #subscribe(AttributeDescriptor, RoboReference, long, TimeUnit,
+	 *      double)
+	 */
+	default <R> AttributeSubscription<R> subscribe(AttributeDescriptor<R> attribute, RoboReference<R> subscriber) {
+		return subscribe(attribute, subscriber, 0, TimeUnit.MILLISECONDS, 0);
+	}
+
+	/**
+	 * Sends a request to this RoboUnit, and returns a future completed by the
+	 * reply. The request is created by the provided function from a temporary
+	 * reply reference, which the request message must carry so that the
+	 * target can send the reply to it, see
+	 * {@link RoboUnit#reply(RoboReference, Object)}. Only the first reply is
+	 * used.
+	 * 
+	 * <p>
+	 * The future is completed on the thread of the replying unit, so
+	 * dependent stages should not block. If no reply arrives in time, the
+	 * future completes exceptionally with a
+	 * {@link java.util.concurrent.TimeoutException}.
+	 * 
+	 * @param request
+	 *            creates the request message from the reply reference.
+	 * @param replyType
+	 *            the type of the expected reply.
+	 * @param timeout
+	 *            the time to wait for the reply.
+	 * @param unit
+	 *            the time unit of the timeout.
+	 * @return the future reply.
+	 */
+	<R> CompletableFuture<R> ask(Function<RoboReference<R>, T> request, Class<R> replyType, long timeout,
+			TimeUnit unit);
+
 	/**
 	 * Attribute is used as the unit message which changes the unit state
      * @return the value of the message
@@ -16,50 +16,235 @@
  */
 package com.robo4j.core;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
+import com.robo4j.core.concurrency.AdaptivePoolController;
+import com.robo4j.core.concurrency.DeadlineMailbox;
+import com.robo4j.core.concurrency.DeadlineMessage;
+import com.robo4j.core.concurrency.DeadlineWorkQueue;
+import com.robo4j.core.concurrency.Deadlined;
+import com.robo4j.core.concurrency.ExecutorRegistry;
+import com.robo4j.core.concurrency.Mailbox;
+import com.robo4j.core.concurrency.MailboxFactory;
+import com.robo4j.core.concurrency.RoboForkJoinWorkerThreadFactory;
 import com.robo4j.core.concurrency.RoboThreadFactory;
+import com.robo4j.core.concurrency.VirtualThreads;
 import com.robo4j.core.configuration.Configuration;
 import com.robo4j.core.logging.SimpleLoggingUtil;
-import com.robo4j.core.scheduler.DefaultScheduler;
 import com.robo4j.core.scheduler.Scheduler;
+import com.robo4j.core.scheduler.SchedulerFactory;
 
 /**
  * Contains RoboUnits, RoboUnit lookup, a system level life cycle and a known
  * RoboUnit providing a system message queue.
  * 
+ * <p>
+ * Every unit has its own {@link Mailbox}, created by the
+ * {@link MailboxFactory} from the unit configuration the first time a message
+ * is sent to the unit. Sending a message enqueues it in the
+ * mailbox of the receiving unit, and schedules the mailbox with the system
+ * executor unless it is already scheduled. A scheduled mailbox is drained by
+ * one thread at a time, at most throughput messages per turn, so messages to a
+ * unit are delivered in order, and never concurrently. Units overriding
+ * {@link RoboUnit#onMessages(List)} get all messages polled in a turn as one
+ * batch. Units which block when handling messages, see {@link BlockingTrait},
+ * are drained on the shared blocking executor instead of the system executor.
+ * Messages to idle units allowing it, see {@link InlineDeliveryTrait}, are
+ * delivered directly on the sending thread.
+ * 
+ * <p>
+ * Messages sent with a time to live carry a deadline. Messages still in the
+ * mailbox when their deadline passes are dropped, and counted, instead of
+ * being delivered. In the pool and adaptive execution modes, with deadline
+ * dispatch configured, mailbox turns for messages with a deadline are taken
+ * by the system threads earliest deadline first, ahead of turns without one.
+ * 
+ * <p>
+ * Messages published on a {@link Topic} are enqueued, as the same instance,
+ * in the mailbox of every subscriber.
+ * 
+ * <p>
+ * Units can be added and removed while the system is running. Looking up
+ * units and references does not lock; adding, removing, starting and
+ * stopping are serialized. Lazy units, see
+ * {@link #addLazyUnit(String, Callable)}, are created the first time they are
+ * looked up.
+ * 
  * @author Marcus Hirt (@hirt)
  * @author Miroslav Wengner (@miragemiko)
  */
 public class RoboSystem implements RoboContext {
+	public static final String CONFIGURATION_KEY_EXECUTION_MODE = "executionMode";
+	public static final String CONFIGURATION_KEY_POOL_SIZE = "poolSize";
+	public static final String CONFIGURATION_KEY_THROUGHPUT = "throughput";
+	public static final String CONFIGURATION_KEY_MIN_POOL_SIZE = "minPoolSize";
+	public static final String CONFIGURATION_KEY_MAX_POOL_SIZE = "maxPoolSize";
+	public static final String CONFIGURATION_KEY_ADAPT_INTERVAL = "adaptInterval";
+	public static final String CONFIGURATION_KEY_LIFECYCLE_THREADS = "lifecycleThreads";
+	public static final String CONFIGURATION_KEY_DEADLINE_DISPATCH = "deadlineDispatch";
+	/**
+	 * The number of messages dropped by the mailbox of a unit. Available for
+	 * all units.
+	 */
+	public static final AttributeDescriptor<Long> ATTRIBUTE_DROPPED_MESSAGES = DefaultAttributeDescriptor
+			.create(Long.class, "droppedMessages");
+	/**
+	 * The number of messages pending in the mailbox of a unit. Available for
+	 * all units.
+	 */
+	public static final AttributeDescriptor<Integer> ATTRIBUTE_PENDING_MESSAGES = DefaultAttributeDescriptor
+			.create(Integer.class, "pendingMessages");
+	/**
+	 * The number of threads the system executor is sized to.
+	 */
+	public static final AttributeDescriptor<Integer> ATTRIBUTE_POOL_SIZE = DefaultAttributeDescriptor
+			.create(Integer.class, "poolSize");
+	/**
+	 * The number of mailbox turns waiting for a system thread. In the adaptive
+	 * execution mode, as seen when the pool was last adapted.
+	 */
+	public static final AttributeDescriptor<Integer> ATTRIBUTE_BACKLOG = DefaultAttributeDescriptor
+			.create(Integer.class, "backlog");
+	/**
+	 * The average time, in nanoseconds, spent delivering a message during the
+	 * last adaptation period. Only available in the adaptive execution mode.
+	 */
+	public static final AttributeDescriptor<Long> ATTRIBUTE_SERVICE_TIME = DefaultAttributeDescriptor
+			.create(Long.class, "serviceTime");
+	/**
+	 * The fraction of time the system threads spent delivering messages during
+	 * the last adaptation period. Only available in the adaptive execution
+	 * mode.
+	 */
+	public static final AttributeDescriptor<Double> ATTRIBUTE_UTILIZATION = DefaultAttributeDescriptor
+			.create(Double.class, "utilization");
+	/**
+	 * The last decision of the adaptive pool; hold, grow or shrink. Only
+	 * available in the adaptive execution mode.
+	 */
+	public static final AttributeDescriptor<String> ATTRIBUTE_POOL_DECISION = DefaultAttributeDescriptor
+			.create(String.class, "poolDecision");
+	/**
+	 * The number of times the adaptive pool has been resized. Only available
+	 * in the adaptive execution mode.
+	 */
+	public static final AttributeDescriptor<Long> ATTRIBUTE_POOL_ADJUSTMENTS = DefaultAttributeDescriptor
+			.create(Long.class, "poolAdjustments");
+	/**
+	 * The number of messages sent to a unit with a time to live, which were
+	 * dropped since they expired before being delivered. Available for all
+	 * units.
+	 */
+	public static final AttributeDescriptor<Long> ATTRIBUTE_EXPIRED_MESSAGES = DefaultAttributeDescriptor
+			.create(Long.class, "expiredMessages");
+	/**
+	 * The time, in nanoseconds, it took to start a unit the last time it was
+	 * started. Available for all units.
+	 */
+	public static final AttributeDescriptor<Long> ATTRIBUTE_START_TIME = DefaultAttributeDescriptor
+			.create(Long.class, "startTime");
+	private static final Collection<AttributeDescriptor<?>> MAILBOX_ATTRIBUTES = Collections
+			.unmodifiableList(Arrays.asList(ATTRIBUTE_DROPPED_MESSAGES, ATTRIBUTE_PENDING_MESSAGES,
+					ATTRIBUTE_EXPIRED_MESSAGES, ATTRIBUTE_START_TIME));
+	private static final Collection<AttributeDescriptor<?>> POOL_ATTRIBUTES = Collections
+			.unmodifiableList(Arrays.asList(ATTRIBUTE_POOL_SIZE, ATTRIBUTE_BACKLOG));
+	private static final Collection<AttributeDescriptor<?>> ADAPTIVE_POOL_ATTRIBUTES = Collections
+			.unmodifiableList(Arrays.asList(ATTRIBUTE_POOL_SIZE, ATTRIBUTE_BACKLOG, ATTRIBUTE_SERVICE_TIME,
+					ATTRIBUTE_UTILIZATION, ATTRIBUTE_POOL_DECISION, ATTRIBUTE_POOL_ADJUSTMENTS));
+	private static final String SYSTEM_THREAD_PREFIX = "Robo4J System ";
+	private static final String LIFECYCLE_THREAD_PREFIX = "Robo4J Lifecycle ";
+	// The depth of the inline deliveries on the current thread. Only fused
+	// units are delivered to inline from within an inline delivery, so that a
+	// chain runs on the sending thread, and only down to MAX_FUSED_DEPTH.
+	private static final ThreadLocal<int[]> INLINE_DELIVERY = ThreadLocal.withInitial(() -> new int[1]);
+	private static final int MAX_FUSED_DEPTH = 8;
+	// Set on the lifecycle threads, which run nested lifecycle work, such as
+	// units added by a starting unit, themselves rather than waiting for the
+	// lifecycle pool
+	private static final ThreadLocal<boolean[]> LIFECYCLE_THREAD = ThreadLocal.withInitial(() -> new boolean[1]);
 	private static final int DEFAULT_THREAD_POOL_SIZE = 2;
+	private static final int DEFAULT_THROUGHPUT = 16;
 	private static final int TERMINATION_TIMEOUT = 5;
 	private static final int KEEP_ALIVE_TIME = 10;
+	private static final int DEFAULT_MIN_POOL_SIZE = 1;
+	private static final int DEFAULT_ADAPT_INTERVAL = 1000;
+	private static final int DEFAULT_LIFECYCLE_THREADS = 4;
 	private volatile AtomicReference<LifecycleState> state = new AtomicReference<>(LifecycleState.UNINITIALIZED);
-	private final Map<String, RoboUnit<?>> units = new HashMap<>();
+	private final ConcurrentMap<String, RoboUnit<?>> units = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Callable<RoboUnit<?>>> lazyUnits = new ConcurrentHashMap<>();
+	// The lazy units being created, completed once created and started
+	private final ConcurrentMap<String, CompletableFuture<RoboUnit<?>>> lazyCreations = new ConcurrentHashMap<>();
+	// Guarded by itself
 	private final Map<RoboUnit<?>, RoboReference<?>> referenceCache = new WeakHashMap<>();
+	private final Object lifecycleLock = new Object();
+	private final Map<String, Topic<?>> topics = new ConcurrentHashMap<>();
 
-	private final ThreadPoolExecutor systemExecutor;
-	private final Scheduler scheduler = new DefaultScheduler(this);
-	private final LinkedBlockingQueue<Runnable> workQueue = new LinkedBlockingQueue<>();
+	private final ExecutorService systemExecutor;
+	private final ExecutionMode executionMode;
+	private final ExecutorRegistry executors;
+	private final AdaptivePoolController poolController;
+	private final Scheduler scheduler;
+	// Null unless deadline dispatch is configured
+	private final DeadlineWorkQueue workQueue;
 	private final String uid = UUID.randomUUID().toString();
+	private final int throughput;
+	// Null if units are started and stopped one at a time
+	private final ThreadPoolExecutor lifecycleExecutor;
 
 	private class ReferenceImplementation<T> implements RoboReference<T> {
 		private final RoboUnit<T> unit;
+		// Holds the messages, and the messages sent with a deadline wrapped in
+		// a DeadlineMessage
+		private volatile Mailbox<Object> mailbox;
+		private boolean blocking;
+		private boolean inline;
+		private boolean fused;
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		private final AtomicLong expired = new AtomicLong();
+		private volatile boolean removed;
+		private volatile long startTime;
+		private final Runnable drainTask = this::drain;
+		// Only touched while draining, i.e. by one thread at a time
+		private final List<T> batch;
+		private final List<T> batchView;
 
 		ReferenceImplementation(RoboUnit<T> unit) {
 			this.unit = unit;
+			if (unit.isBatching()) {
+				batch = new ArrayList<>(throughput);
+				batchView = Collections.unmodifiableList(batch);
+			} else {
+				batch = null;
+				batchView = null;
+			}
 		}
 
 		@Override
@@ -69,33 +254,379 @@ public class RoboSystem implements RoboContext {
 
 		@Override
 		public void sendMessage(T message) {
-			systemExecutor.submit(() -> unit.onMessage(message));
+			if (removed) {
+				return;
+			}
+			Mailbox<Object> mailbox = getMailbox();
+			if (inline && deliverInline(message, mailbox)) {
+				return;
+			}
+			// Messages rejected by a full mailbox are counted by the mailbox,
+			// and available as the droppedMessages attribute.
+			if (mailbox.offer(message)) {
+				schedule(Deadlined.NO_DEADLINE);
+			}
 		}
 
+		@Override
+		public void sendMessage(T message, long timeToLive, TimeUnit timeUnit) {
+			if (timeToLive <= 0) {
+				expired.incrementAndGet();
+				return;
+			}
+			sendMessage(new DeadlineMessage<>(message, System.nanoTime() + timeUnit.toNanos(timeToLive)));
+		}
+
+		/**
+		 * Sends a message with a deadline. The envelope is immutable, and may
+		 * be shared by several mailboxes.
+		 */
+		void sendMessage(DeadlineMessage<? extends T> envelope) {
+			if (removed) {
+				return;
+			}
+			Mailbox<Object> mailbox = getMailbox();
+			if (inline && deliverInline(envelope.getMessage(), mailbox)) {
+				return;
+			}
+			if (mailbox.offer(envelope)) {
+				schedule(envelope.getDeadline());
+			}
+		}
+
+		@SuppressWarnings("unchecked")
 		@Override
 		public <R> Future<R> getAttribute(AttributeDescriptor<R> attribute) {
+			// The mailbox attributes are maintained by the system, and published
+			// attributes by the unit, no need to go through the executor.
+			if (isAttribute(attribute, ATTRIBUTE_DROPPED_MESSAGES)) {
+				return CompletableFuture.completedFuture((R) Long.valueOf(getMailbox().getDroppedCount()));
+			} else if (isAttribute(attribute, ATTRIBUTE_PENDING_MESSAGES)) {
+				return CompletableFuture.completedFuture((R) Integer.valueOf(getMailbox().size()));
+			} else if (isAttribute(attribute, ATTRIBUTE_EXPIRED_MESSAGES)) {
+				return CompletableFuture.completedFuture((R) Long.valueOf(expired.get()));
+			} else if (isAttribute(attribute, ATTRIBUTE_START_TIME)) {
+				return CompletableFuture.completedFuture((R) Long.valueOf(startTime));
+			}
+			AttributeValue<R> published = unit.getAttributeStore().get(attribute);
+			if (published != null) {
+				return CompletableFuture.completedFuture(published.getValue());
+			}
 			return systemExecutor.submit(() -> unit.onGetAttribute(attribute));
 		}
 
+		@Override
+		public <R> AttributeSubscription<R> subscribe(AttributeDescriptor<R> attribute, RoboReference<R> subscriber,
+				long minInterval, TimeUnit timeUnit, double deadband) {
+			AttributeSubscription<R> subscription = new AttributeSubscription<>(unit.getAttributeStore(), attribute,
+					subscriber, scheduler, timeUnit.toNanos(minInterval), deadband);
+			unit.getAttributeStore().subscribe(subscription);
+			return subscription;
+		}
+
+		@Override
+		public <R> CompletableFuture<R> ask(Function<RoboReference<R>, T> request, Class<R> replyType, long timeout,
+				TimeUnit timeUnit) {
+			CompletableFuture<R> reply = new CompletableFuture<>();
+			Future<?> timeoutTask = scheduler.scheduleOnce(() -> reply.completeExceptionally(new TimeoutException(
+					"No reply from " + unit.getId() + " within " + timeout + " " + timeUnit)), timeout, timeUnit);
+			reply.whenComplete((result, error) -> timeoutTask.cancel(false));
+			sendMessage(request.apply(new ReplyReference<>(replyType, reply)));
+			return reply;
+		}
+
 		@Override
 		public Collection<AttributeDescriptor<?>> getKnownAttributes() {
-			return unit.getKnownAttributes();
+			List<AttributeDescriptor<?>> result = new ArrayList<>(unit.getKnownAttributes());
+			result.addAll(MAILBOX_ATTRIBUTES);
+			return result;
 		}
 
 		@Override
 		public Future<Map<AttributeDescriptor<?>, Object>> getAttributes() {
-			return systemExecutor.submit(() -> unit.onGetAttributes());
+			return systemExecutor.submit(() -> {
+				Map<AttributeDescriptor<?>, Object> result = new HashMap<>(unit.onGetAttributes());
+				result.put(ATTRIBUTE_DROPPED_MESSAGES, getMailbox().getDroppedCount());
+				result.put(ATTRIBUTE_PENDING_MESSAGES, getMailbox().size());
+				result.put(ATTRIBUTE_EXPIRED_MESSAGES, expired.get());
+				result.put(ATTRIBUTE_START_TIME, startTime);
+				return result;
+			});
 		}
 
 		@Override
 		public Class<T> getMessageType() {
-			return null;
+			return unit.getMessageType();
 		}
 
 		@Override
 		public <R> R getMessageAttribute(AttributeDescriptor<R> descriptor, String name) {
 			return null;
 		}
+
+		private Mailbox<Object> getMailbox() {
+			Mailbox<Object> result = mailbox;
+			if (result == null) {
+				synchronized (this) {
+					result = mailbox;
+					if (result == null) {
+						result = MailboxFactory.create(unit.getConfiguration(), unit.getDefaultMailboxType(),
+								entry -> unit.getConflationKey(unwrap(entry)));
+						// Published by the volatile write of the mailbox
+						blocking = unit.isBlocking();
+						inline = !blocking && unit.isInlineDeliveryAllowed();
+						fused = inline && unit.isFused();
+						mailbox = result;
+					}
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Schedules a turn, unless already scheduled. A turn for a message
+		 * with a deadline carries the deadline to the system work queue, and
+		 * a turn already queued without one is moved ahead.
+		 */
+		private void schedule(long deadline) {
+			if (scheduled.compareAndSet(false, true)) {
+				if (blocking) {
+					executors.getExecutor(ExecutorRegistry.EXECUTOR_BLOCKING).execute(drainTask);
+				} else if (deadline == Deadlined.NO_DEADLINE || workQueue == null) {
+					dispatch(drainTask);
+				} else {
+					dispatch(new DeadlineDrain(deadline));
+				}
+			} else if (deadline != Deadlined.NO_DEADLINE && !blocking && workQueue != null) {
+				workQueue.expedite(drainTask, deadline);
+			}
+		}
+
+		private void reschedule(Mailbox<Object> mailbox) {
+			if (!mailbox.isEmpty()) {
+				schedule(mailbox instanceof DeadlineMailbox ? ((DeadlineMailbox<Object>) mailbox).getEarliestDeadline()
+						: Deadlined.NO_DEADLINE);
+			}
+		}
+
+		/**
+		 * Delivers the message on the calling thread, if the unit is idle.
+		 * Claiming the unit the same way a drain does keeps the delivery in
+		 * order, and exclusive, and a unit already handling a message up the
+		 * chain is never reentered.
+		 */
+		private boolean deliverInline(T message, Mailbox<Object> mailbox) {
+			int[] depth = INLINE_DELIVERY.get();
+			if (depth[0] > 0 && (!fused || depth[0] >= MAX_FUSED_DEPTH)) {
+				return false;
+			}
+			if (!mailbox.isEmpty() || !scheduled.compareAndSet(false, true)) {
+				return false;
+			}
+			if (!mailbox.isEmpty()) {
+				// Lost a race with an enqueue; the older message goes first
+				scheduled.set(false);
+				reschedule(mailbox);
+				return false;
+			}
+			depth[0]++;
+			try {
+				deliver(message);
+			} finally {
+				depth[0]--;
+				scheduled.set(false);
+				reschedule(mailbox);
+			}
+			return true;
+		}
+
+		private void drain() {
+			Mailbox<Object> mailbox = getMailbox();
+			boolean recording = poolController != null && !blocking;
+			long start = recording ? System.nanoTime() : 0;
+			int delivered = 0;
+			try {
+				if (removed) {
+					while (mailbox.poll() != null) {
+						// Discarded, the unit has been removed
+					}
+				} else if (batch == null) {
+					Object entry;
+					while (delivered < throughput && (entry = mailbox.poll()) != null) {
+						if (!hasExpired(entry)) {
+							deliver(unwrap(entry));
+							delivered++;
+						}
+					}
+				} else {
+					delivered = deliverBatch(mailbox);
+				}
+			} finally {
+				if (recording) {
+					poolController.recordTurn(delivered, System.nanoTime() - start);
+				}
+				scheduled.set(false);
+				// Someone may have enqueued after our last poll, but before we
+				// released the mailbox.
+				reschedule(mailbox);
+			}
+		}
+
+		private void deliver(T message) {
+			try {
+				unit.onMessage(message);
+			} catch (RuntimeException e) {
+				SimpleLoggingUtil.error(unit.getClass(), "Error processing message " + message, e);
+			}
+		}
+
+		private int deliverBatch(Mailbox<Object> mailbox) {
+			Object entry;
+			while (batch.size() < throughput && (entry = mailbox.poll()) != null) {
+				if (!hasExpired(entry)) {
+					batch.add(unwrap(entry));
+				}
+			}
+			int size = batch.size();
+			try {
+				if (batch.size() == 1) {
+					unit.onMessage(batch.get(0));
+				} else if (!batch.isEmpty()) {
+					unit.onMessages(batchView);
+				}
+			} catch (RuntimeException e) {
+				SimpleLoggingUtil.error(unit.getClass(), "Error processing " + batch.size() + " messages", e);
+			} finally {
+				batch.clear();
+			}
+			return size;
+		}
+
+		/**
+		 * Stops delivering messages to the unit. Messages sent through the
+		 * reference after this are discarded.
+		 */
+		void remove() {
+			removed = true;
+		}
+
+		/**
+		 * Counts the entry if it is a message whose deadline has passed. The
+		 * clock is only read for messages with a deadline.
+		 */
+		private boolean hasExpired(Object entry) {
+			if (entry instanceof DeadlineMessage && ((DeadlineMessage<?>) entry).isExpired(System.nanoTime())) {
+				expired.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+
+		@SuppressWarnings("unchecked")
+		private T unwrap(Object entry) {
+			return (T) (entry instanceof DeadlineMessage ? ((DeadlineMessage<?>) entry).getMessage() : entry);
+		}
+
+		/**
+		 * A mailbox turn carrying the deadline of the message it was scheduled
+		 * for, ordering it in the system work queue.
+		 */
+		private final class DeadlineDrain implements Runnable, Deadlined {
+			private final long deadline;
+
+			DeadlineDrain(long deadline) {
+				this.deadline = deadline;
+			}
+
+			@Override
+			public long getDeadline() {
+				return deadline;
+			}
+
+			@Override
+			public void run() {
+				drain();
+			}
+		}
+	}
+
+	private class TopicImplementation<T> implements Topic<T> {
+		private final String name;
+		private final CopyOnWriteArrayList<RoboReference<? super T>> subscribers = new CopyOnWriteArrayList<>();
+
+		TopicImplementation(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public void publish(T message) {
+			for (RoboReference<? super T> subscriber : subscribers) {
+				subscriber.sendMessage(message);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void publish(T message, long timeToLive, TimeUnit unit) {
+			if (timeToLive <= 0) {
+				// Counted as expired by each subscriber
+				subscribers.forEach(subscriber -> subscriber.sendMessage(message, timeToLive, unit));
+				return;
+			}
+			// One envelope, shared by the mailboxes of all subscribers
+			DeadlineMessage<T> envelope = new DeadlineMessage<>(message, System.nanoTime() + unit.toNanos(timeToLive));
+			for (RoboReference<? super T> subscriber : subscribers) {
+				if (subscriber instanceof ReferenceImplementation) {
+					((ReferenceImplementation<T>) subscriber).sendMessage(envelope);
+				} else {
+					subscriber.sendMessage(message, timeToLive, unit);
+				}
+			}
+		}
+
+		@Override
+		public boolean subscribe(RoboReference<? super T> subscriber) {
+			return subscribers.addIfAbsent(toReference(subscriber));
+		}
+
+		@Override
+		public boolean unsubscribe(RoboReference<? super T> subscriber) {
+			return subscribers.remove(toReference(subscriber));
+		}
+
+		void removeSubscriber(RoboReference<?> subscriber) {
+			subscribers.remove(subscriber);
+		}
+
+		@Override
+		public List<RoboReference<? super T>> getSubscribers() {
+			return Collections.unmodifiableList(subscribers);
+		}
+
+		@Override
+		public String toString() {
+			return "Topic " + name + " " + subscribers.size() + " subscribers";
+		}
+
+		/**
+		 * Units of this system are sent to directly through their reference,
+		 * without going through the unit.
+		 */
+		@SuppressWarnings("unchecked")
+		private RoboReference<? super T> toReference(RoboReference<? super T> subscriber) {
+			if (subscriber instanceof RoboUnit && ((RoboUnit<?>) subscriber).getContext() == RoboSystem.this) {
+				RoboReference<?> reference = ((RoboUnit<?>) subscriber).getReference();
+				if (reference != null) {
+					return (RoboReference<? super T>) reference;
+				}
+			}
+			return subscriber;
+		}
 	}
 
 	public RoboSystem() {
@@ -103,8 +634,135 @@ public class RoboSystem implements RoboContext {
 	}
 
 	public RoboSystem(int threadPoolSize) {
-		systemExecutor = new ThreadPoolExecutor(threadPoolSize, threadPoolSize, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
-				workQueue, new RoboThreadFactory("Robo4J System ", true));
+		this(threadPoolSize, DEFAULT_THROUGHPUT);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param threadPoolSize
+	 *            the number of threads in the system executor.
+	 * @param throughput
+	 *            the maximum number of messages delivered to a unit in one
+	 *            scheduler turn, before the thread is handed to the next unit.
+	 */
+	public RoboSystem(int threadPoolSize, int throughput) {
+		this(ExecutionMode.POOL, threadPoolSize, throughput);
+	}
+
+	/**
+	 * Creates a system from a system configuration.
+	 * 
+	 * <p>
+	 * Configuration:
+	 * </p>
+	 * <li>
+	 * <ul>
+	 * executionMode: "pool" (default), "virtual", "forkJoin" or "adaptive".
+	 * See {@link ExecutionMode}.
+	 * </ul>
+	 * <ul>
+	 * poolSize: the number of threads in the system executor, when using the
+	 * pool or forkJoin execution mode, and the initial number of threads in
+	 * the adaptive mode. Defaults to 2 for pool and adaptive, and to the
+	 * number of available processors for forkJoin.
+	 * </ul>
+	 * <ul>
+	 * minPoolSize: the minimum number of threads in the adaptive mode.
+	 * Defaults to 1.
+	 * </ul>
+	 * <ul>
+	 * maxPoolSize: the maximum number of threads in the adaptive mode.
+	 * Defaults to twice the number of available processors.
+	 * </ul>
+	 * <ul>
+	 * adaptInterval: the time, in milliseconds, between adapting the size of
+	 * the pool in the adaptive mode. Defaults to 1000.
+	 * </ul>
+	 * <ul>
+	 * throughput: the maximum number of messages delivered to a unit in one
+	 * scheduler turn. Defaults to 16.
+	 * </ul>
+	 * <ul>
+	 * lifecycleThreads: the maximum number of units started, or stopped, in
+	 * parallel. Defaults to 4. See {@link RoboUnit#getDependencies()}.
+	 * </ul>
+	 * <ul>
+	 * deadlineDispatch: true to take the mailbox turns for messages with a
+	 * deadline earliest deadline first, ahead of the other turns, in the pool
+	 * and adaptive execution modes. Use with units with a "deadline" mailbox,
+	 * or receiving messages with a time to live. Defaults to false; the
+	 * deadlines then only expire messages.
+	 * </ul>
+	 * <ul>
+	 * executors: the shared executors available to the units. See
+	 * {@link ExecutorRegistry}.
+	 * </ul>
+	 * <ul>
+	 * scheduler: the scheduler used for scheduled messages. See
+	 * {@link SchedulerFactory}.
+	 * </ul>
+	 * </li>
+	 * 
+	 * @param configuration
+	 *            the system configuration.
+	 */
+	public RoboSystem(Configuration configuration) {
+		this(ExecutionMode.getByName(
+				configuration.getString(CONFIGURATION_KEY_EXECUTION_MODE, ExecutionMode.POOL.getName())),
+				configuration);
+	}
+
+	private RoboSystem(ExecutionMode executionMode, Configuration configuration) {
+		this(executionMode, configuration.getInteger(CONFIGURATION_KEY_POOL_SIZE, getDefaultPoolSize(executionMode)),
+				configuration.getInteger(CONFIGURATION_KEY_THROUGHPUT, DEFAULT_THROUGHPUT), configuration);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param executionMode
+	 *            how to execute the message handling of the units.
+	 * @param threadPoolSize
+	 *            the number of threads in the system executor. Not used with
+	 *            {@link ExecutionMode#VIRTUAL}.
+	 * @param throughput
+	 *            the maximum number of messages delivered to a unit in one
+	 *            scheduler turn, before the thread is handed to the next unit.
+	 */
+	public RoboSystem(ExecutionMode executionMode, int threadPoolSize, int throughput) {
+		this(executionMode, threadPoolSize, throughput, null);
+	}
+
+	private RoboSystem(ExecutionMode executionMode, int threadPoolSize, int throughput,
+			Configuration configuration) {
+		if (throughput < 1) {
+			throw new IllegalArgumentException("Throughput must be at least 1, was " + throughput);
+		}
+		this.throughput = throughput;
+		this.executionMode = executionMode;
+		int lifecycleThreads = configuration == null ? DEFAULT_LIFECYCLE_THREADS
+				: configuration.getInteger(CONFIGURATION_KEY_LIFECYCLE_THREADS, DEFAULT_LIFECYCLE_THREADS);
+		if (lifecycleThreads < 1) {
+			throw new IllegalArgumentException("Lifecycle threads must be at least 1, was " + lifecycleThreads);
+		}
+		lifecycleExecutor = lifecycleThreads > 1 ? createLifecycleExecutor(lifecycleThreads) : null;
+		boolean deadlineDispatch = configuration != null
+				&& configuration.getBoolean(CONFIGURATION_KEY_DEADLINE_DISPATCH, false);
+		workQueue = deadlineDispatch && (executionMode == ExecutionMode.POOL || executionMode == ExecutionMode.ADAPTIVE)
+				? new DeadlineWorkQueue() : null;
+		systemExecutor = createSystemExecutor(executionMode, threadPoolSize);
+		scheduler = SchedulerFactory.create(this, configuration == null ? null
+				: configuration.getChildConfiguration(SchedulerFactory.CONFIGURATION_KEY_SCHEDULER));
+		executors = new ExecutorRegistry(
+				configuration == null ? null
+						: configuration.getChildConfiguration(ExecutorRegistry.CONFIGURATION_KEY_EXECUTORS),
+				executionMode == ExecutionMode.VIRTUAL);
+		if (executionMode == ExecutionMode.ADAPTIVE) {
+			poolController = createPoolController(threadPoolSize, configuration);
+		} else {
+			poolController = null;
+		}
 	}
 
 	public RoboSystem(int threadPoolSize, Set<RoboUnit<?>> unitSet) {
@@ -112,18 +770,103 @@ public class RoboSystem implements RoboContext {
 		addToMap(unitSet);
 	}
 
+	/**
+	 * Adds units to the system. Units added to a started system are started
+	 * right away.
+	 * 
+	 * @param unitSet
+	 *            the units to add.
+	 * @throws IllegalArgumentException
+	 *             if a unit with the same id is already registered.
+	 */
 	public void addUnits(Set<RoboUnit<?>> unitSet) {
-		if (state.get() != LifecycleState.UNINITIALIZED) {
-			throw new UnsupportedOperationException("All units must be registered up front for now.");
-		}
-		addToMap(unitSet);
+		addUnits(unitSet.toArray(new RoboUnit<?>[unitSet.size()]));
 	}
 
+	/**
+	 * Adds units to the system. Units added to a started system are started
+	 * right away.
+	 * 
+	 * @param units
+	 *            the units to add.
+	 * @throws IllegalArgumentException
+	 *             if a unit with the same id is already registered.
+	 */
 	public void addUnits(RoboUnit<?>... units) {
-		if (state.get() != LifecycleState.UNINITIALIZED) {
-			throw new UnsupportedOperationException("All units must be registered up front for now.");
+		boolean started;
+		synchronized (lifecycleLock) {
+			for (RoboUnit<?> unit : units) {
+				if (this.units.containsKey(unit.getId()) || lazyUnits.containsKey(unit.getId())) {
+					throw new IllegalArgumentException("A unit with the id " + unit.getId() + " is already registered");
+				}
+			}
+			addToMap(units);
+			LifecycleState current = state.get();
+			started = current == LifecycleState.STARTING || current == LifecycleState.STARTED;
+		}
+		// Not holding the lock, units may look up lazy units when starting
+		if (started) {
+			startUnits(Arrays.asList(units));
+		}
+	}
+
+	/**
+	 * Adds a unit which is not created until it is first looked up, see
+	 * {@link #getReference(String)}. Use for optional units which are
+	 * expensive to initialize, for example by probing hardware. The unit is
+	 * started when created, if the system is started.
+	 * 
+	 * @param id
+	 *            the id of the unit.
+	 * @param factory
+	 *            creates and initializes the unit. Called at most once, not
+	 *            holding any system lock; concurrent lookups of the same id
+	 *            wait for it. If it fails, the failure is logged, and the
+	 *            lookup returns null.
+	 * @throws IllegalArgumentException
+	 *             if a unit with the same id is already registered.
+	 */
+	public void addLazyUnit(String id, Callable<RoboUnit<?>> factory) {
+		synchronized (lifecycleLock) {
+			if (units.containsKey(id) || lazyUnits.putIfAbsent(id, factory) != null) {
+				throw new IllegalArgumentException("A unit with the id " + id + " is already registered");
+			}
+		}
+	}
+
+	/**
+	 * Removes a unit from the system. The unit is stopped, unless already
+	 * stopped, shut down, and unsubscribed from all topics. Messages sent to
+	 * the unit after it has been removed are discarded, also when sent through
+	 * references obtained before.
+	 * 
+	 * @param id
+	 *            the id of the unit to remove.
+	 * @return the removed unit, or null if there was no unit with the id.
+	 */
+	public RoboUnit<?> removeUnit(String id) {
+		synchronized (lifecycleLock) {
+			RoboUnit<?> unit = units.remove(id);
+			if (unit == null) {
+				// Never created, nothing more to do
+				lazyUnits.remove(id);
+				return null;
+			}
+			RoboReference<?> reference = getReference(unit);
+			topics.values().forEach(topic -> ((TopicImplementation<?>) topic).removeSubscriber(reference));
+			if (reference instanceof ReferenceImplementation) {
+				((ReferenceImplementation<?>) reference).remove();
+			}
+			LifecycleState unitState = unit.getState();
+			if (unitState == LifecycleState.STARTING || unitState == LifecycleState.STARTED) {
+				unit.stop();
+			}
+			unit.shutdown();
+			synchronized (referenceCache) {
+				referenceCache.remove(unit);
+			}
+			return unit;
 		}
-		addToMap(units);
 	}
 
 	public void addToMap(Set<RoboUnit<?>> unitSet) {
@@ -134,17 +877,44 @@ public class RoboSystem implements RoboContext {
 		Stream.of(unitArray).forEach(unit -> units.put(unit.getId(), unit));
 	}
 
+	/**
+	 * Starts the units in parallel, each after the units it depends on. See
+	 * {@link RoboUnit#getDependencies()}. If a unit fails to start, the other
+	 * units are still started, and the system, as well as the unit, end up
+	 * {@link LifecycleState#FAILED}.
+	 * 
+	 * @throws RuntimeException
+	 *             the first exception thrown when starting a unit.
+	 */
 	@Override
 	public void start() {
-		state.set(LifecycleState.STARTING);
-		units.values().forEach(RoboUnit::start);
+		Collection<RoboUnit<?>> toStart;
+		synchronized (lifecycleLock) {
+			state.set(LifecycleState.STARTING);
+			// Units added from now on are started by addUnits
+			toStart = new ArrayList<>(units.values());
+		}
+		try {
+			startUnits(toStart);
+		} catch (RuntimeException e) {
+			state.set(LifecycleState.FAILED);
+			throw e;
+		}
 		state.set(LifecycleState.STARTED);
 	}
 
+	/**
+	 * Stops the units in parallel, each before the units it depends on. See
+	 * {@link RoboUnit#getDependencies()}.
+	 */
 	@Override
 	public void stop() {
-		state.set(LifecycleState.STOPPING);
-		units.values().forEach(RoboUnit::stop);
+		Collection<RoboUnit<?>> toStop;
+		synchronized (lifecycleLock) {
+			state.set(LifecycleState.STOPPING);
+			toStop = new ArrayList<>(units.values());
+		}
+		runInDependencyOrder(toStop, true, RoboUnit::stop);
 		state.set(LifecycleState.STOPPED);
 	}
 
@@ -160,6 +930,10 @@ public class RoboSystem implements RoboContext {
 		}
 		state.set(LifecycleState.SHUTTING_DOWN);
 		units.values().forEach(RoboUnit::shutdown);
+		executors.shutdown();
+		if (lifecycleExecutor != null) {
+			lifecycleExecutor.shutdown();
+		}
 		state.set(LifecycleState.SHUTDOWN);
 	}
 
@@ -169,7 +943,8 @@ public class RoboSystem implements RoboContext {
 	}
 
 	/**
-	 * Returns all the units in the system.
+	 * Returns all the units in the system. Lazy units are only included once
+	 * they have been created.
 	 */
 	public Collection<RoboUnit<?>> getUnits() {
 		return units.values();
@@ -182,15 +957,83 @@ public class RoboSystem implements RoboContext {
 	 * @return returns the reference to the specified RoboUnit. The reference
 	 *         can be kept and
 	 */
+	@SuppressWarnings("unchecked")
 	public <T> RoboReference<T> getReference(String id) {
-		@SuppressWarnings("unchecked")
 		RoboUnit<T> roboUnit = (RoboUnit<T>) units.get(id);
 		if (roboUnit == null) {
-			return null;
+			if (lazyUnits.isEmpty()) {
+				return null;
+			}
+			roboUnit = (RoboUnit<T>) createLazyUnit(id);
+			if (roboUnit == null) {
+				return null;
+			}
+		}
+		// Units keep the reference they were created with, no need to lock
+		if (roboUnit.getContext() == this && roboUnit.getReference() != null) {
+			return roboUnit.getReference();
 		}
 		return getReference(roboUnit);
 	}
 
+	private AdaptivePoolController createPoolController(int threadPoolSize, Configuration configuration) {
+		int minPoolSize = DEFAULT_MIN_POOL_SIZE;
+		int maxPoolSize = Math.max(threadPoolSize, 2 * Runtime.getRuntime().availableProcessors());
+		int adaptInterval = DEFAULT_ADAPT_INTERVAL;
+		if (configuration != null) {
+			minPoolSize = configuration.getInteger(CONFIGURATION_KEY_MIN_POOL_SIZE, minPoolSize);
+			maxPoolSize = configuration.getInteger(CONFIGURATION_KEY_MAX_POOL_SIZE, maxPoolSize);
+			adaptInterval = configuration.getInteger(CONFIGURATION_KEY_ADAPT_INTERVAL, adaptInterval);
+		}
+		if (threadPoolSize < minPoolSize || threadPoolSize > maxPoolSize) {
+			throw new IllegalArgumentException("Pool size " + threadPoolSize + " not within bounds, min: "
+					+ minPoolSize + " max: " + maxPoolSize);
+		}
+		AdaptivePoolController controller = new AdaptivePoolController((ThreadPoolExecutor) systemExecutor,
+				minPoolSize, maxPoolSize);
+		scheduler.scheduleAtFixedRate(controller, adaptInterval, adaptInterval, TimeUnit.MILLISECONDS);
+		return controller;
+	}
+
+	private static int getDefaultPoolSize(ExecutionMode executionMode) {
+		return executionMode == ExecutionMode.FORK_JOIN ? Runtime.getRuntime().availableProcessors()
+				: DEFAULT_THREAD_POOL_SIZE;
+	}
+
+	private static boolean isAttribute(AttributeDescriptor<?> attribute, AttributeDescriptor<?> systemAttribute) {
+		return systemAttribute.getAttributeName().equals(attribute.getAttributeName())
+				&& systemAttribute.getAttributeType() == attribute.getAttributeType();
+	}
+
+	private ExecutorService createSystemExecutor(ExecutionMode executionMode, int threadPoolSize) {
+		switch (executionMode) {
+		case VIRTUAL:
+			return VirtualThreads.newThreadPerTaskExecutor(SYSTEM_THREAD_PREFIX);
+		case FORK_JOIN:
+			return new ForkJoinPool(threadPoolSize, new RoboForkJoinWorkerThreadFactory(SYSTEM_THREAD_PREFIX),
+					null, true);
+		case ADAPTIVE:
+		case POOL:
+		default:
+			return new ThreadPoolExecutor(threadPoolSize, threadPoolSize, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+					workQueue != null ? workQueue : new LinkedBlockingQueue<>(),
+					new RoboThreadFactory(SYSTEM_THREAD_PREFIX, true));
+		}
+	}
+
+	/**
+	 * Dispatches a mailbox turn. When running in a fork join pool, turns
+	 * scheduled by a worker of the pool are forked onto the local queue of the
+	 * worker, rather than going through the shared submission queue.
+	 */
+	private void dispatch(Runnable task) {
+		if (executionMode == ExecutionMode.FORK_JOIN && ForkJoinTask.getPool() == systemExecutor) {
+			ForkJoinTask.adapt(task).fork();
+		} else {
+			systemExecutor.execute(task);
+		}
+	}
+
 	private <T> RoboReference<T> createReference(RoboUnit<T> roboUnit) {
 		return new ReferenceImplementation<>(roboUnit);
 	}
@@ -198,13 +1041,68 @@ public class RoboSystem implements RoboContext {
 	// NOTE(Marcus/Jan 24, 2017): We're only making sure that the reference is
 	// around, no more, no less.
 	public <T> RoboReference<T> getReference(RoboUnit<T> roboUnit) {
-		@SuppressWarnings("unchecked")
-		RoboReference<T> reference = (RoboReference<T>) referenceCache.get(roboUnit);
-		if (reference == null) {
-			reference = createReference(roboUnit);
-			referenceCache.put(roboUnit, reference);
+		synchronized (referenceCache) {
+			@SuppressWarnings("unchecked")
+			RoboReference<T> reference = (RoboReference<T>) referenceCache.get(roboUnit);
+			if (reference == null) {
+				reference = createReference(roboUnit);
+				referenceCache.put(roboUnit, reference);
+			}
+			return reference;
+		}
+	}
+
+	/**
+	 * @return how the message handling of the units is executed.
+	 */
+	public ExecutionMode getExecutionMode() {
+		return executionMode;
+	}
+
+	/**
+	 * @return the attributes of the system itself, see
+	 *         {@link #getSystemAttribute(AttributeDescriptor)}.
+	 */
+	public Collection<AttributeDescriptor<?>> getKnownSystemAttributes() {
+		if (poolController != null) {
+			return ADAPTIVE_POOL_ATTRIBUTES;
+		}
+		return systemExecutor instanceof ThreadPoolExecutor ? POOL_ATTRIBUTES : Collections.emptyList();
+	}
+
+	/**
+	 * Returns an attribute of the system itself, such as the current size of
+	 * the system executor.
+	 * 
+	 * @param attribute
+	 *            the descriptor of the attribute.
+	 * @return the value, or null if the attribute is not available.
+	 */
+	@SuppressWarnings("unchecked")
+	public <R> R getSystemAttribute(AttributeDescriptor<R> attribute) {
+		if (poolController != null) {
+			if (isAttribute(attribute, ATTRIBUTE_POOL_SIZE)) {
+				return (R) Integer.valueOf(poolController.getPoolSize());
+			} else if (isAttribute(attribute, ATTRIBUTE_BACKLOG)) {
+				return (R) Integer.valueOf(poolController.getBacklog());
+			} else if (isAttribute(attribute, ATTRIBUTE_SERVICE_TIME)) {
+				return (R) Long.valueOf(poolController.getServiceTime());
+			} else if (isAttribute(attribute, ATTRIBUTE_UTILIZATION)) {
+				return (R) Double.valueOf(poolController.getUtilization());
+			} else if (isAttribute(attribute, ATTRIBUTE_POOL_DECISION)) {
+				return (R) poolController.getLastDecision();
+			} else if (isAttribute(attribute, ATTRIBUTE_POOL_ADJUSTMENTS)) {
+				return (R) Long.valueOf(poolController.getAdjustments());
+			}
+		} else if (systemExecutor instanceof ThreadPoolExecutor) {
+			ThreadPoolExecutor pool = (ThreadPoolExecutor) systemExecutor;
+			if (isAttribute(attribute, ATTRIBUTE_POOL_SIZE)) {
+				return (R) Integer.valueOf(pool.getMaximumPoolSize());
+			} else if (isAttribute(attribute, ATTRIBUTE_BACKLOG)) {
+				return (R) Integer.valueOf(pool.getQueue().size());
+			}
 		}
-		return reference;
+		return null;
 	}
 
 	/**
@@ -218,4 +1116,128 @@ public class RoboSystem implements RoboContext {
 	public Scheduler getScheduler() {
 		return scheduler;
 	}
+
+	@Override
+	public ExecutorService getExecutor(String name) {
+		return executors.getExecutor(name);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> Topic<T> getTopic(String name) {
+		return (Topic<T>) topics.computeIfAbsent(name, TopicImplementation::new);
+	}
+
+	/**
+	 * Creates, and starts if the system is started, a lazy unit. Only the
+	 * first caller for an id creates the unit; the others wait for that
+	 * creation, without holding up lookups and creations of other ids.
+	 */
+	private RoboUnit<?> createLazyUnit(String id) {
+		CompletableFuture<RoboUnit<?>> creation = new CompletableFuture<>();
+		CompletableFuture<RoboUnit<?>> pending = lazyCreations.putIfAbsent(id, creation);
+		if (pending != null) {
+			return pending.join();
+		}
+		RoboUnit<?> unit = null;
+		try {
+			// Created, and the creation removed, while we were getting here
+			unit = units.get(id);
+			if (unit == null) {
+				unit = instantiateLazyUnit(id);
+			}
+		} finally {
+			// Added to the units before, so later lookups find it there
+			lazyCreations.remove(id, creation);
+			creation.complete(unit);
+		}
+		return unit;
+	}
+
+	private RoboUnit<?> instantiateLazyUnit(String id) {
+		Callable<RoboUnit<?>> factory = lazyUnits.get(id);
+		if (factory == null) {
+			return null;
+		}
+		RoboUnit<?> unit;
+		try {
+			unit = factory.call();
+		} catch (Exception e) {
+			lazyUnits.remove(id, factory);
+			SimpleLoggingUtil.error(getClass(), "Failed to create the lazy unit " + id, e);
+			return null;
+		}
+		boolean started;
+		synchronized (lifecycleLock) {
+			if (!lazyUnits.remove(id, factory)) {
+				// Removed while being created
+				return null;
+			}
+			addToMap(unit);
+			LifecycleState current = state.get();
+			started = current == LifecycleState.STARTING || current == LifecycleState.STARTED;
+		}
+		if (started) {
+			startUnits(Collections.singletonList(unit));
+		}
+		return unit;
+	}
+
+	private void startUnits(Collection<RoboUnit<?>> toStart) {
+		long start = System.nanoTime();
+		runInDependencyOrder(toStart, false, unit -> {
+			long unitStart = System.nanoTime();
+			startUnit(unit);
+			long time = System.nanoTime() - unitStart;
+			if (unit.getReference() instanceof ReferenceImplementation) {
+				((ReferenceImplementation<?>) unit.getReference()).startTime = time;
+			}
+			SimpleLoggingUtil.debug(getClass(),
+					"Started " + unit.getId() + " in " + TimeUnit.NANOSECONDS.toMillis(time) + " ms");
+		});
+		SimpleLoggingUtil.debug(getClass(), "Started " + toStart.size() + " units in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+	}
+
+	/**
+	 * Runs the action for the units, in parallel on the lifecycle threads, in
+	 * dependency order.
+	 */
+	private void runInDependencyOrder(Collection<RoboUnit<?>> toRun, boolean reverse,
+			Consumer<RoboUnit<?>> action) {
+		DependencyGraph graph = new DependencyGraph(toRun);
+		boolean parallel = lifecycleExecutor != null && toRun.size() > 1 && !LIFECYCLE_THREAD.get()[0];
+		try {
+			graph.traverse(parallel ? lifecycleExecutor : Runnable::run, reverse, action);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			SimpleLoggingUtil.error(getClass(), "Was interrupted when starting or stopping units.", e);
+		}
+	}
+
+	/**
+	 * The threads are only kept while there is lifecycle work to do.
+	 */
+	private static ThreadPoolExecutor createLifecycleExecutor(int threads) {
+		RoboThreadFactory threadFactory = new RoboThreadFactory(LIFECYCLE_THREAD_PREFIX, true);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> threadFactory.newThread(() -> {
+					LIFECYCLE_THREAD.get()[0] = true;
+					runnable.run();
+				}));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private <T> void startUnit(RoboUnit<T> unit) {
+		for (String topic : unit.getConfiguredTopics()) {
+			this.<T> getTopic(topic).subscribe(unit);
+		}
+		try {
+			unit.start();
+		} catch (RuntimeException e) {
+			unit.setState(LifecycleState.FAILED);
+			throw e;
+		}
+	}
 }
@@ -16,13 +16,22 @@
  */
 package com.robo4j.core;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
+import com.robo4j.core.concurrency.MailboxFactory;
 import com.robo4j.core.configuration.Configuration;
+import com.robo4j.core.scheduler.ControlLoop;
+import com.robo4j.core.scheduler.Scheduler;
 
 /**
  * The core component. Subclass this to provide a messaging capable agent for a
@@ -32,6 +41,31 @@ import com.robo4j.core.configuration.Configuration;
  * @author Miroslav Wengner (@miragemiko)
  */
 public abstract class RoboUnit<T> implements RoboReference<T> {
+	/**
+	 * Unit configuration key. Set to true if the unit blocks when handling
+	 * messages, and should have them delivered on the shared blocking
+	 * executor. Defaults to true for units annotated with
+	 * {@link BlockingTrait}, false otherwise.
+	 */
+	public static final String CONFIGURATION_KEY_BLOCKING = "blocking";
+	/**
+	 * Unit configuration key. Set to true if messages may be delivered to the
+	 * unit on the thread sending them, when the unit is idle. Defaults to true
+	 * for units annotated with {@link InlineDeliveryTrait}, false otherwise.
+	 */
+	public static final String CONFIGURATION_KEY_INLINE_DELIVERY = "inlineDelivery";
+	/**
+	 * Unit configuration key. A comma separated list of the topics the unit
+	 * subscribes to when the system is started. See {@link Topic}.
+	 */
+	public static final String CONFIGURATION_KEY_TOPICS = "topics";
+	/**
+	 * Unit configuration key. A comma separated list of the units this unit
+	 * depends on, in addition to its target. See {@link #getDependencies()}.
+	 */
+	public static final String CONFIGURATION_KEY_DEPENDS_ON = "dependsOn";
+	private static final long CONTROL_LOOP_PUBLISH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
 	// Yay for erasure
 	private final Class<T> messageType;
 	private final RoboContext context;
@@ -39,6 +73,8 @@ public abstract class RoboUnit<T> implements RoboReference<T> {
 	private volatile LifecycleState state = LifecycleState.UNINITIALIZED;
 	private RoboReference<T> reference;
 	private Configuration configuration;
+	private final AttributeStore attributeStore = new AttributeStore();
+	private volatile boolean fused;
 
 	/**
 	 * Either provide id up front
@@ -75,6 +111,7 @@ public abstract class RoboUnit<T> implements RoboReference<T> {
 	 * @throws Exception
 	 */
 	public void initialize(Configuration configuration) throws ConfigurationException {
+		MailboxFactory.validate(configuration, getDefaultMailboxType());
 		setConfiguration(configuration);
 		onInitialization(configuration);
 		setState(LifecycleState.INITIALIZED);
@@ -169,6 +206,17 @@ public abstract class RoboUnit<T> implements RoboReference<T> {
 		reference.sendMessage(message);
 	}
 
+	/**
+	 * Sends a message to this unit, which is dropped unless delivered within
+	 * the time to live.
+	 * 
+	 * @see RoboReference#sendMessage(Object, long, TimeUnit)
+	 */
+	@Override
+	public void sendMessage(T message, long timeToLive, TimeUnit unit) {
+		reference.sendMessage(message, timeToLive, unit);
+	}
+
 	/**
 	 * Will post a message to get the attributes on the message queue.
 	 * 
@@ -189,6 +237,29 @@ public abstract class RoboUnit<T> implements RoboReference<T> {
 		return reference.getAttribute(attribute);
 	}
 
+	/**
+	 * Subscribes to changes of an attribute of this unit.
+	 * 
+	 * @see RoboReference#subscribe(AttributeDescriptor, RoboReference, long,
+	 *      TimeUnit, double)
+	 */
+	@Override
+	public <R> AttributeSubscription<R> subscribe(AttributeDescriptor<R> attribute, RoboReference<R> subscriber,
+			long minInterval, TimeUnit unit, double deadband) {
+		return reference.subscribe(attribute, subscriber, minInterval, unit, deadband);
+	}
+
+	/**
+	 * Sends a request to this unit.
+	 * 
+	 * @see RoboReference#ask(Function, Class, long, TimeUnit)
+	 */
+	@Override
+	public <R> CompletableFuture<R> ask(Function<RoboReference<R>, T> request, Class<R> replyType, long timeout,
+			TimeUnit unit) {
+		return reference.ask(request, replyType, timeout, unit);
+	}
+
 	/**
 	 * Override in subclasses to expose the attributes known.
 	 */
@@ -223,6 +294,89 @@ public abstract class RoboUnit<T> implements RoboReference<T> {
 		// want to consider other means of accessing it to keep it protected.
 	}
 
+	/**
+	 * May be overridden in subclasses which can process several messages more
+	 * efficiently than one at a time, for example in a single bus transaction
+	 * or socket write. When a unit overrides this method, the system delivers
+	 * all messages taken from the mailbox in one turn, at most throughput
+	 * messages, in a single call. A single pending message is still delivered
+	 * through {@link #onMessage(Object)}.
+	 * 
+	 * <p>
+	 * The list is only valid for the duration of the call, and must not be
+	 * retained. The default implementation calls {@link #onMessage(Object)}
+	 * for each message.
+	 * 
+	 * @param messages
+	 *            the messages received by this unit, in the order they were
+	 *            sent.
+	 */
+	public void onMessages(List<T> messages) {
+		for (T message : messages) {
+			onMessage(message);
+		}
+	}
+
+	/**
+	 * May be overridden in subclasses to use a different mailbox type, unless
+	 * one is specified in the configuration of the unit. Units driven by a
+	 * stream of set points, where only the most recent one matters, would
+	 * typically use {@link MailboxFactory#MAILBOX_LATEST}. Units where urgent
+	 * commands must overtake the queued ones would use
+	 * {@link MailboxFactory#MAILBOX_DEADLINE}.
+	 * 
+	 * @return the type of mailbox to use for this unit.
+	 * 
+	 * @see MailboxFactory
+	 */
+	protected String getDefaultMailboxType() {
+		return MailboxFactory.MAILBOX_LINKED;
+	}
+
+	/**
+	 * Should be overridden in subclasses using a "latest" mailbox, when
+	 * messages addressing different targets of the unit, for example different
+	 * channels, should not replace each other. Pending messages with equal keys
+	 * are conflated, and only the latest one delivered.
+	 * 
+	 * <p>
+	 * The default implementation returns null, i.e. all messages share the same
+	 * key.
+	 * 
+	 * @param message
+	 *            the message to get the key for.
+	 * @return the conflation key of the message. May be null.
+	 */
+	protected Object getConflationKey(T message) {
+		return null;
+	}
+
+	/**
+	 * Returns the ids of the units this unit depends on. When starting, the
+	 * system starts the units in parallel, but starts a unit only once the
+	 * units it depends on have been started. When stopping, the order is
+	 * reversed.
+	 * 
+	 * <p>
+	 * Defaults to the target of the unit and the units listed by the dependsOn
+	 * configuration key. Override in units using other units configured under
+	 * other keys.
+	 * 
+	 * @return the ids of the units this unit depends on.
+	 */
+	protected Collection<String> getDependencies() {
+		if (configuration == null) {
+			return Collections.emptyList();
+		}
+		List<String> result = new ArrayList<>();
+		String target = configuration.getString(RoboBuilder.CONFIGURATION_KEY_TARGET, null);
+		if (target != null) {
+			result.add(target);
+		}
+		result.addAll(Arrays.asList(split(configuration.getString(CONFIGURATION_KEY_DEPENDS_ON, null))));
+		return result;
+	}
+
 	/**
 	 * May be overridden in subclasses for more performance. The default
 	 * implementation will get the job done though.
@@ -238,6 +392,92 @@ public abstract class RoboUnit<T> implements RoboReference<T> {
 		return result;
 	}
 
+	/**
+	 * Replies to a request, typically one made with
+	 * {@link RoboReference#ask(Function, Class, long, TimeUnit)}. Nothing is
+	 * sent if there is no one to reply to, if the reference does not tell what
+	 * it accepts, or if the reply is not of the type the requester accepts.
+	 * 
+	 * @param replyTo
+	 *            the reference carried by the request. May be null.
+	 * @param reply
+	 *            the reply.
+	 * @return true if the reply was sent.
+	 */
+	@SuppressWarnings("unchecked")
+	protected static <R> boolean reply(RoboReference<?> replyTo, R reply) {
+		if (replyTo == null) {
+			return false;
+		}
+		Class<?> replyType = replyTo.getMessageType();
+		if (replyType == null || !replyType.isInstance(reply)) {
+			return false;
+		}
+		((RoboReference<R>) replyTo).sendMessage(reply);
+		return true;
+	}
+
+	/**
+	 * Tells whether a reference is the temporary reply reference of a request
+	 * made with {@link RoboReference#ask(Function, Class, long, TimeUnit)}.
+	 * Units carrying a source reference in their messages for other purposes
+	 * use it to only reply to the requests someone waits for.
+	 * 
+	 * @param reference
+	 *            the reference carried by a message. May be null.
+	 * @return true if the reference is waiting for a reply.
+	 */
+	protected static boolean isReplyReference(RoboReference<?> reference) {
+		return reference instanceof ReplyReference;
+	}
+
+	/**
+	 * Publishes the current value of an attribute. Published attributes are
+	 * read directly by {@link #getAttribute(AttributeDescriptor)}, without
+	 * going through the system executor, and
+	 * {@link #onGetAttribute(AttributeDescriptor)} is no longer called for
+	 * them. Use for values the unit already knows, such as the last set point,
+	 * and keep {@link #onGetAttribute(AttributeDescriptor)} for values which
+	 * must be computed on demand.
+	 * 
+	 * @param descriptor
+	 *            the descriptor of the attribute.
+	 * @param value
+	 *            the current value.
+	 */
+	protected <R> void publishAttribute(AttributeDescriptor<R> descriptor, R value) {
+		attributeStore.publish(descriptor, value);
+	}
+
+	/**
+	 * Schedules a control loop for this unit, see
+	 * {@link Scheduler#scheduleControlLoop(Runnable, long, long, TimeUnit, long)}.
+	 * The lateness and jitter statistics of the loop, see
+	 * {@link ControlLoop#getKnownAttributes()}, are published as attributes of
+	 * this unit about once a second, so that they can be read and subscribed
+	 * to like any other published attribute. With several loops, the
+	 * statistics of the loop published last are the ones available.
+	 * 
+	 * @param runnable
+	 *            the command to run every period.
+	 * @param delay
+	 *            the delay until the first invocation.
+	 * @param period
+	 *            the period between successive invocations.
+	 * @param unit
+	 *            the time unit of the delay and period.
+	 * @param spinNanos
+	 *            the time, in nanoseconds, to busy wait rather than park
+	 *            before every deadline.
+	 * @return the loop, used to cancel it.
+	 */
+	protected ControlLoop scheduleControlLoop(Runnable runnable, long delay, long period, TimeUnit unit,
+			long spinNanos) {
+		ControlLoopPublisher publisher = new ControlLoopPublisher(runnable);
+		publisher.loop = getContext().getScheduler().scheduleControlLoop(publisher, delay, period, unit, spinNanos);
+		return publisher.loop;
+	}
+
 	/**
 	 * Should be overridden in subclasses to provide attributes.
 	 *
@@ -250,6 +490,121 @@ public abstract class RoboUnit<T> implements RoboReference<T> {
 	}
 
 
+	/**
+	 * Runs the command of a control loop, and publishes the statistics of the
+	 * loop every now and then.
+	 */
+	private final class ControlLoopPublisher implements Runnable {
+		private final Runnable runnable;
+		private volatile ControlLoop loop;
+		// Only accessed by the control loop thread
+		private long nextPublish = System.nanoTime();
+
+		ControlLoopPublisher(Runnable runnable) {
+			this.runnable = runnable;
+		}
+
+		@Override
+		public void run() {
+			runnable.run();
+			long now = System.nanoTime();
+			ControlLoop current = loop;
+			if (current != null && now - nextPublish >= 0) {
+				nextPublish = now + CONTROL_LOOP_PUBLISH_INTERVAL;
+				for (AttributeDescriptor<?> descriptor : current.getKnownAttributes()) {
+					publish(current, descriptor);
+				}
+			}
+		}
+
+		private <R> void publish(ControlLoop current, AttributeDescriptor<R> descriptor) {
+			publishAttribute(descriptor, current.getAttribute(descriptor));
+		}
+	}
+
+	/**
+	 * @return the published attributes of this unit.
+	 */
+	AttributeStore getAttributeStore() {
+		return attributeStore;
+	}
+
+	/**
+	 * @return true if this unit blocks when handling messages.
+	 * 
+	 * @see BlockingTrait
+	 */
+	boolean isBlocking() {
+		boolean blocking = getClass().isAnnotationPresent(BlockingTrait.class);
+		if (configuration == null) {
+			return blocking;
+		}
+		return configuration.getBoolean(CONFIGURATION_KEY_BLOCKING, blocking);
+	}
+
+	/**
+	 * @return the topics this unit is configured to subscribe to.
+	 */
+	String[] getConfiguredTopics() {
+		return split(configuration == null ? null : configuration.getString(CONFIGURATION_KEY_TOPICS, null));
+	}
+
+	private static String[] split(String list) {
+		if (list == null || list.trim().isEmpty()) {
+			return new String[0];
+		}
+		return list.trim().split("\\s*,\\s*");
+	}
+
+	/**
+	 * @return the reference provided by the system for this unit, or null if
+	 *         the context of the unit is not a {@link RoboSystem}.
+	 */
+	RoboReference<T> getReference() {
+		return reference;
+	}
+
+	/**
+	 * @return true if messages may be delivered to this unit on the sending
+	 *         thread.
+	 * 
+	 * @see InlineDeliveryTrait
+	 */
+	boolean isInlineDeliveryAllowed() {
+		boolean inline = fused || getClass().isAnnotationPresent(InlineDeliveryTrait.class);
+		if (configuration == null) {
+			return inline;
+		}
+		return configuration.getBoolean(CONFIGURATION_KEY_INLINE_DELIVERY, inline);
+	}
+
+	/**
+	 * Marks this unit as fused with the only unit sending to it, see
+	 * {@link RoboBuilder}. A fused unit has its messages delivered inline,
+	 * unless inline delivery is explicitly disabled in its configuration.
+	 */
+	void setFused(boolean fused) {
+		this.fused = fused;
+	}
+
+	/**
+	 * @return true if this unit is fused with the only unit sending to it.
+	 */
+	boolean isFused() {
+		return fused;
+	}
+
+	/**
+	 * @return true if this unit overrides {@link #onMessages(List)}.
+	 */
+	boolean isBatching() {
+		try {
+			return getClass().getMethod("onMessages", List.class).getDeclaringClass() != RoboUnit.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
 	/**
 	 * @return a RoboReference. Internal use only.
 	 */
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A named topic, fanning out each published message to all the units
+ * subscribing to the topic. The same message instance is delivered to every
+ * subscriber, so messages published on a topic must be immutable.
+ * 
+ * <p>
+ * Units can subscribe by configuration, see
+ * {@link RoboUnit#CONFIGURATION_KEY_TOPICS}, or by calling
+ * {@link #subscribe(RoboReference)}.
+ * 
+ * @see RoboContext#getTopic(String)
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public interface Topic<T> {
+	/**
+	 * @return the name of the topic.
+	 */
+	String getName();
+
+	/**
+	 * Publishes a message to all the current subscribers.
+	 * 
+	 * @param message
+	 *            the message to publish. Must not be modified after
+	 *            publishing.
+	 */
+	void publish(T message);
+
+	/**
+	 * Publishes a message to all the current subscribers, which must be
+	 * delivered within the time to live. All subscribers share the deadline.
+	 * 
+	 * @param message
+	 *            the message to publish. Must not be modified after
+	 *            publishing.
+	 * @param timeToLive
+	 *            the time the message may wait for delivery.
+	 * @param unit
+	 *            the unit of the time to live.
+	 * 
+	 * @see RoboReference#sendMessage(Object, long, TimeUnit)
+	 */
+	void publish(T message, long timeToLive, TimeUnit unit);
+
+	/**
+	 * Subscribes to the topic. Subscribing more than once has no effect.
+	 * 
+	 * @param subscriber
+	 *            the reference to send the published messages to.
+	 * @return true if subscribed, false if already subscribed.
+	 */
+	boolean subscribe(RoboReference<? super T> subscriber);
+
+	/**
+	 * Unsubscribes from the topic.
+	 * 
+	 * @param subscriber
+	 *            the subscriber to remove.
+	 * @return true if unsubscribed, false if not subscribed.
+	 */
+	boolean unsubscribe(RoboReference<? super T> subscriber);
+
+	/**
+	 * @return the current subscribers.
+	 */
+	List<RoboReference<? super T>> getSubscribers();
+}
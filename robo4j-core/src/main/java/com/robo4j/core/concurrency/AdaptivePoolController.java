@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Periodically resizes a thread pool, between configured bounds, based on the
+ * observed backlog and message service time.
+ * 
+ * <p>
+ * Every period, the time spent delivering messages is used to estimate the
+ * number of threads needed to keep them busy at most 75% of the time. The pool
+ * grows to that estimate when mailbox turns are waiting in the queue of the
+ * pool, and otherwise shrinks towards it one thread per period, so that short
+ * lulls do not tear down threads which are needed again right after.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public class AdaptivePoolController implements Runnable {
+	public static final String DECISION_HOLD = "hold";
+	public static final String DECISION_GROW = "grow";
+	public static final String DECISION_SHRINK = "shrink";
+	private static final double TARGET_UTILIZATION = 0.75;
+
+	private final ThreadPoolExecutor pool;
+	private final int minPoolSize;
+	private final int maxPoolSize;
+	private final LongAdder busyNanos = new LongAdder();
+	private final LongAdder messages = new LongAdder();
+	private long lastRun = System.nanoTime();
+
+	private volatile int backlog;
+	private volatile long serviceTime;
+	private volatile double utilization;
+	private volatile String lastDecision = DECISION_HOLD;
+	private volatile long adjustments;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param pool
+	 *            the pool to resize.
+	 * @param minPoolSize
+	 *            the minimum number of threads.
+	 * @param maxPoolSize
+	 *            the maximum number of threads.
+	 */
+	public AdaptivePoolController(ThreadPoolExecutor pool, int minPoolSize, int maxPoolSize) {
+		if (minPoolSize < 1 || maxPoolSize < minPoolSize) {
+			throw new IllegalArgumentException(
+					"Invalid pool size bounds, min: " + minPoolSize + " max: " + maxPoolSize);
+		}
+		this.pool = pool;
+		this.minPoolSize = minPoolSize;
+		this.maxPoolSize = maxPoolSize;
+	}
+
+	/**
+	 * Records a turn of delivering messages on the pool.
+	 * 
+	 * @param messageCount
+	 *            the number of messages delivered.
+	 * @param nanos
+	 *            the time the turn took.
+	 */
+	public void recordTurn(int messageCount, long nanos) {
+		messages.add(messageCount);
+		busyNanos.add(nanos);
+	}
+
+	@Override
+	public void run() {
+		adapt(System.nanoTime());
+	}
+
+	/**
+	 * @return the current number of threads the pool is sized to.
+	 */
+	public int getPoolSize() {
+		return pool.getMaximumPoolSize();
+	}
+
+	/**
+	 * @return the number of mailbox turns waiting for a thread, when last
+	 *         adapted.
+	 */
+	public int getBacklog() {
+		return backlog;
+	}
+
+	/**
+	 * @return the average time, in nanoseconds, spent delivering a message in
+	 *         the last period.
+	 */
+	public long getServiceTime() {
+		return serviceTime;
+	}
+
+	/**
+	 * @return the fraction of the time the threads of the pool were busy
+	 *         delivering messages in the last period.
+	 */
+	public double getUtilization() {
+		return utilization;
+	}
+
+	/**
+	 * @return the last decision taken; hold, grow or shrink.
+	 */
+	public String getLastDecision() {
+		return lastDecision;
+	}
+
+	/**
+	 * @return the number of times the pool has been resized.
+	 */
+	public long getAdjustments() {
+		return adjustments;
+	}
+
+	// Only ever called from one thread at a time
+	void adapt(long now) {
+		long elapsed = Math.max(1, now - lastRun);
+		lastRun = now;
+		long busy = busyNanos.sumThenReset();
+		long delivered = messages.sumThenReset();
+		int size = pool.getMaximumPoolSize();
+		int queued = pool.getQueue().size();
+
+		backlog = queued;
+		serviceTime = delivered == 0 ? 0 : busy / delivered;
+		utilization = busy / ((double) elapsed * size);
+
+		int needed = (int) Math.ceil(busy / (elapsed * TARGET_UTILIZATION));
+		int target = size;
+		if (queued > 0) {
+			target = Math.max(size + 1, needed);
+		} else if (needed < size) {
+			target = size - 1;
+		}
+		target = Math.max(minPoolSize, Math.min(maxPoolSize, target));
+
+		if (target > size) {
+			pool.setMaximumPoolSize(target);
+			pool.setCorePoolSize(target);
+			lastDecision = DECISION_GROW;
+			adjustments++;
+		} else if (target < size) {
+			pool.setCorePoolSize(target);
+			pool.setMaximumPoolSize(target);
+			lastDecision = DECISION_SHRINK;
+			adjustments++;
+		} else {
+			lastDecision = DECISION_HOLD;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded {@link Mailbox} supporting all the {@link OverflowPolicy} variants.
+ * Keeps memory bounded for slow units, for example units doing I2C writes, when
+ * they receive more messages than they can handle.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public class BoundedMailbox<T> implements Mailbox<T> {
+	private final ArrayDeque<T> queue;
+	private final int capacity;
+	private final OverflowPolicy policy;
+	private final long blockTimeoutNanos;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+	private final LongAdder dropped = new LongAdder();
+	// Written under the lock, read without it
+	private volatile int size;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param capacity
+	 *            the maximum number of pending messages.
+	 * @param policy
+	 *            what to do when a message is offered to a full mailbox.
+	 * @param blockTimeout
+	 *            the maximum time to block a sender, in milliseconds. Only
+	 *            used with {@link OverflowPolicy#BLOCK}.
+	 */
+	public BoundedMailbox(int capacity, OverflowPolicy policy, long blockTimeout) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1, was " + capacity);
+		}
+		this.capacity = capacity;
+		this.policy = policy;
+		this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+		this.queue = new ArrayDeque<>(capacity);
+	}
+
+	@Override
+	public boolean offer(T message) {
+		Objects.requireNonNull(message, "Cannot enqueue null");
+		lock.lock();
+		try {
+			if (queue.size() == capacity && !makeRoom()) {
+				dropped.increment();
+				return false;
+			}
+			queue.offerLast(message);
+			size = queue.size();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public T poll() {
+		lock.lock();
+		try {
+			T message = queue.pollFirst();
+			if (message != null) {
+				size = queue.size();
+				notFull.signal();
+			}
+			return message;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return the overflow policy of this mailbox.
+	 */
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Called with the lock held, when the mailbox is full.
+	 * 
+	 * @return true if there is room for the new message, false if the new
+	 *         message should be dropped.
+	 */
+	private boolean makeRoom() {
+		switch (policy) {
+		case BLOCK:
+			return awaitRoom();
+		case DROP_OLDEST:
+			queue.pollFirst();
+			dropped.increment();
+			return true;
+		case CONFLATE:
+			queue.pollLast();
+			dropped.increment();
+			return true;
+		case DROP_NEWEST:
+		default:
+			return false;
+		}
+	}
+
+	private boolean awaitRoom() {
+		long nanos = blockTimeoutNanos;
+		try {
+			while (queue.size() == capacity) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
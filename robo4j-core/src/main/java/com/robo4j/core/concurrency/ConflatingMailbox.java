@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * {@link Mailbox} only keeping the latest pending message per key. A message
+ * sent while an older message with the same key is still pending replaces
+ * the older one, which is then counted as dropped. The replacing message
+ * keeps the position of the one it replaced, so keys are delivered in the
+ * order they first became pending.
+ * 
+ * <p>
+ * Useful for units driven by a stream of set points, such as servos and
+ * motors, where only the most recent command matters and a slow device would
+ * otherwise accumulate a backlog of obsolete ones.
+ * 
+ * <p>
+ * Supports multiple producers, but only a single consumer.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public class ConflatingMailbox<T> implements Mailbox<T> {
+	// ConcurrentHashMap does not allow null keys
+	private static final Object NULL_KEY = new Object();
+
+	private final Function<? super T, ?> keyFunction;
+	private final Map<Object, T> latest = new ConcurrentHashMap<>();
+	private final Queue<Object> pendingKeys = new ConcurrentLinkedQueue<>();
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param keyFunction
+	 *            function returning the key of a message. Messages with equal
+	 *            keys replace each other. The function may return null.
+	 */
+	public ConflatingMailbox(Function<? super T, ?> keyFunction) {
+		this.keyFunction = keyFunction;
+	}
+
+	@Override
+	public boolean offer(T message) {
+		Object key = keyOf(message);
+		if (latest.put(key, message) == null) {
+			pendingKeys.offer(key);
+		} else {
+			dropped.increment();
+		}
+		return true;
+	}
+
+	@Override
+	public T poll() {
+		Object key;
+		while ((key = pendingKeys.poll()) != null) {
+			// A key is only queued when its value goes from absent to
+			// present, and only the consumer removes values, so this should
+			// always find a message.
+			T message = latest.remove(key);
+			if (message != null) {
+				return message;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return pendingKeys.isEmpty();
+	}
+
+	@Override
+	public int size() {
+		return pendingKeys.size();
+	}
+
+	@Override
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	private Object keyOf(T message) {
+		Object key = keyFunction.apply(message);
+		return key == null ? NULL_KEY : key;
+	}
+}
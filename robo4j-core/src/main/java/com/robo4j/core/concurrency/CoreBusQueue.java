@@ -16,58 +16,169 @@
  */
 package com.robo4j.core.concurrency;
 
-
-import java.util.Objects;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TransferQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- *
+ * Priority {@link TransferQueue} for the platform bus. Queues created with
+ * {@link #CoreBusQueue(int, int)} keep the elements in one lock free FIFO lane
+ * per priority, see {@link #getPriority(QueueFIFOEntry)}. Consumers always
+ * take from the highest priority non-empty lane, and elements of the same
+ * priority are taken in the order they were offered. Queues created with
+ * {@link #CoreBusQueue(int)} keep a single lane ordered by the natural
+ * ordering of the elements, as a {@link PriorityBlockingQueue} does.
+ * 
+ * <p>
+ * Consumers waiting in {@link #take()} are parked, and unparked one at a time
+ * by producers. A consumer also wakes up after the configured await time, to
+ * notice the queue being deactivated. A deactivated queue returns null from
+ * {@link #take()} once it is empty.
+ * 
+ * <p>
+ * As with {@link java.util.concurrent.LinkedTransferQueue}, removing an
+ * element by {@link #remove(Object)} or through the iterator counts as taking
+ * it, and releases a producer waiting in {@link #transfer(QueueFIFOEntry)}.
  *
  * @author Miroslav Wengner (@miragemiko)
  */
 public abstract class CoreBusQueue<TransferType extends QueueFIFOEntry<? extends TransferSignal>>
-		extends PriorityBlockingQueue<TransferType> implements TransferQueue<TransferType> {
+		extends AbstractQueue<TransferType> implements TransferQueue<TransferType>, Serializable {
 
 	// Class can be serialized/deserialized at runtime. Sender/Receiver class
 	// loading
 	private static final long serialVersionUID = 22L;
-	private static final int INIT_COUNTER = 0;
-	private static final boolean INIT_BUS = true;
 
+	private final Queue<Node<TransferType>>[] lanes;
+	// Null unless the single lane is ordered by the natural ordering
+	private final NaturalOrder<TransferType> order;
+	private final AtomicInteger count = new AtomicInteger();
+	private transient Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
 	/*
-	 * Holding the number of consumers - currently consumer should be only ONE
+	 * Holding the number of consumers
 	 */
-	private AtomicInteger counter;
-	private AtomicBoolean active;
-	private LinkedBlockingQueue<TransferType> transfer;
-	private ReentrantLock lock;
-	/* used to consumer blocking */
-	private Condition conditionTrans;
+	private transient AtomicInteger waitingConsumers = new AtomicInteger();
+	private final AtomicBoolean active = new AtomicBoolean(true);
+	private final AtomicLong sequence = new PaddedSequence();
+	/* setup for platform bus */
+	private final long awaitNanos;
 
-	// TODO :: remove this -> because then it will become extremely fast
-	private Condition conditionElement;
+	private static final class Node<T> implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final T item;
+		private transient volatile Thread producer;
+		private volatile boolean consumed;
 
-	/* setup for platform bus */
-	private int awaitSeconds;
+		Node(T item) {
+			this.item = item;
+		}
+
+		void consume() {
+			consumed = true;
+			Thread t = producer;
+			if (t != null) {
+				LockSupport.unpark(t);
+			}
+		}
+	}
+
+	private static final class NaturalOrder<T extends QueueFIFOEntry<?>> implements Comparator<Node<T>>, Serializable {
+		private static final long serialVersionUID = 1L;
 
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Override
+		public int compare(Node<T> a, Node<T> b) {
+			return ((Comparable) a.item).compareTo(b.item);
+		}
+	}
+
+	private static final class Waiter {
+		private final Thread thread = Thread.currentThread();
+		// Set either by the producer signalling, or the consumer leaving
+		private final AtomicBoolean done = new AtomicBoolean();
+	}
+
+	/**
+	 * Constructor for a queue with a single lane, taking elements in their
+	 * natural order, see {@link QueueFIFOEntry#compareTo(QueueFIFOEntry)}.
+	 * 
+	 * @param awaitSeconds
+	 *            the maximum time a waiting consumer is parked before checking
+	 *            if the queue is still active. Zero to only wake consumers up
+	 *            when signalled.
+	 */
 	public CoreBusQueue(int awaitSeconds) {
-		counter = new AtomicInteger(INIT_COUNTER);
-		active = new AtomicBoolean(INIT_BUS);
-		lock = new ReentrantLock();
-		transfer = new LinkedBlockingQueue<>();
-		conditionTrans = lock.newCondition();
+		this(awaitSeconds, 1, new NaturalOrder<>());
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param awaitSeconds
+	 *            the maximum time a waiting consumer is parked before checking
+	 *            if the queue is still active. Zero to only wake consumers up
+	 *            when signalled.
+	 * @param priorities
+	 *            the number of priority lanes.
+	 */
+	public CoreBusQueue(int awaitSeconds, int priorities) {
+		this(awaitSeconds, priorities, null);
+	}
+
+	private CoreBusQueue(int awaitSeconds, int priorities, NaturalOrder<TransferType> order) {
+		if (priorities < 1) {
+			throw new IllegalArgumentException("At least one priority required");
+		}
+		if (awaitSeconds < 0) {
+			throw new IllegalArgumentException("Await time must not be negative, was " + awaitSeconds);
+		}
+		lanes = createLanes(priorities);
+		for (int i = 0; i < priorities; i++) {
+			lanes[i] = order != null ? new PriorityBlockingQueue<>(11, order) : new ConcurrentLinkedQueue<>();
+		}
+		this.order = order;
+		this.awaitNanos = TimeUnit.SECONDS.toNanos(awaitSeconds);
+	}
 
-		// TODO :: remove this
-		conditionElement = lock.newCondition();
+	/**
+	 * Returns the priority lane for an element, 0 being the highest priority.
+	 * Should be consistent with the natural ordering of the entries. The
+	 * default implementation puts all elements in the first lane, which is
+	 * all there is for queues ordered by the natural ordering.
+	 * 
+	 * @param element
+	 *            the element to get the priority for.
+	 * @return the priority, between 0 and the number of priorities - 1.
+	 */
+	protected int getPriority(TransferType element) {
+		return 0;
+	}
 
-		this.awaitSeconds = awaitSeconds;
+	/**
+	 * Returns the sequence the entries offered to a queue ordered by the
+	 * natural ordering, see {@link #CoreBusQueue(int)}, are stamped with,
+	 * unless created with an explicit sequence, see
+	 * {@link QueueFIFOEntry#QueueFIFOEntry(Comparable, AtomicLong)}.
+	 * 
+	 * @return the sequence of this queue.
+	 */
+	public AtomicLong getSequence() {
+		return sequence;
 	}
 
 	public boolean isActive() {
@@ -79,11 +190,30 @@ public abstract class CoreBusQueue<TransferType extends QueueFIFOEntry<? extends
 	}
 
 	public void deactivate() {
-		this.active.set(false);
+		active.set(false);
+		for (Waiter waiter : waiters) {
+			LockSupport.unpark(waiter.thread);
+		}
+	}
+
+	@Override
+	public boolean offer(TransferType e) {
+		enqueue(new Node<>(e));
+		return true;
+	}
+
+	@Override
+	public boolean offer(TransferType e, long timeout, TimeUnit unit) {
+		return offer(e);
+	}
+
+	@Override
+	public void put(TransferType e) {
+		offer(e);
 	}
 
 	/**
-	 * Busy Spin
+	 * Enqueues the element and waits until it is taken by a consumer.
 	 * 
 	 * @param e
 	 *            - command
@@ -91,145 +221,304 @@ public abstract class CoreBusQueue<TransferType extends QueueFIFOEntry<? extends
 	 */
 	@Override
 	public void transfer(TransferType e) throws InterruptedException {
-		lock.lock();
-		try {
-			if (counter.get() != 0) {
-				put(e);
-				conditionElement.signalAll();
-			} else {
-				transfer.add(e);
-				conditionElement.signalAll();
-			}
-		} finally {
-			lock.unlock();
-		}
-
+		Node<TransferType> node = new Node<>(e);
+		node.producer = Thread.currentThread();
+		enqueue(node);
+		awaitConsumed(node, false, 0);
 	}
 
 	@Override
 	public boolean tryTransfer(TransferType e) {
-		boolean result = false;
-		lock.lock();
-		try {
-			if (counter.get() == 0)
-				result = false;
-			else {
-				put(e);
-				result = true;
-				conditionElement.signalAll();
-			}
-		} finally {
-			lock.unlock();
+		if (!hasWaitingConsumer()) {
+			return false;
 		}
-		return result;
+		offer(e);
+		return true;
 	}
 
 	@Override
 	public boolean tryTransfer(TransferType e, long timeout, TimeUnit unit) throws InterruptedException {
-		lock.lock();
-		boolean result = false;
-		try {
-			if (counter.get() != 0) {
-				put(e);
-				result = true;
-				conditionElement.signalAll();
-			} else {
-				transfer.add(e);
-				conditionElement.signalAll();
+		Node<TransferType> node = new Node<>(e);
+		node.producer = Thread.currentThread();
+		enqueue(node);
+		return awaitConsumed(node, true, System.nanoTime() + unit.toNanos(timeout));
+	}
+
+	@Override
+	public boolean hasWaitingConsumer() {
+		return waitingConsumers.get() != 0;
+	}
+
+	@Override
+	public int getWaitingConsumerCount() {
+		return waitingConsumers.get();
+	}
+
+	@Override
+	public TransferType poll() {
+		for (Queue<Node<TransferType>> lane : lanes) {
+			Node<TransferType> node = lane.poll();
+			if (node != null) {
+				count.decrementAndGet();
+				node.consume();
+				return node.item;
 			}
-		} finally {
-			lock.unlock();
 		}
-		return result;
+		return null;
 	}
 
-	/*
-	 * Method queue waits for consumer
+	/**
+	 * Returns the first element in the queue, waiting for one if the queue is
+	 * empty.
+	 * 
+	 * @return the element, or null if the queue was deactivated.
 	 */
 	@Override
-	public boolean hasWaitingConsumer() {
-		return counter.get() != 0;
+	public TransferType take() throws InterruptedException {
+		return await(false, 0);
 	}
 
-	/*
-	 * Method returns the number of waiting consumers
-	 */
 	@Override
-	public int getWaitingConsumerCount() {
-		return counter.get();
+	public TransferType poll(long timeout, TimeUnit unit) throws InterruptedException {
+		return await(true, System.nanoTime() + unit.toNanos(timeout));
 	}
 
 	/*
-	 * returns the first element in queue or is blocked if the queue is empty If
-	 * there is the commend in "transfer", it takes the 1st element and wake up
-	 * thread that is waiting for the command else, or it takes 1st element for
-	 * the queue or is blocked util there is one command int the queue
+	 * Retrieves but does not remove, the head or result null
 	 */
-
 	@Override
-	public TransferType take() throws InterruptedException {
-		lock.lock();
-		TransferType result = transfer.poll();
-		try {
-			counter.incrementAndGet();
-			while (Objects.isNull(result) && active.get()) {
-				conditionTrans.await(awaitSeconds, TimeUnit.SECONDS);
-				lock.unlock();
-				result = super.take();
-				lock.lock();
-				// System.out.println("TAKE HOLD CONSUMER awaitCycle= " +
-				// awaitCycle);
+	public TransferType peek() {
+		for (Queue<Node<TransferType>> lane : lanes) {
+			Node<TransferType> node = lane.peek();
+			if (node != null) {
+				return node.item;
 			}
-			conditionTrans.signalAll();
-			synchronized (result) {
-				result.notifyAll();
+		}
+		return null;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		for (Queue<Node<TransferType>> lane : lanes) {
+			for (Node<TransferType> node : lane) {
+				if (node.item.equals(o) && lane.remove(node)) {
+					count.decrementAndGet();
+					node.consume();
+					return true;
+				}
 			}
-		} catch (InterruptedException e) {
-			// System.out.println("TAKE error= " + e);
-		} finally {
-			counter.decrementAndGet();
-			lock.unlock();
 		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return Math.max(0, count.get());
+	}
 
-		return result;
+	@Override
+	public boolean isEmpty() {
+		return count.get() <= 0;
 	}
 
-	/*
-	 * Retrieves but does not remove, the head or result null
+	@Override
+	public int remainingCapacity() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public int drainTo(Collection<? super TransferType> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super TransferType> c, int maxElements) {
+		if (c == this) {
+			throw new IllegalArgumentException("Can not drain to self");
+		}
+		int drained = 0;
+		TransferType e;
+		while (drained < maxElements && (e = poll()) != null) {
+			c.add(e);
+			drained++;
+		}
+		return drained;
+	}
+
+	/**
+	 * Weakly consistent snapshot of the elements, in the order they would be
+	 * taken. Removing
+	 * an element through the iterator removes it from the queue, if it has
+	 * not been taken already.
 	 */
 	@Override
-	public TransferType peek() {
-		lock.lock();
-		TransferType result = peekCommand();
+	public Iterator<TransferType> iterator() {
+		List<Node<TransferType>> snapshot = new ArrayList<>(size());
+		for (Queue<Node<TransferType>> lane : lanes) {
+			snapshot.addAll(lane);
+		}
+		if (order != null) {
+			snapshot.sort(order);
+		}
+		Iterator<Node<TransferType>> nodes = snapshot.iterator();
+		return new Iterator<TransferType>() {
+			private Node<TransferType> last;
+
+			@Override
+			public boolean hasNext() {
+				return nodes.hasNext();
+			}
+
+			@Override
+			public TransferType next() {
+				last = nodes.next();
+				return last.item;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				if (cancel(last)) {
+					last.consume();
+				}
+				last = null;
+			}
+		};
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <T> Queue<Node<T>>[] createLanes(int priorities) {
+		return new Queue[priorities];
+	}
+
+	private void enqueue(Node<TransferType> node) {
+		if (node.item == null) {
+			throw new NullPointerException();
+		}
+		int priority = getPriority(node.item);
+		if (priority < 0 || priority >= lanes.length) {
+			throw new IllegalArgumentException("Priority out of range: " + priority);
+		}
+		if (order != null) {
+			// Only the ordered lane compares entries; FIFO lanes keep the
+			// order by themselves
+			node.item.stamp(sequence);
+		}
+		// Count first, so that a consumer never sees an element while the
+		// queue is considered empty
+		count.incrementAndGet();
+		lanes[priority].offer(node);
+		signalConsumer();
+	}
+
+	private void signalConsumer() {
+		Waiter waiter;
+		while ((waiter = waiters.poll()) != null) {
+			if (waiter.done.compareAndSet(false, true)) {
+				LockSupport.unpark(waiter.thread);
+				return;
+			}
+		}
+	}
+
+	private TransferType await(boolean timed, long deadline) throws InterruptedException {
+		TransferType result = poll();
+		if (result != null) {
+			return result;
+		}
+		waitingConsumers.incrementAndGet();
 		try {
-			while (Objects.isNull(result) && active.get()) {
-				// conditionTrans.await(awaitSeconds, TimeUnit.SECONDS);
-				// System.out.println("PEEK HOLD CONSUMER start");
-				conditionElement.await();
-				lock.unlock();
-				result = peekCommand();
-				lock.lock();
-				// System.out.println("PEEK HOLD CONSUMER awaitCycle= " +
-				// awaitCycle);
+			while (true) {
+				Waiter waiter = new Waiter();
+				waiters.offer(waiter);
+				// Re-check after registering, so that no signal is lost
+				result = poll();
+				if (result == null && active.get()) {
+					park(timed, deadline);
+					result = poll();
+				}
+				if (!waiter.done.compareAndSet(false, true)) {
+					// Signalled. If we did not get anything, someone else
+					// did; otherwise pass the signal on.
+					if (result != null && !isEmpty()) {
+						signalConsumer();
+					}
+				} else {
+					waiters.remove(waiter);
+				}
+				if (result != null || !active.get() || (timed && deadline - System.nanoTime() <= 0)) {
+					return result;
+				}
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
 			}
-			conditionTrans.signalAll();
-		} catch (InterruptedException e) {
-			// System.out.println("PEEK error= " + e);
 		} finally {
-			lock.unlock();
+			waitingConsumers.decrementAndGet();
 		}
-		return result;
 	}
 
-	protected TransferType peekCommand() {
-		TransferType commandMain = super.peek();
-		TransferType commandTrans = transfer.peek();
-		return Objects.nonNull(commandMain) ? commandMain : commandTrans;
+	private boolean awaitConsumed(Node<TransferType> node, boolean timed, long deadline)
+			throws InterruptedException {
+		while (!node.consumed) {
+			boolean interrupted = Thread.interrupted();
+			if (interrupted || (timed && deadline - System.nanoTime() <= 0)) {
+				if (cancel(node)) {
+					if (interrupted) {
+						throw new InterruptedException();
+					}
+					return false;
+				}
+				// Already taken, will be marked consumed momentarily
+				while (!node.consumed) {
+					Thread.yield();
+				}
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+				return true;
+			}
+			park(timed, deadline);
+		}
+		return true;
 	}
 
-	@Override
-	public int size() {
-		return (super.size() + transfer.size());
+	/**
+	 * Parks until signalled, or for at most the await time, or until the
+	 * deadline, if timed. Without an await time, an untimed park only ends
+	 * when signalled.
+	 */
+	private void park(boolean timed, long deadline) {
+		if (timed) {
+			long nanos = deadline - System.nanoTime();
+			if (awaitNanos > 0) {
+				nanos = Math.min(awaitNanos, nanos);
+			}
+			if (nanos > 0) {
+				LockSupport.parkNanos(this, nanos);
+			}
+		} else if (awaitNanos > 0) {
+			LockSupport.parkNanos(this, awaitNanos);
+		} else {
+			LockSupport.park(this);
+		}
 	}
 
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		waiters = new ConcurrentLinkedQueue<>();
+		waitingConsumers = new AtomicInteger();
+	}
+
+	private boolean cancel(Node<TransferType> node) {
+		for (Queue<Node<TransferType>> lane : lanes) {
+			if (lane.remove(node)) {
+				count.decrementAndGet();
+				return true;
+			}
+		}
+		return false;
+	}
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.PriorityQueue;
+
+/**
+ * Unbounded {@link Mailbox} delivering the messages in order of deadline,
+ * earliest first, see {@link Deadlined}. Messages without a deadline are
+ * delivered after all messages with one, in the order they were sent. Use for
+ * units where an urgent command, such as stopping the motors, must overtake
+ * what is already queued.
+ * 
+ * <p>
+ * Expired messages are not removed by the mailbox; the system drops them
+ * when they are polled.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public class DeadlineMailbox<T> implements Mailbox<T> {
+	// Guarded by itself
+	private final PriorityQueue<Entry<T>> queue = new PriorityQueue<>();
+	private long sequence;
+	private volatile int size;
+
+	private static final class Entry<T> implements Comparable<Entry<T>> {
+		private final T message;
+		private final long deadline;
+		private final long sequence;
+
+		Entry(T message, long deadline, long sequence) {
+			this.message = message;
+			this.deadline = deadline;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Entry<T> other) {
+			// Deadlines are nano times, and must be compared by difference
+			if (deadline != other.deadline) {
+				if (deadline == Deadlined.NO_DEADLINE) {
+					return 1;
+				} else if (other.deadline == Deadlined.NO_DEADLINE) {
+					return -1;
+				}
+				int result = Long.signum(deadline - other.deadline);
+				if (result != 0) {
+					return result;
+				}
+			}
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+
+	@Override
+	public boolean offer(T message) {
+		synchronized (queue) {
+			queue.offer(new Entry<>(message, Deadlined.getDeadline(message), sequence++));
+			size = queue.size();
+		}
+		return true;
+	}
+
+	@Override
+	public T poll() {
+		synchronized (queue) {
+			Entry<T> entry = queue.poll();
+			size = queue.size();
+			return entry == null ? null : entry.message;
+		}
+	}
+
+	/**
+	 * @return the earliest deadline of the pending messages, or
+	 *         {@link Deadlined#NO_DEADLINE}.
+	 */
+	public long getEarliestDeadline() {
+		synchronized (queue) {
+			Entry<T> entry = queue.peek();
+			return entry == null ? Deadlined.NO_DEADLINE : entry.deadline;
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public long getDroppedCount() {
+		return 0;
+	}
+}
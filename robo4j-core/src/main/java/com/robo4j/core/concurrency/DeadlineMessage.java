@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+/**
+ * A message which must be delivered before a deadline, or not at all. Used by
+ * the {@link com.robo4j.core.RoboSystem} to carry the deadline of a message
+ * through the mailbox of the receiving unit; units only ever see the message
+ * itself.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public final class DeadlineMessage<T> implements Deadlined {
+	private final T message;
+	private final long deadline;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param message
+	 *            the message.
+	 * @param deadline
+	 *            the deadline, in {@link System#nanoTime()} time.
+	 */
+	public DeadlineMessage(T message, long deadline) {
+		this.message = message;
+		this.deadline = deadline;
+	}
+
+	public T getMessage() {
+		return message;
+	}
+
+	@Override
+	public long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * @param now
+	 *            the current {@link System#nanoTime()}.
+	 * @return true if the deadline has passed.
+	 */
+	public boolean isExpired(long now) {
+		return now - deadline > 0;
+	}
+
+	@Override
+	public String toString() {
+		return "DeadlineMessage [message=" + message + ", deadline=" + deadline + "]";
+	}
+}
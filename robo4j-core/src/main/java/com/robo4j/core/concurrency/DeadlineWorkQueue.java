@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The work queue of the system executor. Tasks with a deadline, see
+ * {@link Deadlined}, are taken earliest deadline first, before any task
+ * without a deadline; the other tasks are taken in the order they were
+ * offered. This lets the mailbox turn of a unit with an urgent message
+ * overtake a backlog of turns of other units.
+ * 
+ * <p>
+ * Unbounded. The deadline of a task is read once, when it is offered. The
+ * tasks without a deadline are indexed, so moving one ahead, see
+ * {@link #expedite(Runnable, long)}, does not search the queue.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public class DeadlineWorkQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+	private static final Comparator<Entry> EARLIEST_FIRST = (a, b) -> {
+		int result = Long.signum(a.deadline - b.deadline);
+		return result != 0 ? result : Long.compare(a.sequence, b.sequence);
+	};
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	// Guarded by lock
+	private final PriorityQueue<Entry> urgent = new PriorityQueue<>(EARLIEST_FIRST);
+	// Entries removed out of order are only marked, and skipped when polled
+	private final ArrayDeque<Entry> fifo = new ArrayDeque<>();
+	// The oldest queued entry without a deadline per task, chained to the
+	// younger ones for the same task
+	private final Map<Runnable, Entry> index = new HashMap<>();
+	private int fifoSize;
+	private long sequence;
+
+	private static final class Entry {
+		private final Runnable task;
+		private final long deadline;
+		private final long sequence;
+		// Only used for the entries without a deadline
+		private Entry nextSame;
+		private boolean removed;
+
+		Entry(Runnable task, long deadline, long sequence) {
+			this.task = task;
+			this.deadline = deadline;
+			this.sequence = sequence;
+		}
+	}
+
+	@Override
+	public boolean offer(Runnable task) {
+		if (task == null) {
+			throw new NullPointerException();
+		}
+		long deadline = Deadlined.getDeadline(task);
+		lock.lock();
+		try {
+			if (deadline == Deadlined.NO_DEADLINE) {
+				enqueueFifo(task);
+			} else {
+				urgent.offer(new Entry(task, deadline, sequence++));
+			}
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(Runnable task, long timeout, TimeUnit unit) {
+		return offer(task);
+	}
+
+	@Override
+	public void put(Runnable task) {
+		offer(task);
+	}
+
+	/**
+	 * Moves a queued task without a deadline ahead, as if it had been offered
+	 * with the deadline. Used when a message with a deadline is sent to a unit
+	 * whose turn is already queued.
+	 * 
+	 * @param task
+	 *            the task to move.
+	 * @param deadline
+	 *            the deadline, in {@link System#nanoTime()} time.
+	 * @return true if the task was moved, false if it was not queued without
+	 *         a deadline.
+	 */
+	public boolean expedite(Runnable task, long deadline) {
+		lock.lock();
+		try {
+			if (removeFifo(task) == null) {
+				return false;
+			}
+			urgent.offer(new Entry(task, deadline, sequence++));
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable poll() {
+		lock.lock();
+		try {
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			Runnable task;
+			while ((task = dequeue()) == null) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return task;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			Runnable task;
+			while ((task = dequeue()) == null) {
+				notEmpty.await();
+			}
+			return task;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable peek() {
+		lock.lock();
+		try {
+			Entry entry = urgent.peek();
+			if (entry != null) {
+				return entry.task;
+			}
+			entry = peekFifo();
+			return entry != null ? entry.task : null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return urgent.size() + fifoSize;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public boolean remove(Object task) {
+		lock.lock();
+		try {
+			if (task instanceof Runnable && removeFifo((Runnable) task) != null) {
+				return true;
+			}
+			Iterator<Entry> iterator = urgent.iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().task.equals(task)) {
+					iterator.remove();
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> collection) {
+		return drainTo(collection, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> collection, int maxElements) {
+		lock.lock();
+		try {
+			int count = 0;
+			Runnable task;
+			while (count < maxElements && (task = dequeue()) != null) {
+				collection.add(task);
+				count++;
+			}
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns an iterator over a snapshot of the queue. Removing through the
+	 * iterator removes the task from the queue.
+	 */
+	@Override
+	public Iterator<Runnable> iterator() {
+		List<Runnable> snapshot;
+		lock.lock();
+		try {
+			snapshot = new ArrayList<>(urgent.size() + fifoSize);
+			urgent.forEach(entry -> snapshot.add(entry.task));
+			for (Entry entry : fifo) {
+				if (!entry.removed) {
+					snapshot.add(entry.task);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		Iterator<Runnable> iterator = snapshot.iterator();
+		return new Iterator<Runnable>() {
+			private Runnable last;
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Runnable next() {
+				last = iterator.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				DeadlineWorkQueue.this.remove(last);
+				last = null;
+			}
+		};
+	}
+
+	private Runnable dequeue() {
+		Entry entry = urgent.poll();
+		if (entry != null) {
+			return entry.task;
+		}
+		entry = peekFifo();
+		if (entry == null) {
+			return null;
+		}
+		fifo.poll();
+		unindex(entry);
+		return entry.task;
+	}
+
+	private void enqueueFifo(Runnable task) {
+		Entry entry = new Entry(task, Deadlined.NO_DEADLINE, 0);
+		fifo.offer(entry);
+		fifoSize++;
+		Entry same = index.putIfAbsent(task, entry);
+		if (same != null) {
+			// Queued more than once, rare
+			while (same.nextSame != null) {
+				same = same.nextSame;
+			}
+			same.nextSame = entry;
+		}
+	}
+
+	/**
+	 * Removes the oldest entry for the task, leaving it marked in the fifo.
+	 */
+	private Entry removeFifo(Runnable task) {
+		Entry entry = index.get(task);
+		if (entry == null) {
+			return null;
+		}
+		unindex(entry);
+		entry.removed = true;
+		return entry;
+	}
+
+	/**
+	 * Unlinks the entry, which is the oldest one for its task, from the index.
+	 */
+	private void unindex(Entry entry) {
+		if (entry.nextSame == null) {
+			index.remove(entry.task);
+		} else {
+			index.put(entry.task, entry.nextSame);
+			entry.nextSame = null;
+		}
+		fifoSize--;
+	}
+
+	private Entry peekFifo() {
+		Entry entry;
+		while ((entry = fifo.peek()) != null && entry.removed) {
+			fifo.poll();
+		}
+		return entry;
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+/**
+ * Something which should be handled before a deadline, such as a
+ * {@link DeadlineMessage}. Deadlines are in {@link System#nanoTime()} time.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public interface Deadlined {
+	/**
+	 * Used for work without a deadline, which is handled after all work with
+	 * a deadline.
+	 */
+	long NO_DEADLINE = Long.MAX_VALUE;
+
+	/**
+	 * @return the deadline, in {@link System#nanoTime()} time.
+	 */
+	long getDeadline();
+
+	/**
+	 * @return the deadline of the object, if it has one, else
+	 *         {@link #NO_DEADLINE}.
+	 */
+	static long getDeadline(Object object) {
+		return object instanceof Deadlined ? ((Deadlined) object).getDeadline() : NO_DEADLINE;
+	}
+}
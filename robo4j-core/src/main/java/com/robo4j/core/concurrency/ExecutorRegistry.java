@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.robo4j.core.configuration.Configuration;
+
+/**
+ * Named executors shared by all the units of a system, so that units do not
+ * need to create thread pools of their own. Units get them from
+ * {@link com.robo4j.core.RoboContext#getExecutor(String)}, and must not shut
+ * them down.
+ * 
+ * <p>
+ * There are always three executors:
+ * </p>
+ * <li>
+ * <ul>
+ * io: for short I/O bound tasks, such as reading a sensor or serving a
+ * request. Defaults to 2 threads.
+ * </ul>
+ * <ul>
+ * cpu: for computations. Defaults to the number of available processors.
+ * </ul>
+ * <ul>
+ * blocking: for long running or blocking tasks, such as draining the mailboxes
+ * of units which block in onMessage. Tasks are handed straight to a thread,
+ * which is created if none is idle, up to 256 threads. Once that many are
+ * busy, the submitting thread runs the task itself. Uses virtual threads, if
+ * asked to and supported.
+ * </ul>
+ * </li>
+ * 
+ * <p>
+ * Configuration: the executors child configuration of the system
+ * configuration may contain one child configuration per executor, with the
+ * value poolSize setting the maximum number of threads. Executors with other
+ * names than the above are created as well.
+ * 
+ * <p>
+ * Threads are only started when needed, and time out after being idle for a
+ * while, so unused executors do not cost any threads.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public final class ExecutorRegistry {
+	public static final String CONFIGURATION_KEY_EXECUTORS = "executors";
+	public static final String CONFIGURATION_KEY_POOL_SIZE = "poolSize";
+	public static final String EXECUTOR_IO = "io";
+	public static final String EXECUTOR_CPU = "cpu";
+	public static final String EXECUTOR_BLOCKING = "blocking";
+	public static final int DEFAULT_IO_POOL_SIZE = 2;
+	public static final int DEFAULT_BLOCKING_POOL_SIZE = 256;
+	private static final int KEEP_ALIVE_TIME = 10;
+	private static final String THREAD_PREFIX = "Robo4J ";
+
+	private final Map<String, ExecutorService> executors;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param configuration
+	 *            the executors configuration. May be null, in which case the
+	 *            defaults are used.
+	 * @param virtualThreads
+	 *            true to run the blocking executor on virtual threads, if the
+	 *            JVM supports them.
+	 */
+	public ExecutorRegistry(Configuration configuration, boolean virtualThreads) {
+		Map<String, ExecutorService> result = new HashMap<>();
+		result.put(EXECUTOR_IO, createPool(EXECUTOR_IO, getPoolSize(configuration, EXECUTOR_IO, DEFAULT_IO_POOL_SIZE)));
+		result.put(EXECUTOR_CPU, createPool(EXECUTOR_CPU,
+				getPoolSize(configuration, EXECUTOR_CPU, Runtime.getRuntime().availableProcessors())));
+		if (virtualThreads && VirtualThreads.isSupported()) {
+			result.put(EXECUTOR_BLOCKING, VirtualThreads.newThreadPerTaskExecutor(THREAD_PREFIX + EXECUTOR_BLOCKING));
+		} else {
+			result.put(EXECUTOR_BLOCKING, createElasticPool(EXECUTOR_BLOCKING,
+					getPoolSize(configuration, EXECUTOR_BLOCKING, DEFAULT_BLOCKING_POOL_SIZE)));
+		}
+		if (configuration != null) {
+			for (String name : configuration.getChildNames()) {
+				if (!result.containsKey(name)) {
+					result.put(name, createPool(name, getPoolSize(configuration, name, DEFAULT_IO_POOL_SIZE)));
+				}
+			}
+		}
+		executors = Collections.unmodifiableMap(result);
+	}
+
+	/**
+	 * Returns the executor with the specified name.
+	 * 
+	 * @param name
+	 *            the name of the executor.
+	 * @return the executor.
+	 * @throws IllegalArgumentException
+	 *             if there is no executor with that name.
+	 */
+	public ExecutorService getExecutor(String name) {
+		ExecutorService executor = executors.get(name);
+		if (executor == null) {
+			throw new IllegalArgumentException("No executor named " + name);
+		}
+		return executor;
+	}
+
+	/**
+	 * @return the names of the available executors.
+	 */
+	public Set<String> getNames() {
+		return executors.keySet();
+	}
+
+	/**
+	 * Shuts down all the executors. Already submitted tasks are still
+	 * executed.
+	 */
+	public void shutdown() {
+		executors.values().forEach(ExecutorService::shutdown);
+	}
+
+	private static int getPoolSize(Configuration configuration, String name, int defaultSize) {
+		if (configuration == null) {
+			return defaultSize;
+		}
+		Configuration executorConfiguration = configuration.getChildConfiguration(name);
+		if (executorConfiguration == null) {
+			return defaultSize;
+		}
+		int size = executorConfiguration.getInteger(CONFIGURATION_KEY_POOL_SIZE, defaultSize);
+		if (size < 1) {
+			throw new IllegalArgumentException("Pool size of executor " + name + " must be at least 1, was " + size);
+		}
+		return size;
+	}
+
+	private static ExecutorService createPool(String name, int size) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), new RoboThreadFactory(THREAD_PREFIX + name, true));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Blocking tasks may hold on to their threads for a long time, so queueing
+	 * them behind a fixed number of threads could stall them indefinitely.
+	 * Instead a thread is started for each task that finds no idle thread,
+	 * and the bound only protects against runaway thread creation.
+	 */
+	private static ExecutorService createElasticPool(String name, int maxSize) {
+		return new ThreadPoolExecutor(0, maxSize, KEEP_ALIVE_TIME, TimeUnit.SECONDS, new SynchronousQueue<>(),
+				new RoboThreadFactory(THREAD_PREFIX + name, true), new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+}
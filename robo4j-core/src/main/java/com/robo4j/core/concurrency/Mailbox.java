@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+/**
+ * The message queue owned by a single RoboUnit. Any number of threads may
+ * offer messages, but only one thread at a time will ever poll, since the
+ * {@link com.robo4j.core.RoboSystem} only lets one scheduler turn at a time
+ * drain a given mailbox.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public interface Mailbox<T> {
+	/**
+	 * Enqueues a message. May be called by any thread.
+	 * 
+	 * @param message
+	 *            the message to enqueue.
+	 * @return true if the message was accepted, false if it was rejected.
+	 */
+	boolean offer(T message);
+
+	/**
+	 * Retrieves and removes the next message. Must only be called by the
+	 * thread currently draining the mailbox.
+	 * 
+	 * @return the next message, or null if the mailbox is empty.
+	 */
+	T poll();
+
+	/**
+	 * @return true if there are no pending messages.
+	 */
+	boolean isEmpty();
+
+	/**
+	 * @return the (approximate) number of pending messages.
+	 */
+	int size();
+
+	/**
+	 * @return the number of messages dropped by this mailbox, either because
+	 *         they were rejected, or because they were evicted to make room.
+	 */
+	long getDroppedCount();
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.function.Function;
+
+import com.robo4j.core.ConfigurationException;
+import com.robo4j.core.configuration.Configuration;
+
+/**
+ * Creates the {@link Mailbox} for a unit, based on the unit configuration.
+ * 
+ * <p>
+ * Configuration:
+ * </p>
+ * <li>
+ * <ul>
+ * mailbox: the type of mailbox, "linked" (default), "ring" (bounded, lock
+ * free ring buffer), "latest" (only the latest pending message per key is
+ * delivered, see {@link ConflatingMailbox}) or "deadline" (messages are
+ * delivered earliest deadline first, see {@link DeadlineMailbox}). Units may
+ * provide a different default. Deadline mailboxes are unbounded, and support
+ * neither a capacity nor an overflow policy.
+ * </ul>
+ * <ul>
+ * mailboxCapacity: the capacity of the mailbox. A linked mailbox is unbounded
+ * unless a capacity is configured. Ring buffers default to 1024.
+ * </ul>
+ * <ul>
+ * mailboxOverflowPolicy: what to do when a message is sent to a full mailbox;
+ * "block", "dropOldest", "dropNewest" (default) or "conflate". See
+ * {@link OverflowPolicy}. Ring buffers only support "block" and "dropNewest".
+ * </ul>
+ * <ul>
+ * mailboxBlockTimeout: the maximum time, in milliseconds, a sender is blocked
+ * with the "block" policy, before the message is dropped. Defaults to 1000.
+ * </ul>
+ * </li>
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public final class MailboxFactory {
+	public static final String CONFIGURATION_KEY_MAILBOX = "mailbox";
+	public static final String CONFIGURATION_KEY_CAPACITY = "mailboxCapacity";
+	public static final String CONFIGURATION_KEY_OVERFLOW_POLICY = "mailboxOverflowPolicy";
+	public static final String CONFIGURATION_KEY_BLOCK_TIMEOUT = "mailboxBlockTimeout";
+	public static final String MAILBOX_LINKED = "linked";
+	public static final String MAILBOX_RING = "ring";
+	public static final String MAILBOX_LATEST = "latest";
+	public static final String MAILBOX_DEADLINE = "deadline";
+	public static final int DEFAULT_CAPACITY = 1024;
+	public static final int DEFAULT_BLOCK_TIMEOUT = 1000;
+
+	private MailboxFactory() {
+		// Not to be instantiated
+	}
+
+	/**
+	 * The mailbox settings of a unit, parsed and checked.
+	 */
+	private static final class Settings {
+		private final String type;
+		private final Integer capacity;
+		private final OverflowPolicy policy;
+		private final int blockTimeout;
+
+		Settings(String type, Integer capacity, OverflowPolicy policy, int blockTimeout) {
+			this.type = type;
+			this.capacity = capacity;
+			this.policy = policy;
+			this.blockTimeout = blockTimeout;
+			check(type, capacity, policy, blockTimeout);
+		}
+
+		static Settings parse(Configuration configuration, String defaultType) {
+			if (configuration == null) {
+				return new Settings(defaultType, null, OverflowPolicy.DROP_NEWEST, DEFAULT_BLOCK_TIMEOUT);
+			}
+			return new Settings(configuration.getString(CONFIGURATION_KEY_MAILBOX, defaultType),
+					configuration.getInteger(CONFIGURATION_KEY_CAPACITY, null),
+					OverflowPolicy.getByName(configuration.getString(CONFIGURATION_KEY_OVERFLOW_POLICY,
+							OverflowPolicy.DROP_NEWEST.getName())),
+					configuration.getInteger(CONFIGURATION_KEY_BLOCK_TIMEOUT, DEFAULT_BLOCK_TIMEOUT));
+		}
+	}
+
+	/**
+	 * Creates a mailbox from the provided configuration.
+	 * 
+	 * @param configuration
+	 *            the configuration of the unit. May be null, in which case the
+	 *            default mailbox is created.
+	 * @return the new mailbox.
+	 */
+	public static <T> Mailbox<T> create(Configuration configuration) {
+		return create(configuration, MAILBOX_LINKED, message -> null);
+	}
+
+	/**
+	 * Creates a mailbox from the provided configuration.
+	 * 
+	 * @param configuration
+	 *            the configuration of the unit. May be null, in which case the
+	 *            default mailbox is created.
+	 * @param defaultType
+	 *            the type of mailbox to use if none is configured.
+	 * @param keyFunction
+	 *            the function providing the key of a message, used by the
+	 *            "latest" mailbox.
+	 * @return the new mailbox.
+	 */
+	public static <T> Mailbox<T> create(Configuration configuration, String defaultType,
+			Function<? super T, ?> keyFunction) {
+		return create(Settings.parse(configuration, defaultType), keyFunction);
+	}
+
+	/**
+	 * Checks the mailbox configuration of a unit, so that a broken
+	 * configuration is reported when the unit is initialized, rather than when
+	 * the first message is sent to it.
+	 * 
+	 * @param configuration
+	 *            the configuration of the unit. May be null.
+	 * @param defaultType
+	 *            the type of mailbox to use if none is configured.
+	 * @throws ConfigurationException
+	 *             if the mailbox type, capacity, overflow policy or block
+	 *             timeout is invalid, or not supported by the mailbox type.
+	 */
+	public static void validate(Configuration configuration, String defaultType) throws ConfigurationException {
+		if (configuration == null) {
+			return;
+		}
+		try {
+			Settings.parse(configuration, defaultType);
+		} catch (IllegalArgumentException | ClassCastException e) {
+			throw new ConfigurationException("Invalid mailbox configuration: " + e.getMessage(), e);
+		}
+	}
+
+	private static void check(String type, Integer capacity, OverflowPolicy policy, int blockTimeout) {
+		if (capacity != null && capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1, was " + capacity);
+		}
+		if (blockTimeout < 0) {
+			throw new IllegalArgumentException("Block timeout must not be negative, was " + blockTimeout);
+		}
+		switch (type) {
+		case MAILBOX_LINKED:
+		case MAILBOX_LATEST:
+			break;
+		case MAILBOX_DEADLINE:
+			if (capacity != null || policy != OverflowPolicy.DROP_NEWEST) {
+				throw new IllegalArgumentException("Capacity and overflow policy not supported by deadline mailboxes");
+			}
+			break;
+		case MAILBOX_RING:
+			if (policy != OverflowPolicy.DROP_NEWEST && policy != OverflowPolicy.BLOCK) {
+				throw new IllegalArgumentException(
+						"Overflow policy " + policy.getName() + " not supported by ring buffers");
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown mailbox type " + type);
+		}
+	}
+
+	private static <T> Mailbox<T> create(Settings settings, Function<? super T, ?> keyFunction) {
+		switch (settings.type) {
+		case MAILBOX_LINKED:
+			if (settings.capacity == null) {
+				return new LinkedMailbox<>();
+			}
+			return new BoundedMailbox<>(settings.capacity, settings.policy, settings.blockTimeout);
+		case MAILBOX_RING:
+			return new RingBufferMailbox<>(settings.capacity == null ? DEFAULT_CAPACITY : settings.capacity,
+					settings.policy, settings.blockTimeout);
+		case MAILBOX_LATEST:
+			return new ConflatingMailbox<>(keyFunction);
+		case MAILBOX_DEADLINE:
+			return new DeadlineMailbox<>();
+		default:
+			throw new IllegalArgumentException("Unknown mailbox type " + settings.type);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+/**
+ * What a bounded {@link Mailbox} does with a message offered when it is full.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public enum OverflowPolicy {
+	/**
+	 * The sender waits for room, up to the configured block timeout. If there
+	 * is still no room after the timeout, the new message is dropped.
+	 */
+	BLOCK("block"),
+	/**
+	 * The oldest pending message is dropped to make room for the new one.
+	 */
+	DROP_OLDEST("dropOldest"),
+	/**
+	 * The new message is dropped.
+	 */
+	DROP_NEWEST("dropNewest"),
+	/**
+	 * The newest pending message is replaced by the new one, so that the unit
+	 * works through the backlog, but always ends on the most recent message.
+	 */
+	CONFLATE("conflate");
+
+	private final String name;
+
+	OverflowPolicy(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return the name used in configurations.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Looks up the overflow policy by its configuration name.
+	 * 
+	 * @param name
+	 *            the configuration name.
+	 * @return the policy.
+	 * @throws IllegalArgumentException
+	 *             if there is no such policy.
+	 */
+	public static OverflowPolicy getByName(String name) {
+		for (OverflowPolicy policy : values()) {
+			if (policy.name.equals(name)) {
+				return policy;
+			}
+		}
+		throw new IllegalArgumentException("Unknown overflow policy " + name);
+	}
+}
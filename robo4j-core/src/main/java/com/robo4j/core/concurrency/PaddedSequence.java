@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link AtomicLong} padded to (at least) fill a cache line on its own, so
+ * that sequences updated by different threads do not suffer from false
+ * sharing.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public class PaddedSequence extends AtomicLong {
+	private static final long serialVersionUID = 1L;
+
+	// Never read, only there to take up space after the value.
+	long p1, p2, p3, p4, p5, p6;
+
+	public PaddedSequence() {
+	}
+
+	public PaddedSequence(long initialValue) {
+		super(initialValue);
+	}
+
+	/**
+	 * Here to keep the padding from being considered unused.
+	 */
+	long sumPadding() {
+		return p1 + p2 + p3 + p4 + p5 + p6;
+	}
+}
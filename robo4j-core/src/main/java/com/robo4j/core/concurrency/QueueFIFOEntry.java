@@ -17,21 +17,55 @@
 package com.robo4j.core.concurrency;
 
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * keep order in the queue
+ * 
+ * <p>
+ * Entries of equal priority are ordered by a sequence number. Entries created
+ * with {@link #QueueFIFOEntry(Comparable)} are stamped with the sequence of the
+ * ordered {@link CoreBusQueue} they are first offered to, see
+ * {@link CoreBusQueue#getSequence()}, so that producers on different queues do
+ * not contend on the same counter. Entries created with
+ * {@link #QueueFIFOEntry(Comparable, AtomicLong)} are stamped right away by
+ * the provided sequence. Only entries stamped by the same sequence should be
+ * compared; entries not yet stamped come before stamped ones, and are equal
+ * among themselves. Comparing does not stamp.
  *
  * @author Miroslav Wengner (@miragemiko)
  */
 public class QueueFIFOEntry<FIFOTransferType extends Comparable<FIFOTransferType>>
 		implements Comparable<QueueFIFOEntry<FIFOTransferType>>, TransferSignal {
 
-	private static final AtomicLong seq = new AtomicLong(0);
-	private final long seqNum;
+	@SuppressWarnings("rawtypes")
+	private static final AtomicLongFieldUpdater<QueueFIFOEntry> SEQ_NUM = AtomicLongFieldUpdater
+			.newUpdater(QueueFIFOEntry.class, "seqNum");
+	private static final long UNSTAMPED = Long.MIN_VALUE;
+	private volatile long seqNum;
 	private final FIFOTransferType entry;
 
+	/**
+	 * Creates an entry, stamped by the queue it is offered to.
+	 * 
+	 * @param entry
+	 *            the entry.
+	 */
 	public QueueFIFOEntry(FIFOTransferType entry) {
-		seqNum = seq.getAndIncrement();
+		this.seqNum = UNSTAMPED;
+		this.entry = entry;
+	}
+
+	/**
+	 * Creates an entry stamped by the provided sequence.
+	 * 
+	 * @param entry
+	 *            the entry.
+	 * @param sequence
+	 *            the sequence of the queue the entry is for.
+	 */
+	public QueueFIFOEntry(FIFOTransferType entry, AtomicLong sequence) {
+		seqNum = sequence.getAndIncrement();
 		this.entry = entry;
 	}
 
@@ -42,7 +76,19 @@ public class QueueFIFOEntry<FIFOTransferType extends Comparable<FIFOTransferType
 	public int compareTo(QueueFIFOEntry<FIFOTransferType> other) {
 		int res = entry.compareTo(other.entry);
 		if (res == 0 && other.entry != this.entry)
-			res = (seqNum < other.seqNum ? -1 : 1);
+			res = Long.compare(seqNum, other.seqNum);
 		return res;
 	}
+
+	/**
+	 * Stamps the entry by the provided sequence, unless already stamped.
+	 * 
+	 * @param sequence
+	 *            the sequence of the queue the entry is offered to.
+	 */
+	void stamp(AtomicLong sequence) {
+		if (seqNum == UNSTAMPED) {
+			SEQ_NUM.compareAndSet(this, UNSTAMPED, sequence.getAndIncrement());
+		}
+	}
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, lock free, multi-producer/single-consumer {@link Mailbox}, backed by
+ * a ring buffer. Nothing is allocated when messages are enqueued or dequeued,
+ * which makes this mailbox a good fit for units receiving messages at a high
+ * rate, such as IMU or lidar units.
+ * 
+ * <p>
+ * Producers claim a slot by incrementing the producer sequence, and then
+ * publish the message into the slot. The single consumer reads the slot for the
+ * consumer sequence, clears it and advances the consumer sequence. A null slot
+ * with a consumer sequence behind the producer sequence means a producer has
+ * claimed the slot but not yet published into it.
+ * 
+ * <p>
+ * Supports the {@link OverflowPolicy#DROP_NEWEST} and
+ * {@link OverflowPolicy#BLOCK} overflow policies. Since only the consumer may
+ * remove messages, evicting policies are not supported.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public class RingBufferMailbox<T> implements Mailbox<T> {
+	private static final long BLOCK_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+	private final int capacity;
+	private final int mask;
+	private final AtomicReferenceArray<T> buffer;
+	private final PaddedSequence producerSequence = new PaddedSequence();
+	private final PaddedSequence consumerSequence = new PaddedSequence();
+	// Cached producer view of how far we can go before reading the consumer
+	// sequence again. Saves the producers from hitting the consumer cache line
+	// on every offer.
+	private final PaddedSequence producerLimit;
+	private final OverflowPolicy policy;
+	private final long blockTimeoutNanos;
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	 * Creates a ring buffer mailbox dropping new messages when full.
+	 * 
+	 * @param capacity
+	 *            the requested capacity. Will be rounded up to the nearest
+	 *            power of two.
+	 */
+	public RingBufferMailbox(int capacity) {
+		this(capacity, OverflowPolicy.DROP_NEWEST, 0);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param capacity
+	 *            the requested capacity. Will be rounded up to the nearest
+	 *            power of two.
+	 * @param policy
+	 *            what to do when a message is offered to a full mailbox.
+	 * @param blockTimeout
+	 *            the maximum time to block a sender, in milliseconds. Only
+	 *            used with {@link OverflowPolicy#BLOCK}.
+	 */
+	public RingBufferMailbox(int capacity, OverflowPolicy policy, long blockTimeout) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1, was " + capacity);
+		}
+		if (policy != OverflowPolicy.DROP_NEWEST && policy != OverflowPolicy.BLOCK) {
+			throw new IllegalArgumentException("Overflow policy " + policy.getName() + " not supported by ring buffers");
+		}
+		this.policy = policy;
+		this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+		this.capacity = roundToPowerOfTwo(capacity);
+		this.mask = this.capacity - 1;
+		this.buffer = new AtomicReferenceArray<>(this.capacity);
+		this.producerLimit = new PaddedSequence(this.capacity);
+	}
+
+	@Override
+	public boolean offer(T message) {
+		Objects.requireNonNull(message, "Cannot enqueue null");
+		if (tryOffer(message)) {
+			return true;
+		}
+		if (policy == OverflowPolicy.BLOCK) {
+			long deadline = System.nanoTime() + blockTimeoutNanos;
+			do {
+				LockSupport.parkNanos(BLOCK_BACKOFF_NANOS);
+				if (tryOffer(message)) {
+					return true;
+				}
+			} while (System.nanoTime() - deadline < 0 && !Thread.currentThread().isInterrupted());
+		}
+		dropped.increment();
+		return false;
+	}
+
+	private boolean tryOffer(T message) {
+		long limit = producerLimit.get();
+		long index;
+		do {
+			index = producerSequence.get();
+			if (index >= limit) {
+				limit = consumerSequence.get() + capacity;
+				if (index >= limit) {
+					return false;
+				}
+				producerLimit.lazySet(limit);
+			}
+		} while (!producerSequence.compareAndSet(index, index + 1));
+		buffer.lazySet(offset(index), message);
+		return true;
+	}
+
+	@Override
+	public T poll() {
+		long index = consumerSequence.get();
+		int offset = offset(index);
+		T message = buffer.get(offset);
+		if (message == null) {
+			if (index == producerSequence.get()) {
+				return null;
+			}
+			// Slot is claimed, but the producer has not published yet. This
+			// is only a couple of instructions away, so spin.
+			do {
+				message = buffer.get(offset);
+			} while (message == null);
+		}
+		buffer.lazySet(offset, null);
+		consumerSequence.lazySet(index + 1);
+		return message;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return consumerSequence.get() == producerSequence.get();
+	}
+
+	@Override
+	public int size() {
+		// Read the consumer first, so that we never see a negative size.
+		long consumer = consumerSequence.get();
+		long producer = producerSequence.get();
+		return (int) Math.min(producer - consumer, capacity);
+	}
+
+	@Override
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return the actual capacity of this mailbox.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	private int offset(long index) {
+		return (int) index & mask;
+	}
+
+	private static int roundToPowerOfTwo(int value) {
+		int highest = Integer.highestOneBit(value);
+		return highest == value ? value : highest << 1;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.robo4j.core.logging.SimpleLoggingUtil;
+
+/**
+ * Access to virtual threads, when running on a JVM which has them (Java 21 and
+ * later). Robo4J is still built for Java 8, so everything is looked up
+ * reflectively.
+ * 
+ * <p>
+ * On JVMs without virtual threads, an elastic pool of platform threads is used
+ * instead, which at least keeps blocking tasks from starving each other.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public final class VirtualThreads {
+	private static final int ELASTIC_KEEP_ALIVE_TIME = 60;
+	private static final Method OF_VIRTUAL = lookupOfVirtual();
+
+	private VirtualThreads() {
+		// Not to be instantiated
+	}
+
+	/**
+	 * @return true if the JVM supports virtual threads.
+	 */
+	public static boolean isSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Creates an executor starting a new virtual thread for each task. If
+	 * virtual threads are not supported, an elastic pool of daemon platform
+	 * threads is returned instead.
+	 * 
+	 * @param prefix
+	 *            the prefix to use for the thread names.
+	 * @return the executor.
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+		if (isSupported()) {
+			try {
+				Object builder = OF_VIRTUAL.invoke(null);
+				Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+				builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix + "-", 1L);
+				ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+				return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+						.invoke(null, factory);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				SimpleLoggingUtil.error(VirtualThreads.class, "Could not create virtual thread executor", e);
+			}
+		}
+		return new ThreadPoolExecutor(0, Integer.MAX_VALUE, ELASTIC_KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+				new SynchronousQueue<>(), new RoboThreadFactory(prefix, true));
+	}
+
+	private static Method lookupOfVirtual() {
+		try {
+			return Thread.class.getMethod("ofVirtual");
+		} catch (NoSuchMethodException | SecurityException e) {
+			return null;
+		}
+	}
+}
@@ -18,6 +18,8 @@ package com.robo4j.core.configuration;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayDeque;
 import java.util.Deque;
 
@@ -147,11 +149,19 @@ public class XmlConfigurationFactory {
 	}
 
 	public static Configuration fromXml(String xml) throws ConfigurationFactoryException {
+		try {
+			return fromXml(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+		} catch (UnsupportedEncodingException e) {
+			throw new ConfigurationFactoryException("Could not parse the configuration", e);
+		}
+	}
+
+	public static Configuration fromXml(InputStream inputStream) throws ConfigurationFactoryException {
 		DefaultConfiguration config = new DefaultConfiguration();
 		SAXParser saxParser;
 		try {
 			saxParser = SAXParserFactory.newInstance().newSAXParser();
-			saxParser.parse(new ByteArrayInputStream(xml.getBytes("UTF-8")), new ConfigurationHandler(config));
+			saxParser.parse(inputStream, new ConfigurationHandler(config));
 		} catch (ParserConfigurationException | SAXException | IOException e) {
 			throw new ConfigurationFactoryException("Could not parse the configuration", e);
 		}
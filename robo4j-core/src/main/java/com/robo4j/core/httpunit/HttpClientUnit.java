@@ -21,17 +21,12 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import com.robo4j.core.ConfigurationException;
 import com.robo4j.core.LifecycleState;
 import com.robo4j.core.RoboContext;
 import com.robo4j.core.RoboUnit;
 import com.robo4j.core.client.util.RoboHttpUtils;
-import com.robo4j.core.concurrency.RoboThreadFactory;
 import com.robo4j.core.configuration.Configuration;
 
 /**
@@ -42,9 +37,6 @@ import com.robo4j.core.configuration.Configuration;
  */
 public class HttpClientUnit extends RoboUnit<Object> {
 
-	private final ExecutorService executor = new ThreadPoolExecutor(RoboHttpUtils.DEFAULT_THREAD_POOL_SIZE,
-			RoboHttpUtils.DEFAULT_THREAD_POOL_SIZE, RoboHttpUtils.KEEP_ALIVE_TIME, TimeUnit.SECONDS,
-			new LinkedBlockingQueue<>(), new RoboThreadFactory("Robo4J HttpClientUnit ", true));
 	private InetSocketAddress address;
 
 	public HttpClientUnit(RoboContext context, String id) {
@@ -87,7 +79,6 @@ public class HttpClientUnit extends RoboUnit<Object> {
 	@Override
 	public void shutdown() {
 		setState(LifecycleState.SHUTTING_DOWN);
-		executor.shutdownNow();
 		setState(LifecycleState.SHUTDOWN);
 	}
 
@@ -33,11 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import com.robo4j.core.ConfigurationException;
@@ -48,6 +44,7 @@ import com.robo4j.core.RoboUnit;
 import com.robo4j.core.client.request.RoboRequestCallable;
 import com.robo4j.core.client.request.RoboRequestFactory;
 import com.robo4j.core.client.util.RoboHttpUtils;
+import com.robo4j.core.concurrency.ExecutorRegistry;
 import com.robo4j.core.concurrency.RoboThreadFactory;
 import com.robo4j.core.configuration.Configuration;
 import com.robo4j.core.logging.SimpleLoggingUtil;
@@ -60,15 +57,11 @@ import com.robo4j.core.logging.SimpleLoggingUtil;
  * @author Miro Wengner (@miragemiko)
  */
 public class HttpServerUnit extends RoboUnit<Object> {
-	private static final int DEFAULT_THREAD_POOL_SIZE = 2;
-	private static final int KEEP_ALIVE_TIME = 10;
 	private static final int _DEFAULT_PORT = 8042;
 	private static final String HTTP_COMMAND = "command";
 	private static final Set<LifecycleState> activeStates = EnumSet.of(LifecycleState.STARTED, LifecycleState.STARTING);
 	private static final HttpCodecRegistry CODEC_REGISTRY = new HttpCodecRegistry();
-	private final ExecutorService executor = new ThreadPoolExecutor(DEFAULT_THREAD_POOL_SIZE, DEFAULT_THREAD_POOL_SIZE,
-			KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
-			new RoboThreadFactory("Robo4J HttServerUnit ", true));
+	private static final String SERVER_THREAD_PREFIX = "Robo4J HttpServerUnit";
 	private boolean available;
 	private Integer port;
 	private String target;
@@ -122,7 +115,10 @@ public class HttpServerUnit extends RoboUnit<Object> {
 		final RoboReference<Object> targetRef = getContext().getReference(target);
 		if (!available) {
 			available = true;
-			executor.execute(() -> server(targetRef));
+			// The server loop runs for as long as the unit is started, so it
+			// gets a thread of its own rather than one of the shared executors
+			new RoboThreadFactory(SERVER_THREAD_PREFIX + " " + getId(), true).newThread(() -> server(targetRef))
+					.start();
 		} else {
 			System.out.println("HttpDynamicUnit start() -> error: " + targetRef);
 		}
@@ -139,7 +135,6 @@ public class HttpServerUnit extends RoboUnit<Object> {
 	@Override
 	public void shutdown() {
 		setState(LifecycleState.SHUTTING_DOWN);
-		executor.shutdownNow();
 		stopServer("shutdown");
 		setState(LifecycleState.SHUTDOWN);
 	}
@@ -150,6 +145,10 @@ public class HttpServerUnit extends RoboUnit<Object> {
 			if (server != null && server.isOpen()) {
 				server.close();
 			}
+			// Wake the server loop up, so that it notices the state change
+			if (selector != null) {
+				selector.wakeup();
+			}
 		} catch (IOException e) {
 			SimpleLoggingUtil.error(getClass(), "method:" + method + ",server problem: ", e);
 		}
@@ -200,7 +199,7 @@ public class HttpServerUnit extends RoboUnit<Object> {
 								.filter(u -> registeredUnitIds.contains(u.getId()))
 								.collect(Collectors.toList());
 						//@formatter:on
-						Future<Object> result = executor
+						Future<Object> result = getContext().getExecutor(ExecutorRegistry.EXECUTOR_IO)
 								.submit(new RoboRequestCallable(requestChannel.socket(), new RoboRequestFactory(),
 										registeredUnits));
 						targetRef.sendMessage(result.get());
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.scheduler;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.robo4j.core.RoboContext;
+import com.robo4j.core.RoboReference;
+import com.robo4j.core.logging.SimpleLoggingUtil;
+
+/**
+ * One shared periodic tick for all the scheduled messages with the same
+ * period, so that twenty servo channels updated every 20 ms cost one wake-up
+ * of the scheduler every 20 ms, not twenty. The messages due are sent one
+ * after the other, so that messages to the same unit end up in the same
+ * mailbox turn.
+ * 
+ * <p>
+ * The tick is started by the first schedule, and stopped when the last one
+ * is done. It starts after the delay of the first schedule, but no later
+ * than one period, and then keeps ticking every period, whatever the delays
+ * of the schedules. A schedule fires on the first tick at or after its delay,
+ * so its first message is at most one period late; after that, it keeps the
+ * period.
+ * 
+ * <p>
+ * A schedule failing to send its message, or with a failing final invocation
+ * listener, is logged, and does not stop the tick for the other schedules.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+final class CoalescedTimer implements Runnable {
+	private final RoboContext context;
+	private final long periodNanos;
+	private final ConcurrentMap<Long, CoalescedTimer> timers;
+	private final List<Schedule<?>> schedules = new CopyOnWriteArrayList<>();
+	// Guarded by this
+	private boolean closed;
+	private volatile ScheduledFuture<?> future;
+
+	/**
+	 * A message scheduled on a shared tick.
+	 */
+	private final class Schedule<T> extends ScheduledTask {
+		private final RoboReference<T> target;
+		private final T message;
+		private final long firstDeadline;
+		private final FinalInvocationListener listener;
+		// Only accessed from the tick
+		private int remainingInvocations;
+
+		Schedule(RoboReference<T> target, T message, long firstDeadline, int numberOfInvocations,
+				FinalInvocationListener listener) {
+			this.target = target;
+			this.message = message;
+			this.firstDeadline = firstDeadline;
+			this.remainingInvocations = numberOfInvocations;
+			this.listener = listener;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			long now = System.nanoTime();
+			ScheduledFuture<?> tick = future;
+			long nextTick = tick == null ? firstDeadline : now + tick.getDelay(TimeUnit.NANOSECONDS);
+			return unit.convert(Math.max(firstDeadline, nextTick) - now, TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		protected void onCancel() {
+			remove(this);
+		}
+
+		/**
+		 * Sends the message. Returns true if this was the final invocation.
+		 */
+		boolean fire() {
+			try {
+				DefaultScheduler.sendMessage(target, message);
+			} catch (RuntimeException e) {
+				SimpleLoggingUtil.error(getClass(), "Error sending scheduled message to " + target, e);
+			}
+			if (remainingInvocations > 0 && --remainingInvocations == 0) {
+				if (listener != null) {
+					try {
+						listener.onFinalInvocation(context);
+					} catch (RuntimeException e) {
+						SimpleLoggingUtil.error(getClass(), "Error in final invocation listener " + listener, e);
+					}
+				}
+				// Same as the non coalesced schedules, which cancel the future
+				finish(STATE_CANCELLED);
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param context
+	 *            the context, passed to the final invocation listeners.
+	 * @param periodNanos
+	 *            the period of the tick.
+	 * @param timers
+	 *            the timers of the scheduler, which the timer removes itself
+	 *            from when stopped.
+	 */
+	CoalescedTimer(RoboContext context, long periodNanos, ConcurrentMap<Long, CoalescedTimer> timers) {
+		this.context = context;
+		this.periodNanos = periodNanos;
+		this.timers = timers;
+	}
+
+	/**
+	 * Adds a schedule, starting the tick if this is the first one.
+	 * 
+	 * @param numberOfInvocations
+	 *            the number of messages to send, or 0 to send until
+	 *            cancelled.
+	 * @return the future of the schedule, or null if the timer has been
+	 *         stopped, in which case the schedule must be added to a new
+	 *         timer.
+	 */
+	synchronized <T> ScheduledFuture<?> add(ScheduledExecutorService executor, RoboReference<T> target, T message,
+			long delayNanos, int numberOfInvocations, FinalInvocationListener listener) {
+		if (closed) {
+			return null;
+		}
+		Schedule<T> schedule = new Schedule<>(target, message, System.nanoTime() + delayNanos, numberOfInvocations,
+				listener);
+		schedules.add(schedule);
+		if (future == null) {
+			// Not waiting for a long delay, which would hold up the schedules
+			// added later with shorter ones
+			future = executor.scheduleAtFixedRate(this, Math.min(delayNanos, periodNanos), periodNanos,
+					TimeUnit.NANOSECONDS);
+		}
+		return schedule;
+	}
+
+	@Override
+	public void run() {
+		long now = System.nanoTime();
+		for (Schedule<?> schedule : schedules) {
+			if (schedule.isDone() || now - schedule.firstDeadline < 0) {
+				continue;
+			}
+			try {
+				if (schedule.fire()) {
+					remove(schedule);
+				}
+			} catch (RuntimeException e) {
+				// An exception escaping the tick would cancel it for all
+				SimpleLoggingUtil.error(getClass(), "Error firing scheduled message to " + schedule.target, e);
+			}
+		}
+	}
+
+	private synchronized void remove(Schedule<?> schedule) {
+		schedules.remove(schedule);
+		if (schedules.isEmpty() && !closed) {
+			closed = true;
+			timers.remove(periodNanos, this);
+			if (future != null) {
+				future.cancel(false);
+			}
+		}
+	}
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.scheduler;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.robo4j.core.AttributeDescriptor;
+import com.robo4j.core.DefaultAttributeDescriptor;
+import com.robo4j.core.logging.SimpleLoggingUtil;
+
+/**
+ * A fixed rate loop for control loops, such as servo updates, motor PID and
+ * sensor sampling. See
+ * {@link Scheduler#scheduleControlLoop(Runnable, long, long, TimeUnit, long)}.
+ * 
+ * <p>
+ * All the loops of a scheduler run on one shared timer thread of maximum
+ * priority, so the runnable must be short; an invocation which overruns
+ * delays the other loops, which shows in their lateness.
+ * 
+ * <p>
+ * Every invocation is due at the start time plus a whole number of periods,
+ * so lateness never accumulates into drift. The timer thread parks until
+ * shortly before the deadline, and then spins for the configured spin time,
+ * trading some CPU for sub-millisecond precision. Periods missed because an
+ * invocation overran are skipped, and counted, rather than run back to back.
+ * 
+ * <p>
+ * How late every invocation fired, and how much the time between two
+ * invocations deviated from the period (the jitter), are recorded in
+ * histograms and available as attributes of the loop, and, for loops
+ * scheduled by
+ * {@link com.robo4j.core.RoboUnit#scheduleControlLoop(Runnable, long, long, TimeUnit, long)},
+ * as published attributes of the unit.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public final class ControlLoop implements ScheduledFuture<Object> {
+	/**
+	 * The number of invocations so far.
+	 */
+	public static final AttributeDescriptor<Long> ATTRIBUTE_INVOCATIONS = DefaultAttributeDescriptor
+			.create(Long.class, "invocations");
+	/**
+	 * The number of periods skipped since an invocation overran.
+	 */
+	public static final AttributeDescriptor<Long> ATTRIBUTE_MISSED_PERIODS = DefaultAttributeDescriptor
+			.create(Long.class, "missedPeriods");
+	/**
+	 * The mean lateness, in nanoseconds.
+	 */
+	public static final AttributeDescriptor<Long> ATTRIBUTE_LATENESS_MEAN = DefaultAttributeDescriptor
+			.create(Long.class, "latenessMean");
+	/**
+	 * The median lateness, in nanoseconds.
+	 */
+	public static final AttributeDescriptor<Long> ATTRIBUTE_LATENESS_P50 = DefaultAttributeDescriptor
+			.create(Long.class, "latenessP50");
+	/**
+	 * The 99th percentile of the lateness, in nanoseconds.
+	 */
+	public static final AttributeDescriptor<Long> ATTRIBUTE_LATENESS_P99 = DefaultAttributeDescriptor
+			.create(Long.class, "latenessP99");
+	/**
+	 * The largest lateness, in nanoseconds.
+	 */
+	public static final AttributeDescriptor<Long> ATTRIBUTE_LATENESS_MAX = DefaultAttributeDescriptor
+			.create(Long.class, "latenessMax");
+	/**
+	 * The median jitter, in nanoseconds.
+	 */
+	public static final AttributeDescriptor<Long> ATTRIBUTE_JITTER_P50 = DefaultAttributeDescriptor
+			.create(Long.class, "jitterP50");
+	/**
+	 * The 99th percentile of the jitter, in nanoseconds.
+	 */
+	public static final AttributeDescriptor<Long> ATTRIBUTE_JITTER_P99 = DefaultAttributeDescriptor
+			.create(Long.class, "jitterP99");
+	/**
+	 * The largest jitter, in nanoseconds.
+	 */
+	public static final AttributeDescriptor<Long> ATTRIBUTE_JITTER_MAX = DefaultAttributeDescriptor
+			.create(Long.class, "jitterMax");
+	private static final Collection<AttributeDescriptor<?>> KNOWN_ATTRIBUTES = Collections
+			.unmodifiableList(Arrays.asList(ATTRIBUTE_INVOCATIONS, ATTRIBUTE_MISSED_PERIODS, ATTRIBUTE_LATENESS_MEAN,
+					ATTRIBUTE_LATENESS_P50, ATTRIBUTE_LATENESS_P99, ATTRIBUTE_LATENESS_MAX, ATTRIBUTE_JITTER_P50,
+					ATTRIBUTE_JITTER_P99, ATTRIBUTE_JITTER_MAX));
+
+	private final Runnable runnable;
+	private final long periodNanos;
+	private final long spinNanos;
+	private final ControlLoopTimer timer;
+	private final LatenessHistogram lateness = new LatenessHistogram();
+	private final LatenessHistogram jitter = new LatenessHistogram();
+	private final CountDownLatch done = new CountDownLatch(1);
+	private volatile boolean cancelled;
+	private volatile long nextDeadline;
+	private volatile long missedPeriods;
+
+	// Only accessed by the timer thread
+	private boolean fired;
+	private long lastFired;
+
+	/**
+	 * Creates and starts a control loop.
+	 * 
+	 * @param runnable
+	 *            the command to run every period.
+	 * @param delay
+	 *            the delay until the first invocation.
+	 * @param period
+	 *            the period.
+	 * @param unit
+	 *            the time unit of the delay and period.
+	 * @param spinNanos
+	 *            the time before every deadline to spin rather than park, in
+	 *            nanoseconds. Zero to never spin.
+	 * @param timer
+	 *            the timer of the scheduler, running the loop.
+	 */
+	ControlLoop(Runnable runnable, long delay, long period, TimeUnit unit, long spinNanos, ControlLoopTimer timer) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("Period must be positive, was " + period);
+		}
+		this.runnable = runnable;
+		this.periodNanos = unit.toNanos(period);
+		this.spinNanos = Math.max(spinNanos, 0);
+		this.timer = timer;
+		this.nextDeadline = System.nanoTime() + unit.toNanos(Math.max(delay, 0));
+		timer.add(this);
+	}
+
+	/**
+	 * @return the histogram of how late the invocations fired, in
+	 *         nanoseconds.
+	 */
+	public LatenessHistogram getLatenessHistogram() {
+		return lateness;
+	}
+
+	/**
+	 * @return the histogram of how much the time between two invocations
+	 *         deviated from the period, in nanoseconds.
+	 */
+	public LatenessHistogram getJitterHistogram() {
+		return jitter;
+	}
+
+	/**
+	 * @return the attributes available from this loop.
+	 */
+	public Collection<AttributeDescriptor<?>> getKnownAttributes() {
+		return KNOWN_ATTRIBUTES;
+	}
+
+	/**
+	 * Returns the current value of an attribute of the loop, see the
+	 * ATTRIBUTE_ constants.
+	 * 
+	 * @param descriptor
+	 *            the attribute to get.
+	 * @return the value, or null if the attribute is not known.
+	 */
+	@SuppressWarnings("unchecked")
+	public <R> R getAttribute(AttributeDescriptor<R> descriptor) {
+		if (descriptor.getAttributeType() != Long.class) {
+			return null;
+		}
+		switch (descriptor.getAttributeName()) {
+		case "invocations":
+			return (R) Long.valueOf(lateness.getCount());
+		case "missedPeriods":
+			return (R) Long.valueOf(missedPeriods);
+		case "latenessMean":
+			return (R) Long.valueOf(lateness.getMean());
+		case "latenessP50":
+			return (R) Long.valueOf(lateness.getValueAtPercentile(50));
+		case "latenessP99":
+			return (R) Long.valueOf(lateness.getValueAtPercentile(99));
+		case "latenessMax":
+			return (R) Long.valueOf(lateness.getMax());
+		case "jitterP50":
+			return (R) Long.valueOf(jitter.getValueAtPercentile(50));
+		case "jitterP99":
+			return (R) Long.valueOf(jitter.getValueAtPercentile(99));
+		case "jitterMax":
+			return (R) Long.valueOf(jitter.getMax());
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public long getDelay(TimeUnit unit) {
+		return unit.convert(nextDeadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public int compareTo(Delayed other) {
+		return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+	}
+
+	/**
+	 * Cancels the loop. A running invocation is never interrupted, since the
+	 * timer thread is shared by all loops.
+	 */
+	@Override
+	public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+		if (cancelled) {
+			return false;
+		}
+		cancelled = true;
+		timer.remove(this);
+		done.countDown();
+		return true;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public boolean isDone() {
+		return cancelled;
+	}
+
+	@Override
+	public Object get() throws InterruptedException {
+		done.await();
+		throw new CancellationException();
+	}
+
+	@Override
+	public Object get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		if (!done.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		throw new CancellationException();
+	}
+
+	@Override
+	public String toString() {
+		return "ControlLoop [period=" + periodNanos + "ns, lateness=" + lateness + ", jitter=" + jitter
+				+ ", missedPeriods=" + missedPeriods + "]";
+	}
+
+	long getNextDeadline() {
+		return nextDeadline;
+	}
+
+	long getSpinNanos() {
+		return spinNanos;
+	}
+
+	/**
+	 * Runs an invocation, and moves the deadline to the next period not
+	 * already passed. Called by the timer thread.
+	 * 
+	 * @param now
+	 *            the time the invocation fired.
+	 */
+	void fire(long now) {
+		long deadline = nextDeadline;
+		lateness.record(now - deadline);
+		if (fired) {
+			jitter.record(Math.abs(now - lastFired - periodNanos));
+		}
+		fired = true;
+		lastFired = now;
+		try {
+			runnable.run();
+		} catch (RuntimeException e) {
+			SimpleLoggingUtil.error(getClass(), "Error in control loop", e);
+		}
+		deadline += periodNanos;
+		long behind = System.nanoTime() - deadline;
+		if (behind >= periodNanos) {
+			long missed = behind / periodNanos;
+			missedPeriods += missed;
+			deadline += missed * periodNanos;
+		}
+		nextDeadline = deadline;
+	}
+}
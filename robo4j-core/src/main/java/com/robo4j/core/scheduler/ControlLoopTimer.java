@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.LockSupport;
+
+import com.robo4j.core.concurrency.RoboThreadFactory;
+
+/**
+ * The single thread running all the {@link ControlLoop}s of a scheduler, so
+ * that the number of loops does not decide the number of threads. The thread
+ * has the maximum priority, is started with the first loop, and fires the
+ * loops in deadline order.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+final class ControlLoopTimer {
+	private static final RoboThreadFactory THREAD_FACTORY = new RoboThreadFactory("Robo4J Control Loop ", true);
+
+	private final Object lock = new Object();
+	// Guarded by lock
+	private final PriorityQueue<ControlLoop> loops = new PriorityQueue<>(
+			(a, b) -> Long.signum(a.getNextDeadline() - b.getNextDeadline()));
+	private Thread thread;
+	private boolean shutdown;
+
+	void add(ControlLoop loop) {
+		Thread toWake;
+		synchronized (lock) {
+			if (shutdown) {
+				throw new RejectedExecutionException("Scheduler is shut down");
+			}
+			loops.add(loop);
+			if (thread == null) {
+				thread = THREAD_FACTORY.newThread(this::run);
+				thread.setPriority(Thread.MAX_PRIORITY);
+				thread.start();
+			}
+			toWake = thread;
+		}
+		LockSupport.unpark(toWake);
+	}
+
+	void remove(ControlLoop loop) {
+		synchronized (lock) {
+			loops.remove(loop);
+		}
+	}
+
+	/**
+	 * Cancels all the loops, and stops the thread.
+	 */
+	void shutdown() {
+		List<ControlLoop> toCancel;
+		Thread toWake;
+		synchronized (lock) {
+			shutdown = true;
+			toCancel = new ArrayList<>(loops);
+			loops.clear();
+			toWake = thread;
+		}
+		toCancel.forEach(loop -> loop.cancel(false));
+		if (toWake != null) {
+			LockSupport.unpark(toWake);
+		}
+	}
+
+	private void run() {
+		while (true) {
+			ControlLoop loop;
+			synchronized (lock) {
+				if (shutdown) {
+					return;
+				}
+				loop = loops.peek();
+			}
+			if (loop == null) {
+				LockSupport.park(this);
+				continue;
+			}
+			long deadline = loop.getNextDeadline();
+			long now = System.nanoTime();
+			long parkUntil = deadline - loop.getSpinNanos();
+			if (now - parkUntil < 0) {
+				// Woken up early when a loop is added, so that an earlier
+				// deadline is noticed
+				LockSupport.parkNanos(this, parkUntil - now);
+				continue;
+			}
+			while ((now = System.nanoTime()) - deadline < 0) {
+				// Spin for the last stretch, parking is not precise enough
+			}
+			synchronized (lock) {
+				if (loops.peek() != loop) {
+					// Cancelled, or an earlier loop was added, while spinning
+					continue;
+				}
+				loops.poll();
+			}
+			loop.fire(now);
+			synchronized (lock) {
+				if (!shutdown && !loop.isCancelled()) {
+					loops.add(loop);
+				}
+			}
+		}
+	}
+}
@@ -16,6 +16,8 @@
  */
 package com.robo4j.core.scheduler;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -23,21 +25,28 @@ import java.util.concurrent.TimeUnit;
 
 import com.robo4j.core.RoboContext;
 import com.robo4j.core.RoboReference;
-import com.robo4j.core.RoboUnit;
 import com.robo4j.core.concurrency.RoboThreadFactory;
 
 /**
  * This is the default scheduler used in Robo4J.
  * 
+ * <p>
+ * Periodic messages with the same period can be made to share one tick, see
+ * {@link CoalescedTimer}. This is opt-in; by default each is scheduled with
+ * the executor of its own.
+ * 
  * @author Marcus Hirt (@hirt)
  * @author Miroslav Wengner (@miragemiko)
  */
 public class DefaultScheduler implements Scheduler {
-	private static final int DEFAULT_NUMBER_OF_THREADS = 2;
+	public static final int DEFAULT_NUMBER_OF_THREADS = 2;
 	private static final int TERMINATION_TIMEOUT = 2;
 
 	private final ScheduledExecutorService executor;
 	private final RoboContext context;
+	private final ControlLoopTimer controlLoops = new ControlLoopTimer();
+	private final ConcurrentMap<Long, CoalescedTimer> timers = new ConcurrentHashMap<>();
+	private final boolean coalesce;
 
 	/**
 	 * Default constructor.
@@ -58,9 +67,28 @@ public class DefaultScheduler implements Scheduler {
 	 *            the number of threads in the thread pool.
 	 */
 	public DefaultScheduler(RoboContext context, int numberOfThreads) {
+		this(context, numberOfThreads, false);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param context
+	 *            the context.
+	 * @param numberOfThreads
+	 *            the number of threads in the thread pool.
+	 * @param coalesce
+	 *            true to send periodic messages with the same period from one
+	 *            shared tick, false to schedule each with the executor.
+	 */
+	public DefaultScheduler(RoboContext context, int numberOfThreads, boolean coalesce) {
 		this.context = context;
-		this.executor = new ScheduledThreadPoolExecutor(numberOfThreads,
+		this.coalesce = coalesce;
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(numberOfThreads,
 				new RoboThreadFactory("Robo4J Scheduler ", true));
+		// Cancelled timeouts should not linger until they would have fired
+		executor.setRemoveOnCancelPolicy(true);
+		this.executor = executor;
 	}
 
 	@Override
@@ -72,6 +100,9 @@ public class DefaultScheduler implements Scheduler {
 	@Override
 	public <T> ScheduledFuture<?> schedule(RoboReference<T> target, T message, long delay, long period, TimeUnit unit,
 			int numberOfInvocations, FinalInvocationListener listener) {
+		if (coalesce) {
+			return scheduleCoalesced(target, message, delay, period, unit, numberOfInvocations, listener);
+		}
 		ScheduledMessageWrapper<T> command = createCommand(target, numberOfInvocations, message, listener);
 		ScheduledFuture<?> future = executor.scheduleAtFixedRate(command, delay, period, unit);
 		command.setFuture(future);
@@ -86,24 +117,43 @@ public class DefaultScheduler implements Scheduler {
 	@Override
 	public <T> ScheduledFuture<?> schedule(RoboReference<T> target, T message, long delay, long interval,
 			TimeUnit unit) {
+		if (coalesce) {
+			return scheduleCoalesced(target, message, delay, interval, unit, 0, null);
+		}
 		return executor.scheduleAtFixedRate( () -> sendMessage(target, message), delay, interval, unit);
 	}
 
+	private <T> ScheduledFuture<?> scheduleCoalesced(RoboReference<T> target, T message, long delay, long period,
+			TimeUnit unit, int numberOfInvocations, FinalInvocationListener listener) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("Period must be positive, was " + period);
+		}
+		long periodNanos = unit.toNanos(period);
+		long delayNanos = unit.toNanos(Math.max(delay, 0));
+		while (true) {
+			CoalescedTimer timer = timers.computeIfAbsent(periodNanos,
+					key -> new CoalescedTimer(context, key, timers));
+			ScheduledFuture<?> future = timer.add(executor, target, message, delayNanos, numberOfInvocations,
+					listener);
+			if (future != null) {
+				return future;
+			}
+			// The timer was stopped as we got it, and removed itself - retry
+		}
+	}
+
 	@Override
 	public void shutdown() throws InterruptedException {
+		controlLoops.shutdown();
 		executor.shutdown();
 		executor.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.SECONDS);
 	}
 
 	static <T> void sendMessage(final RoboReference<T> reference, final T message) {
-		// Performance optimization - let the scheduling thread deliver the
-		// message directly if this is robo unit implementation, instead of
-		// enqueuing it with the message executor.
-		if (reference instanceof RoboUnit) {
-			((RoboUnit<T>) reference).onMessage(message);
-		} else {
-			reference.sendMessage(message);
-		}
+		// Units allowing inline delivery get the message directly on the
+		// scheduler thread, when idle, see InlineDeliveryTrait. Calling
+		// onMessage here would race with the delivery of other messages.
+		reference.sendMessage(message);
 	}
 
 	@Override
@@ -114,5 +164,15 @@ public class DefaultScheduler implements Scheduler {
 	@Override
 	public void schedule(Runnable runnable, long delay, TimeUnit unit) {
 		executor.schedule(runnable, delay, unit);
-	}	
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleOnce(Runnable runnable, long delay, TimeUnit unit) {
+		return executor.schedule(runnable, delay, unit);
+	}
+
+	@Override
+	public ControlLoop scheduleControlLoop(Runnable runnable, long delay, long period, TimeUnit unit, long spinNanos) {
+		return new ControlLoop(runnable, delay, period, unit, spinNanos, controlLoops);
+	}
 }
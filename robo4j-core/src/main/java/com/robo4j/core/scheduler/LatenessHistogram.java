@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.scheduler;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative durations in nanoseconds, such as how late a
+ * {@link ControlLoop} fired. Values are counted in log-linear buckets; eight
+ * per power of two, so that percentiles are reported with at most 12.5%
+ * error, whatever the magnitude.
+ * 
+ * <p>
+ * Recording is wait free, but there must only be one recording thread. Any
+ * thread may read; the values read are consistent enough for monitoring, but
+ * not an atomic snapshot.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public final class LatenessHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private volatile long count;
+	private volatile long sum;
+	private volatile long max;
+
+	/**
+	 * Records a value. Negative values are recorded as zero. Must only be
+	 * called from one thread.
+	 * 
+	 * @param value
+	 *            the value to record, in nanoseconds.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		int index = indexOf(value);
+		counts.lazySet(index, counts.get(index) + 1);
+		sum += value;
+		if (value > max) {
+			max = value;
+		}
+		// Written last, so that readers seeing a count see the values too
+		count++;
+	}
+
+	/**
+	 * @return the number of recorded values.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the largest recorded value.
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * @return the mean of the recorded values, or 0 if nothing has been
+	 *         recorded.
+	 */
+	public long getMean() {
+		long n = count;
+		return n == 0 ? 0 : sum / n;
+	}
+
+	/**
+	 * Returns the value below which the given percentage of the recorded
+	 * values fall, rounded up to the upper bound of its bucket.
+	 * 
+	 * @param percentile
+	 *            the percentile, between 0 and 100.
+	 * @return the value at the percentile, or 0 if nothing has been recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = count;
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(n * Math.min(percentile, 100.0) / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBoundOf(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @return a copy of the bucket counts, see {@link #getBucketUpperBound(int)}.
+	 */
+	public long[] getBucketCounts() {
+		long[] result = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			result[i] = counts.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @param bucket
+	 *            the index of a bucket.
+	 * @return the largest value counted in the bucket.
+	 */
+	public static long getBucketUpperBound(int bucket) {
+		return upperBoundOf(bucket);
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBoundOf(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		long lower = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return lower + width - 1 < 0 ? Long.MAX_VALUE : lower + width - 1;
+	}
+
+	@Override
+	public String toString() {
+		return "LatenessHistogram [count=" + count + ", mean=" + getMean() + ", p99=" + getValueAtPercentile(99)
+				+ ", max=" + max + "]";
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.scheduler;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Base class for the futures of the tasks which the schedulers keep track of
+ * themselves, rather than handing them to an executor. A task is pending
+ * until it is cancelled, or done. Just like the futures of periodic tasks
+ * from an executor, get() throws a {@link CancellationException} once a
+ * periodic task has run its number of invocations.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+abstract class ScheduledTask implements ScheduledFuture<Object> {
+	static final int STATE_PENDING = 0;
+	static final int STATE_CANCELLED = 1;
+	static final int STATE_DONE = 2;
+
+	private static final AtomicIntegerFieldUpdater<ScheduledTask> STATE_UPDATER = AtomicIntegerFieldUpdater
+			.newUpdater(ScheduledTask.class, "state");
+
+	private volatile int state;
+
+	@Override
+	public int compareTo(Delayed other) {
+		return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (!finish(STATE_CANCELLED)) {
+			return false;
+		}
+		onCancel();
+		return true;
+	}
+
+	/**
+	 * Called once when the task is cancelled through {@link #cancel(boolean)}.
+	 */
+	protected void onCancel() {
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return state == STATE_CANCELLED;
+	}
+
+	@Override
+	public boolean isDone() {
+		return state != STATE_PENDING;
+	}
+
+	@Override
+	public synchronized Object get() throws InterruptedException {
+		while (state == STATE_PENDING) {
+			wait();
+		}
+		return getResult();
+	}
+
+	@Override
+	public synchronized Object get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (state == STATE_PENDING) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				throw new TimeoutException();
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return getResult();
+	}
+
+	/**
+	 * Moves the task out of the pending state, and wakes up anyone waiting
+	 * for it.
+	 * 
+	 * @param newState
+	 *            {@link #STATE_CANCELLED} or {@link #STATE_DONE}.
+	 * @return true if the task was pending.
+	 */
+	boolean finish(int newState) {
+		if (!STATE_UPDATER.compareAndSet(this, STATE_PENDING, newState)) {
+			return false;
+		}
+		synchronized (this) {
+			notifyAll();
+		}
+		return true;
+	}
+
+	private Object getResult() {
+		if (state == STATE_CANCELLED) {
+			throw new CancellationException();
+		}
+		return null;
+	}
+}
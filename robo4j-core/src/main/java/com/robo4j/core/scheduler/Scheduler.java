@@ -16,6 +16,8 @@
  */
 package com.robo4j.core.scheduler;
 
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -107,6 +109,26 @@ public interface Scheduler {
 	 *            the listener to execute once the last one has been run.
 	 */
 	void schedule(Runnable runnable, long delay, TimeUnit unit);
+
+	/**
+	 * Schedules a runnable to run once, returning a future which can be used
+	 * to cancel it, such as a timeout which is no longer needed. The default
+	 * implementation wraps the runnable in a {@link FutureTask}, so that a
+	 * cancelled runnable is neither run nor retained.
+	 * 
+	 * @param runnable
+	 *            the command to execute.
+	 * @param delay
+	 *            the delay to wait.
+	 * @param unit
+	 *            the time unit.
+	 * @return the future of the command.
+	 */
+	default Future<?> scheduleOnce(Runnable runnable, long delay, TimeUnit unit) {
+		FutureTask<Void> task = new FutureTask<>(runnable, null);
+		schedule(task, delay, unit);
+		return task;
+	}
 	
 	/**
 	 * 
@@ -121,6 +143,52 @@ public interface Scheduler {
 	 */
 	void scheduleAtFixedRate(Runnable runnable, long delay, long interval, TimeUnit unit);
 	
+	/**
+	 * Schedules a control loop, such as a servo update or sensor sampling,
+	 * which must run at a precise rate. The loops of a scheduler share one
+	 * timer thread, compensate for drift, skip periods they can not keep up
+	 * with, and record how late and how regularly they fire. See
+	 * {@link ControlLoop}.
+	 * 
+	 * @param runnable
+	 *            the command to run every period. Runs on the timer thread
+	 *            shared by all loops, so must be short.
+	 * @param delay
+	 *            the delay until the first invocation.
+	 * @param period
+	 *            the period between successive invocations.
+	 * @param unit
+	 *            the time unit of the delay and period.
+	 * @param spinNanos
+	 *            the time, in nanoseconds, to busy wait rather than park
+	 *            before every deadline. Zero to never spin; a few hundred
+	 *            microseconds is usually enough to fire within microseconds.
+	 * @return the loop, which provides the lateness and jitter statistics,
+	 *         and is used to cancel it.
+	 * @throws UnsupportedOperationException
+	 *             if the scheduler has no timer for control loops. This is
+	 *             what the default implementation does, so that schedulers
+	 *             written before control loops existed still compile; use
+	 *             {@link #scheduleAtFixedRate(Runnable, long, long, TimeUnit)}
+	 *             with those.
+	 */
+	default ControlLoop scheduleControlLoop(Runnable runnable, long delay, long period, TimeUnit unit,
+			long spinNanos) {
+		throw new UnsupportedOperationException(getClass().getName() + " does not support control loops");
+	}
+
+	/**
+	 * Schedules a control loop sending a message to the target every period.
+	 * Lateness is measured when the message is sent; the delivery is still
+	 * subject to the mailbox of the target.
+	 * 
+	 * @see #scheduleControlLoop(Runnable, long, long, TimeUnit, long)
+	 */
+	default <T> ControlLoop scheduleControlLoop(RoboReference<T> target, T message, long delay, long period,
+			TimeUnit unit, long spinNanos) {
+		return scheduleControlLoop(() -> target.sendMessage(message), delay, period, unit, spinNanos);
+	}
+
 	/**
 	 * Scheduler shutdown
 	 */
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+import com.robo4j.core.RoboContext;
+import com.robo4j.core.configuration.Configuration;
+
+/**
+ * Creates the {@link Scheduler} of a system, based on the system
+ * configuration.
+ * 
+ * <p>
+ * Configuration:
+ * </p>
+ * <li>
+ * <ul>
+ * type: "default" (a scheduled thread pool, see {@link DefaultScheduler}) or
+ * "timingWheel" (see {@link TimingWheelScheduler}).
+ * </ul>
+ * <ul>
+ * threads: the number of threads of the default scheduler. Defaults to 2.
+ * </ul>
+ * <ul>
+ * coalesce: true to send periodic messages with the same period from one
+ * shared tick of the default scheduler. Defaults to false.
+ * </ul>
+ * <ul>
+ * tickDuration: the duration of a tick of the timing wheel, in microseconds.
+ * Defaults to 1000.
+ * </ul>
+ * </li>
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public final class SchedulerFactory {
+	public static final String CONFIGURATION_KEY_SCHEDULER = "scheduler";
+	public static final String CONFIGURATION_KEY_TYPE = "type";
+	public static final String CONFIGURATION_KEY_THREADS = "threads";
+	public static final String CONFIGURATION_KEY_COALESCE = "coalesce";
+	public static final String CONFIGURATION_KEY_TICK_DURATION = "tickDuration";
+	public static final String SCHEDULER_DEFAULT = "default";
+	public static final String SCHEDULER_TIMING_WHEEL = "timingWheel";
+
+	private SchedulerFactory() {
+		// Not to be instantiated
+	}
+
+	/**
+	 * Creates a scheduler from the provided configuration.
+	 * 
+	 * @param context
+	 *            the context to create the scheduler for.
+	 * @param configuration
+	 *            the scheduler configuration. May be null, in which case the
+	 *            default scheduler is created.
+	 * @return the new scheduler.
+	 */
+	public static Scheduler create(RoboContext context, Configuration configuration) {
+		if (configuration == null) {
+			return new DefaultScheduler(context);
+		}
+		String type = configuration.getString(CONFIGURATION_KEY_TYPE, SCHEDULER_DEFAULT);
+		switch (type) {
+		case SCHEDULER_DEFAULT:
+			return new DefaultScheduler(context,
+					configuration.getInteger(CONFIGURATION_KEY_THREADS, DefaultScheduler.DEFAULT_NUMBER_OF_THREADS),
+					configuration.getBoolean(CONFIGURATION_KEY_COALESCE, false));
+		case SCHEDULER_TIMING_WHEEL:
+			return new TimingWheelScheduler(context, configuration.getInteger(CONFIGURATION_KEY_TICK_DURATION,
+					(int) TimeUnit.NANOSECONDS.toMicros(TimingWheelScheduler.DEFAULT_TICK_DURATION)),
+					TimeUnit.MICROSECONDS);
+		default:
+			throw new IllegalArgumentException("Unknown scheduler type " + type);
+		}
+	}
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.scheduler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.robo4j.core.RoboContext;
+import com.robo4j.core.RoboReference;
+import com.robo4j.core.concurrency.RoboThreadFactory;
+import com.robo4j.core.logging.SimpleLoggingUtil;
+
+/**
+ * A scheduler based on a hierarchical timing wheel, for systems with many
+ * periodic messages, such as one per sensor, servo and watchdog. Scheduling
+ * and cancelling are O(1), as opposed to the O(log n) of the heap in the
+ * {@link DefaultScheduler}.
+ * 
+ * <p>
+ * Time is divided into ticks. The wheel has four levels of 256 slots each;
+ * the first level holds the tasks due within 256 ticks, one slot per tick,
+ * the next level the tasks due within 256 * 256 ticks, and so on. Whenever
+ * the lower level wraps around, the tasks of the next slot of the higher level
+ * are cascaded down. A task is therefore moved at most three times, whatever
+ * the number of tasks.
+ * 
+ * <p>
+ * A single thread advances the wheel and runs the tasks; messages are sent
+ * with {@link RoboReference#sendMessage(Object)}, and runnables scheduled
+ * should be just as short. Delays and periods are rounded up to whole ticks.
+ * Tasks are handed to the thread through a lock free queue. The thread sleeps
+ * until the next tick with tasks to run or to cascade, and for as long as
+ * nothing is scheduled, rather than waking up every tick.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public class TimingWheelScheduler implements Scheduler {
+	public static final long DEFAULT_TICK_DURATION = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final int WHEEL_BITS = 8;
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	private static final int LEVELS = 4;
+	private static final long MAX_DELTA = (1L << (WHEEL_BITS * LEVELS)) - 1;
+	private static final int TERMINATION_TIMEOUT = 2;
+
+	private final RoboContext context;
+	private final long tickNanos;
+	private final long startNanos;
+	private final Bucket[][] wheels = new Bucket[LEVELS][WHEEL_SIZE];
+	private final Queue<TimerTask> added = new ConcurrentLinkedQueue<>();
+	private final Queue<TimerTask> cancelled = new ConcurrentLinkedQueue<>();
+	private final ControlLoopTimer controlLoops = new ControlLoopTimer();
+	private final Thread worker;
+	private volatile boolean running = true;
+
+	// Only accessed by the worker thread
+	private long currentTick;
+	private int pending;
+
+	/**
+	 * A doubly linked list of tasks, so that cancelled tasks can be unlinked in
+	 * constant time.
+	 */
+	private static final class Bucket {
+		private TimerTask head;
+		private TimerTask tail;
+
+		void add(TimerTask task) {
+			task.bucket = this;
+			task.prev = tail;
+			task.next = null;
+			if (tail == null) {
+				head = task;
+			} else {
+				tail.next = task;
+			}
+			tail = task;
+		}
+
+		void remove(TimerTask task) {
+			if (task.prev == null) {
+				head = task.next;
+			} else {
+				task.prev.next = task.next;
+			}
+			if (task.next == null) {
+				tail = task.prev;
+			} else {
+				task.next.prev = task.prev;
+			}
+			task.bucket = null;
+			task.prev = null;
+			task.next = null;
+		}
+
+		TimerTask poll() {
+			TimerTask task = head;
+			if (task != null) {
+				remove(task);
+			}
+			return task;
+		}
+	}
+
+	private final class TimerTask extends ScheduledTask {
+		private final Runnable action;
+		private final long periodTicks;
+		private final FinalInvocationListener listener;
+		private volatile long deadlineTick;
+
+		// Only accessed by the worker thread
+		private int remainingInvocations;
+		private Bucket bucket;
+		private TimerTask prev;
+		private TimerTask next;
+
+		TimerTask(Runnable action, long deadlineTick, long periodTicks, int numberOfInvocations,
+				FinalInvocationListener listener) {
+			this.action = action;
+			this.deadlineTick = deadlineTick;
+			this.periodTicks = periodTicks;
+			this.remainingInvocations = numberOfInvocations;
+			this.listener = listener;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(startNanos + deadlineTick * tickNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		protected void onCancel() {
+			cancelled.offer(this);
+		}
+
+		/**
+		 * Runs the task. Returns true if it should be run again.
+		 */
+		boolean run() {
+			try {
+				action.run();
+			} catch (RuntimeException e) {
+				SimpleLoggingUtil.error(getClass(), "Error running scheduled task", e);
+			}
+			if (periodTicks == 0) {
+				finish(STATE_DONE);
+				return false;
+			}
+			if (remainingInvocations > 0 && --remainingInvocations == 0) {
+				if (listener != null) {
+					listener.onFinalInvocation(context);
+				}
+				// Same as the default scheduler, which cancels the future
+				finish(STATE_CANCELLED);
+				return false;
+			}
+			return !isDone();
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param context
+	 *            the context.
+	 */
+	public TimingWheelScheduler(RoboContext context) {
+		this(context, DEFAULT_TICK_DURATION, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param context
+	 *            the context.
+	 * @param tickDuration
+	 *            the duration of a tick; the resolution of the scheduler.
+	 * @param unit
+	 *            the time unit of the tick duration.
+	 */
+	public TimingWheelScheduler(RoboContext context, long tickDuration, TimeUnit unit) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("Tick duration must be positive, was " + tickDuration);
+		}
+		this.context = context;
+		this.tickNanos = unit.toNanos(tickDuration);
+		for (int level = 0; level < LEVELS; level++) {
+			for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+				wheels[level][slot] = new Bucket();
+			}
+		}
+		startNanos = System.nanoTime();
+		worker = new RoboThreadFactory("Robo4J Timing Wheel ", true).newThread(this::runWorker);
+		worker.start();
+	}
+
+	@Override
+	public <T> ScheduledFuture<?> schedule(RoboReference<T> target, T message, long delay, long interval, TimeUnit unit,
+			int numberOfInvocations) {
+		return schedule(target, message, delay, interval, unit, numberOfInvocations, null);
+	}
+
+	@Override
+	public <T> ScheduledFuture<?> schedule(RoboReference<T> target, T message, long delay, long period, TimeUnit unit,
+			int numberOfInvocations, FinalInvocationListener listener) {
+		return add(() -> target.sendMessage(message), delay, period, unit, numberOfInvocations, listener);
+	}
+
+	@Override
+	public <T> ScheduledFuture<?> schedule(RoboReference<T> target, T message, long delay, long interval,
+			TimeUnit unit) {
+		return add(() -> target.sendMessage(message), delay, interval, unit, 0, null);
+	}
+
+	@Override
+	public void schedule(Runnable runnable, long delay, TimeUnit unit) {
+		add(runnable, delay, 0, unit, 0, null);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleOnce(Runnable runnable, long delay, TimeUnit unit) {
+		return add(runnable, delay, 0, unit, 0, null);
+	}
+
+	@Override
+	public void scheduleAtFixedRate(Runnable runnable, long delay, long interval, TimeUnit unit) {
+		add(runnable, delay, interval, unit, 0, null);
+	}
+
+	/**
+	 * Control loops do not use the wheel, since they need a timer thread
+	 * which parks and spins to keep time precisely.
+	 */
+	@Override
+	public ControlLoop scheduleControlLoop(Runnable runnable, long delay, long period, TimeUnit unit, long spinNanos) {
+		return new ControlLoop(runnable, delay, period, unit, spinNanos, controlLoops);
+	}
+
+	/**
+	 * Stops the wheel and the control loops. Pending tasks are not run, and
+	 * their futures are cancelled.
+	 */
+	@Override
+	public void shutdown() throws InterruptedException {
+		controlLoops.shutdown();
+		running = false;
+		LockSupport.unpark(worker);
+		worker.join(TimeUnit.SECONDS.toMillis(TERMINATION_TIMEOUT));
+	}
+
+	private ScheduledFuture<?> add(Runnable action, long delay, long period, TimeUnit unit, int numberOfInvocations,
+			FinalInvocationListener listener) {
+		if (!running) {
+			throw new RejectedExecutionException("Scheduler is shut down");
+		}
+		if (period < 0 || (period == 0 && numberOfInvocations != 0)) {
+			throw new IllegalArgumentException("Period must be positive, was " + period);
+		}
+		long deadlineTick = toTicks(System.nanoTime() - startNanos + unit.toNanos(Math.max(delay, 0)));
+		long periodTicks = period == 0 ? 0 : Math.max(1, toTicks(unit.toNanos(period)));
+		TimerTask task = new TimerTask(action, deadlineTick, periodTicks, numberOfInvocations, listener);
+		added.offer(task);
+		if (!running) {
+			// Shut down concurrently; the worker may already have cancelled
+			// the pending tasks
+			task.cancel(false);
+		}
+		LockSupport.unpark(worker);
+		return task;
+	}
+
+	private long toTicks(long nanos) {
+		return (nanos + tickNanos - 1) / tickNanos;
+	}
+
+	private void runWorker() {
+		while (running) {
+			if (pending == 0) {
+				// The wheel is empty, so it can simply be moved to now
+				currentTick = Math.max(currentTick, (System.nanoTime() - startNanos) / tickNanos);
+			}
+			transferAdded();
+			transferCancelled();
+			if (pending == 0) {
+				if (added.isEmpty()) {
+					LockSupport.park(this);
+				}
+				continue;
+			}
+			long nextTick = nextOccupiedTick();
+			long sleep = startNanos + nextTick * tickNanos - System.nanoTime();
+			if (sleep > 0) {
+				LockSupport.parkNanos(this, sleep);
+				continue;
+			}
+			// The ticks skipped have nothing to run or cascade
+			currentTick = nextTick;
+			advance(nextTick);
+		}
+		cancelPending();
+	}
+
+	/**
+	 * Returns the next tick with tasks to run, or to cascade down from the
+	 * higher levels. Ticks without either can be skipped.
+	 */
+	private long nextOccupiedTick() {
+		// Tasks of the first level are all due within one revolution
+		long tick = currentTick + 1;
+		for (long end = currentTick + WHEEL_SIZE; tick <= end; tick++) {
+			if (wheels[0][(int) tick & WHEEL_MASK].head != null || hasCascade(tick)) {
+				return tick;
+			}
+		}
+		// Beyond that, tasks only reach the first level by cascading, which
+		// happens when the first level wraps around. If nothing cascades
+		// for another revolution of the second level, wake up anyway and
+		// look again.
+		tick = ((tick + WHEEL_MASK) >>> WHEEL_BITS) << WHEEL_BITS;
+		for (int i = 1; i < WHEEL_SIZE && !hasCascade(tick); i++) {
+			tick += WHEEL_SIZE;
+		}
+		return tick;
+	}
+
+	private boolean hasCascade(long tick) {
+		for (int level = 1; level < LEVELS; level++) {
+			int shift = level * WHEEL_BITS;
+			if ((tick & ((1L << shift) - 1)) != 0) {
+				return false;
+			}
+			if (wheels[level][(int) (tick >>> shift) & WHEEL_MASK].head != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void cancelPending() {
+		TimerTask task;
+		while ((task = added.poll()) != null) {
+			task.cancel(false);
+		}
+		for (Bucket[] wheel : wheels) {
+			for (Bucket bucket : wheel) {
+				while ((task = bucket.poll()) != null) {
+					task.cancel(false);
+				}
+			}
+		}
+		cancelled.clear();
+		pending = 0;
+	}
+
+	private void transferAdded() {
+		TimerTask task;
+		while ((task = added.poll()) != null) {
+			if (!task.isDone()) {
+				insert(task, currentTick + 1);
+				pending++;
+			}
+		}
+	}
+
+	private void transferCancelled() {
+		TimerTask task;
+		while ((task = cancelled.poll()) != null) {
+			if (task.bucket != null) {
+				task.bucket.remove(task);
+				pending--;
+			}
+		}
+	}
+
+	private void insert(TimerTask task, long earliestTick) {
+		long deadline = Math.max(task.deadlineTick, earliestTick);
+		long delta = Math.min(deadline - currentTick, MAX_DELTA);
+		deadline = currentTick + delta;
+		int level = delta == 0 ? 0 : (63 - Long.numberOfLeadingZeros(delta)) / WHEEL_BITS;
+		int slot = (int) (deadline >>> (level * WHEEL_BITS)) & WHEEL_MASK;
+		wheels[level][slot].add(task);
+	}
+
+	private void advance(long tick) {
+		// Cascade from the top, so that tasks cascaded from a higher level
+		// into the next slot of a lower level are cascaded again right away
+		for (int level = LEVELS - 1; level > 0; level--) {
+			int shift = level * WHEEL_BITS;
+			if ((tick & ((1L << shift) - 1)) == 0) {
+				Bucket bucket = wheels[level][(int) (tick >>> shift) & WHEEL_MASK];
+				TimerTask task;
+				while ((task = bucket.poll()) != null) {
+					insert(task, tick);
+				}
+			}
+		}
+		Bucket bucket = wheels[0][(int) tick & WHEEL_MASK];
+		TimerTask task;
+		while ((task = bucket.poll()) != null) {
+			pending--;
+			if (task.isDone()) {
+				continue;
+			}
+			if (task.run()) {
+				task.deadlineTick += task.periodTicks;
+				insert(task, tick + 1);
+				pending++;
+			}
+		}
+	}
+}
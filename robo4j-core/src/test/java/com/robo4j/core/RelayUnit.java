@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.robo4j.core.configuration.Configuration;
+
+/**
+ * Records the threads handling its messages, and passes the messages on to
+ * the target, if one is configured.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public class RelayUnit extends RoboUnit<String> {
+	private final List<Thread> threads = new CopyOnWriteArrayList<>();
+	private String target;
+
+	public RelayUnit(RoboContext context, String id) {
+		super(String.class, context, id);
+	}
+
+	@Override
+	protected void onInitialization(Configuration configuration) throws ConfigurationException {
+		target = configuration.getString("target", null);
+	}
+
+	@Override
+	public void onMessage(String message) {
+		threads.add(Thread.currentThread());
+		if (target != null) {
+			getContext().getReference(target).sendMessage(message);
+		}
+	}
+
+	public List<Thread> getThreads() {
+		return threads;
+	}
+}
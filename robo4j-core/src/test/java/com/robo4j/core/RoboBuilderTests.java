@@ -16,13 +16,17 @@
  */
 package com.robo4j.core;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import com.robo4j.core.client.util.RoboClassLoader;
+import com.robo4j.core.concurrency.ExecutorRegistry;
 
 /**
  * Test(s) for the builder.
@@ -32,6 +36,8 @@ import com.robo4j.core.client.util.RoboClassLoader;
  */
 public class RoboBuilderTests {
 	private static final int MESSAGES = 10;
+	private static final int ATTRIBUTE_POLL_TRIES = 50;
+	private static final long ATTRIBUTE_POLL_INTERVAL = 20;
 
 	@Test
 	public void testParsingFile() throws RoboBuilderException, InterruptedException, ExecutionException {
@@ -54,11 +60,114 @@ public class RoboBuilderTests {
 
 		DefaultAttributeDescriptor<Integer> descriptor = DefaultAttributeDescriptor
 				.create(Integer.class, "getNumberOfSentMessages");
-		Future<Integer> result = consumer.getAttribute(descriptor);
-		Assert.assertEquals(MESSAGES, (int) result.get());
+		// Messages are delivered asynchronously, and the consumer only gets
+		// its messages once the producer has processed its own.
+		int received = 0;
+		for (int i = 0; i < ATTRIBUTE_POLL_TRIES && received < MESSAGES; i++) {
+			Future<Integer> result = consumer.getAttribute(descriptor);
+			received = result.get();
+			if (received < MESSAGES) {
+				Thread.sleep(ATTRIBUTE_POLL_INTERVAL);
+			}
+		}
+		Assert.assertEquals(MESSAGES, received);
 		context.shutdown();
 	}
 
+	@Test
+	public void testSystemConfiguration() throws RoboBuilderException, InterruptedException, ExecutionException {
+		RoboBuilder builder = new RoboBuilder(RoboClassLoader.getInstance().getResource("system_virtual.xml"));
+		builder.add(RoboClassLoader.getInstance().getResource("test.xml"));
+		RoboContext context = builder.build();
+		Assert.assertEquals(ExecutionMode.VIRTUAL, ((RoboSystem) context).getExecutionMode());
+		Assert.assertEquals(3, ((ThreadPoolExecutor) context.getExecutor(ExecutorRegistry.EXECUTOR_IO)).getMaximumPoolSize());
+		Assert.assertEquals(1, ((ThreadPoolExecutor) context.getExecutor("camera")).getMaximumPoolSize());
+		Assert.assertEquals("camera", context.getExecutor("camera").submit(() -> "camera").get());
+		context.start();
+
+		RoboReference<String> consumer = context.getReference("consumer");
+		for (int i = 0; i < MESSAGES; i++) {
+			consumer.sendMessage("Lalala");
+		}
+		context.shutdown();
+		Assert.assertEquals(MESSAGES, ((StringConsumer) context.getUnits().stream()
+				.filter(u -> u.getId().equals("consumer")).findFirst().get()).getReceivedMessages().size());
+	}
+
+	@Test
+	public void testChainFusion() throws RoboBuilderException {
+		RoboBuilder builder = new RoboBuilder();
+		builder.add(RoboClassLoader.getInstance().getResource("chain.xml"));
+		RoboSystem system = (RoboSystem) builder.build();
+		Assert.assertFalse(getUnit(system, "sensor").isFused());
+		Assert.assertTrue(getUnit(system, "filter").isFused());
+		Assert.assertTrue(getUnit(system, "filter").isInlineDeliveryAllowed());
+		// Explicitly opted out
+		Assert.assertTrue(getUnit(system, "controller").isFused());
+		Assert.assertFalse(getUnit(system, "controller").isInlineDeliveryAllowed());
+		// Two senders
+		Assert.assertFalse(getUnit(system, "actuator").isFused());
+		system.shutdown();
+
+		builder = new RoboBuilder(new ByteArrayInputStream(
+				"<config name=\"com.robo4j.core.root\"><value name=\"fuseChains\" type=\"boolean\">false</value></config>"
+						.getBytes(StandardCharsets.UTF_8)));
+		builder.add(RoboClassLoader.getInstance().getResource("chain.xml"));
+		system = (RoboSystem) builder.build();
+		Assert.assertFalse(getUnit(system, "filter").isFused());
+		Assert.assertFalse(getUnit(system, "filter").isInlineDeliveryAllowed());
+		system.shutdown();
+	}
+
+	@Test
+	public void testFusedChainOnSendingThread() throws RoboBuilderException {
+		RoboBuilder builder = new RoboBuilder();
+		builder.add(RoboClassLoader.getInstance().getResource("fused_chain.xml"));
+		RoboSystem system = (RoboSystem) builder.build();
+		system.start();
+		// The first unit of the chain is idle, so the message runs down all
+		// three fused stages on this thread
+		system.getReference("first").sendMessage("reading");
+		for (String id : new String[] { "first", "second", "third" }) {
+			RelayUnit unit = (RelayUnit) getUnit(system, id);
+			Assert.assertTrue(unit.isFused());
+			Assert.assertEquals(1, unit.getThreads().size());
+			Assert.assertTrue(id, Thread.currentThread() == unit.getThreads().get(0));
+		}
+		system.shutdown();
+	}
+
+	@Test
+	public void testLazyUnits() throws RoboBuilderException, InterruptedException {
+		RoboBuilder builder = new RoboBuilder();
+		builder.add(RoboClassLoader.getInstance().getResource("lazy.xml"));
+		RoboSystem system = (RoboSystem) builder.build();
+		system.start();
+		// Units subscribing to topics can not be lazy
+		Assert.assertEquals(2, system.getUnits().size());
+		Assert.assertFalse(system.getUnits().stream().anyMatch(unit -> unit.getId().equals("consumer")));
+
+		// Created when the producer first looks it up
+		system.getReference("producer").sendMessage("sendRandomMessage");
+		int received = 0;
+		for (int i = 0; i < ATTRIBUTE_POLL_TRIES && received == 0; i++) {
+			Thread.sleep(ATTRIBUTE_POLL_INTERVAL);
+			received = system.getUnits().stream().filter(unit -> unit.getId().equals("consumer"))
+					.mapToInt(unit -> ((StringConsumer) unit).getReceivedMessages().size()).sum();
+		}
+		Assert.assertEquals(1, received);
+		RoboUnit<?> consumer = getUnit(system, "consumer");
+		Assert.assertEquals(LifecycleState.STARTED, consumer.getState());
+		Assert.assertTrue(consumer.isFused());
+		Assert.assertTrue(system.getReference("consumer") == system.getReference("consumer"));
+		Assert.assertNull(system.getReference("missing"));
+		system.shutdown();
+	}
+
+	private static RoboUnit<?> getUnit(RoboSystem system, String id) {
+		return system.getUnits().stream().filter(unit -> unit.getId().equals(id)).findFirst().get();
+	}
+
 	@Test
 	public void testAddingNonUnique() {
 		RoboBuilder builder = new RoboBuilder();
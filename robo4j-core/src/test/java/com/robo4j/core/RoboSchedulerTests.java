@@ -16,16 +16,29 @@
  */
 package com.robo4j.core;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.robo4j.core.configuration.Configuration;
+import com.robo4j.core.configuration.ConfigurationFactory;
+import com.robo4j.core.scheduler.ControlLoop;
 import com.robo4j.core.scheduler.FinalInvocationListener;
+import com.robo4j.core.scheduler.LatenessHistogram;
 import com.robo4j.core.scheduler.Scheduler;
+import com.robo4j.core.scheduler.SchedulerFactory;
+import com.robo4j.core.scheduler.TimingWheelScheduler;
 
 /**
  * Testing scheduling messages.
@@ -83,6 +96,243 @@ public class RoboSchedulerTests {
 		system.shutdown();
 	}
 
+	@Test
+	public void testTimingWheelScheduler() throws InterruptedException, ExecutionException {
+		Configuration configuration = ConfigurationFactory.createEmptyConfiguration();
+		configuration.createChildConfiguration(SchedulerFactory.CONFIGURATION_KEY_SCHEDULER)
+				.setString(SchedulerFactory.CONFIGURATION_KEY_TYPE, SchedulerFactory.SCHEDULER_TIMING_WHEEL);
+		RoboSystem system = new RoboSystem(configuration);
+		Assert.assertTrue(system.getScheduler() instanceof TimingWheelScheduler);
+		StringConsumer consumer = new StringConsumer(system, "consumer");
+		system.addUnits(consumer);
+
+		SchedulerListener listener = new SchedulerListener();
+		ScheduledFuture<?> f1 = system.getScheduler().schedule(consumer, "Lalalala", 0, 2, TimeUnit.MILLISECONDS, 150,
+				listener);
+		ScheduledFuture<?> f2 = system.getScheduler().schedule(consumer, "bläblä", 1, 2, TimeUnit.MILLISECONDS, 150);
+		ScheduledFuture<?> cancelled = system.getScheduler().schedule(consumer, "never", 10, 1, TimeUnit.SECONDS);
+		Assert.assertTrue(cancelled.cancel(false));
+
+		get(f1);
+		get(f2);
+		Assert.assertTrue(f1.isCancelled());
+		Assert.assertTrue(listener.wasFinalCalled);
+		// Messages are delivered asynchronously
+		Thread.sleep(100);
+		Assert.assertEquals(300, consumer.getReceivedMessages().size());
+		system.shutdown();
+	}
+
+	@Test
+	public void testTimingWheelCascading() throws InterruptedException {
+		// A short tick, so that the higher levels of the wheel are used
+		TimingWheelScheduler scheduler = new TimingWheelScheduler(null, 10, TimeUnit.MICROSECONDS);
+		int[] delays = { 0, 1, 5, 50, 200, 700 };
+		CountDownLatch latch = new CountDownLatch(delays.length);
+		AtomicInteger early = new AtomicInteger();
+		long start = System.nanoTime();
+		for (int delay : delays) {
+			scheduler.schedule(() -> {
+				if (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(delay)) {
+					early.incrementAndGet();
+				}
+				latch.countDown();
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(0, early.get());
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void testTimingWheelManySchedules() throws InterruptedException {
+		TimingWheelScheduler scheduler = new TimingWheelScheduler(null);
+		int count = 10000;
+		CountDownLatch latch = new CountDownLatch(count);
+		for (int i = 0; i < count; i++) {
+			scheduler.schedule(latch::countDown, i % 100, TimeUnit.MILLISECONDS);
+		}
+		Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void testTimingWheelShutdown() throws InterruptedException {
+		TimingWheelScheduler scheduler = new TimingWheelScheduler(null);
+		CountDownLatch ran = new CountDownLatch(1);
+		ScheduledFuture<?> soon = scheduler.scheduleOnce(ran::countDown, 1, TimeUnit.MILLISECONDS);
+		ScheduledFuture<?> later = scheduler.scheduleOnce(() -> Assert.fail("Should not run"), 1, TimeUnit.HOURS);
+		Assert.assertTrue(ran.await(1, TimeUnit.SECONDS));
+		Assert.assertTrue(soon.isDone());
+		Assert.assertFalse(later.isDone());
+		scheduler.shutdown();
+		Assert.assertTrue(later.isCancelled());
+	}
+
+	@Test
+	public void testControlLoop() throws InterruptedException {
+		RoboSystem system = new RoboSystem();
+		AtomicInteger invocations = new AtomicInteger();
+		// 100 Hz, spinning for the last 200 microseconds
+		ControlLoop loop = system.getScheduler().scheduleControlLoop(invocations::incrementAndGet, 0, 10,
+				TimeUnit.MILLISECONDS, TimeUnit.MICROSECONDS.toNanos(200));
+		Thread.sleep(500);
+		Assert.assertTrue(loop.cancel(false));
+		try {
+			loop.get();
+			Assert.fail("Expected the loop to be cancelled");
+		} catch (CancellationException e) {
+			// Expected
+		}
+		long count = loop.getAttribute(ControlLoop.ATTRIBUTE_INVOCATIONS);
+		Assert.assertEquals(invocations.get(), count);
+		// Drift compensated, so close to 50 even on a loaded machine
+		Assert.assertTrue("Invocations: " + count, count >= 40 && count <= 51);
+		Assert.assertTrue(loop.getKnownAttributes().contains(ControlLoop.ATTRIBUTE_LATENESS_P99));
+		Assert.assertTrue(loop.getAttribute(ControlLoop.ATTRIBUTE_LATENESS_P99) <= loop
+				.getAttribute(ControlLoop.ATTRIBUTE_LATENESS_MAX));
+		Assert.assertNotNull(loop.getAttribute(ControlLoop.ATTRIBUTE_JITTER_P50));
+		Assert.assertNull(loop.getAttribute(DefaultAttributeDescriptor.create(String.class, "invocations")));
+		system.shutdown();
+	}
+
+	@Test
+	public void testControlLoopsShareThread() throws Exception {
+		RoboSystem system = new RoboSystem();
+		LoopUnit unit = new LoopUnit(system, "loop");
+		system.addUnits(unit);
+		Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		ControlLoop first = unit.scheduleControlLoop(() -> threads.add(Thread.currentThread()), 0, 5,
+				TimeUnit.MILLISECONDS, 0);
+		ControlLoop second = system.getScheduler().scheduleControlLoop(() -> threads.add(Thread.currentThread()), 0,
+				7, TimeUnit.MILLISECONDS, 0);
+		Thread.sleep(1200);
+		first.cancel(false);
+		second.cancel(false);
+		Assert.assertEquals(1, threads.size());
+		Assert.assertEquals(Thread.MAX_PRIORITY, threads.iterator().next().getPriority());
+		// The statistics are published as attributes of the unit
+		Long invocations = unit.getAttribute(ControlLoop.ATTRIBUTE_INVOCATIONS).get(1, TimeUnit.SECONDS);
+		Assert.assertNotNull(invocations);
+		Assert.assertTrue("Invocations: " + invocations, invocations > 0);
+		Assert.assertNotNull(unit.getAttribute(ControlLoop.ATTRIBUTE_JITTER_P99).get(1, TimeUnit.SECONDS));
+		system.shutdown();
+	}
+
+	private static class LoopUnit extends RoboUnit<Object> {
+		LoopUnit(RoboContext context, String id) {
+			super(Object.class, context, id);
+		}
+
+		@Override
+		protected void onInitialization(Configuration configuration) throws ConfigurationException {
+		}
+	}
+
+	@Test
+	public void testLatenessHistogram() {
+		LatenessHistogram histogram = new LatenessHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000);
+		}
+		histogram.record(-5);
+		Assert.assertEquals(1001, histogram.getCount());
+		Assert.assertEquals(1000000, histogram.getMax());
+		long p50 = histogram.getValueAtPercentile(50);
+		Assert.assertTrue("p50: " + p50, p50 >= 500000 && p50 <= 500000 * 1.125);
+		long p99 = histogram.getValueAtPercentile(99);
+		Assert.assertTrue("p99: " + p99, p99 >= 990000 && p99 <= 1000000);
+		Assert.assertEquals(0, histogram.getValueAtPercentile(0));
+		Assert.assertEquals(1000000, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testCoalescedSchedules() throws InterruptedException, ExecutionException {
+		RoboSystem system = createCoalescingSystem();
+		TimestampUnit unit = new TimestampUnit(system, "timestamps");
+		system.addUnits(unit);
+		int schedules = 20;
+		int invocations = 10;
+		long period = 20;
+		List<ScheduledFuture<?>> futures = new ArrayList<>();
+		for (int i = 0; i < schedules; i++) {
+			// Staggered, but all with the same period, so sharing one tick
+			futures.add(system.getScheduler().schedule(unit, "servo" + i, i % 10, period, TimeUnit.MILLISECONDS,
+					invocations));
+		}
+		for (ScheduledFuture<?> future : futures) {
+			get(future);
+		}
+		List<Long> timestamps = unit.getTimestamps();
+		Assert.assertEquals(schedules * invocations, timestamps.size());
+		int bursts = 1;
+		for (int i = 1; i < timestamps.size(); i++) {
+			if (timestamps.get(i) - timestamps.get(i - 1) > TimeUnit.MICROSECONDS.toNanos(500)) {
+				bursts++;
+			}
+		}
+		// One burst per tick, plus the first tick, where only the schedules
+		// without delay were due. Leave room for the odd burst split by a
+		// pause; staggered schedules of their own would make over a hundred.
+		Assert.assertTrue("Bursts: " + bursts, bursts <= 2 * (invocations + 1));
+		system.shutdown();
+	}
+
+	@Test
+	public void testCoalescedScheduleNotHeldUp() throws InterruptedException, ExecutionException {
+		RoboSystem system = createCoalescingSystem();
+		TimestampUnit unit = new TimestampUnit(system, "timestamps");
+		system.addUnits(unit);
+		long period = 20;
+		// Started first, with a long delay, and a failing listener
+		ScheduledFuture<?> late = system.getScheduler().schedule(unit, "late", 2000, period, TimeUnit.MILLISECONDS, 1,
+				(context) -> {
+					throw new IllegalStateException("Failing on purpose");
+				});
+		long start = System.nanoTime();
+		ScheduledFuture<?> early = system.getScheduler().schedule(unit, "early", 0, period, TimeUnit.MILLISECONDS,
+				3);
+		get(early);
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		Assert.assertTrue("Took " + elapsed + " ms", elapsed < 1000);
+		get(late);
+		// The tick survived the failing listener
+		ScheduledFuture<?> after = system.getScheduler().schedule(unit, "after", 0, period, TimeUnit.MILLISECONDS,
+				2);
+		get(after);
+		Assert.assertEquals(6, unit.getTimestamps().size());
+		system.shutdown();
+	}
+
+	private static RoboSystem createCoalescingSystem() {
+		Configuration configuration = ConfigurationFactory.createEmptyConfiguration();
+		configuration.createChildConfiguration(SchedulerFactory.CONFIGURATION_KEY_SCHEDULER)
+				.setBoolean(SchedulerFactory.CONFIGURATION_KEY_COALESCE, Boolean.TRUE);
+		return new RoboSystem(configuration);
+	}
+
+	@InlineDeliveryTrait
+	private static class TimestampUnit extends RoboUnit<String> {
+		private final List<Long> timestamps = new CopyOnWriteArrayList<>();
+
+		TimestampUnit(RoboContext context, String id) {
+			super(String.class, context, id);
+		}
+
+		@Override
+		protected void onInitialization(Configuration configuration) throws ConfigurationException {
+		}
+
+		@Override
+		public void onMessage(String message) {
+			timestamps.add(System.nanoTime());
+		}
+
+		List<Long> getTimestamps() {
+			return timestamps;
+		}
+	}
+
 	private void get(ScheduledFuture<?> f) throws InterruptedException, ExecutionException {
 		try {
 			f.get();
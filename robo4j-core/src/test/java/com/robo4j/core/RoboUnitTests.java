@@ -16,9 +16,23 @@
  */
 package com.robo4j.core;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.robo4j.core.concurrency.MailboxFactory;
+import com.robo4j.core.concurrency.OverflowPolicy;
 import com.robo4j.core.configuration.Configuration;
 import com.robo4j.core.configuration.ConfigurationFactory;
 
@@ -29,6 +43,7 @@ import com.robo4j.core.configuration.ConfigurationFactory;
  * @author Miroslav Wengner (@miragemiko)
  */
 public class RoboUnitTests {
+	private static final int ORDERED_MESSAGES = 200;
 
 	@Test
 	public void testSystem() throws Exception {
@@ -68,4 +83,786 @@ public class RoboUnitTests {
 		system.shutdown();
 		Assert.assertEquals(2, consumer.getReceivedMessages().size());		
 	}
+
+	@Test
+	public void testMessageOrdering() throws Exception {
+		runMessageOrdering(new RoboSystem(4, 5));
+	}
+
+	@Test
+	public void testMessageOrderingForkJoin() throws Exception {
+		RoboSystem system = new RoboSystem(ExecutionMode.FORK_JOIN, 4, 5);
+		Assert.assertEquals(ExecutionMode.FORK_JOIN, system.getExecutionMode());
+		runMessageOrdering(system);
+	}
+
+	private void runMessageOrdering(RoboSystem system) throws Exception {
+		StringConsumer consumer = new StringConsumer(system, "consumer");
+		system.addUnits(consumer);
+		system.start();
+
+		RoboReference<String> ref = system.getReference(consumer.getId());
+		for (int i = 0; i < ORDERED_MESSAGES; i++) {
+			ref.sendMessage(String.valueOf(i));
+		}
+		system.shutdown();
+		Assert.assertEquals(ORDERED_MESSAGES, consumer.getReceivedMessages().size());
+		for (int i = 0; i < ORDERED_MESSAGES; i++) {
+			Assert.assertEquals(String.valueOf(i), consumer.getReceivedMessages().get(i));
+		}
+	}
+
+	@Test
+	public void testBlockingUnitsOnVirtualThreads() throws Exception {
+		RoboSystem system = new RoboSystem(ExecutionMode.VIRTUAL, 1, 5);
+		CountDownLatch release = new CountDownLatch(1);
+		BlockingUnit blocking1 = new BlockingUnit(system, "blocking1", release);
+		BlockingUnit blocking2 = new BlockingUnit(system, "blocking2", release);
+		StringConsumer consumer = new StringConsumer(system, "consumer");
+		system.addUnits(blocking1, blocking2, consumer);
+		system.start();
+
+		blocking1.sendMessage("block");
+		blocking2.sendMessage("block");
+		for (int i = 0; i < ORDERED_MESSAGES; i++) {
+			consumer.sendMessage(String.valueOf(i));
+		}
+		// The blocked units must not keep the consumer from getting its
+		// messages.
+		for (int i = 0; i < 100 && consumer.getCounter() < ORDERED_MESSAGES; i++) {
+			Thread.sleep(20);
+		}
+		Assert.assertEquals(ORDERED_MESSAGES, consumer.getCounter());
+		release.countDown();
+		system.shutdown();
+	}
+
+	@Test
+	public void testBoundedMailbox() throws Exception {
+		RoboSystem system = new RoboSystem();
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch entered = new CountDownLatch(1);
+		BlockingUnit blocking = new BlockingUnit(system, "blocking", release, entered);
+		Configuration config = ConfigurationFactory.createEmptyConfiguration();
+		config.setInteger(MailboxFactory.CONFIGURATION_KEY_CAPACITY, 2);
+		config.setString(MailboxFactory.CONFIGURATION_KEY_OVERFLOW_POLICY, OverflowPolicy.DROP_NEWEST.getName());
+		blocking.initialize(config);
+		system.addUnits(blocking);
+		system.start();
+
+		RoboReference<String> ref = system.getReference(blocking.getId());
+		Assert.assertTrue(ref.getKnownAttributes().contains(RoboSystem.ATTRIBUTE_DROPPED_MESSAGES));
+		ref.sendMessage("block");
+		entered.await();
+		for (int i = 0; i < 5; i++) {
+			ref.sendMessage("message" + i);
+		}
+		Assert.assertEquals(Integer.valueOf(2), ref.getAttribute(RoboSystem.ATTRIBUTE_PENDING_MESSAGES).get());
+		Assert.assertEquals(Long.valueOf(3), ref.getAttribute(RoboSystem.ATTRIBUTE_DROPPED_MESSAGES).get());
+		release.countDown();
+		system.shutdown();
+	}
+
+	@Test
+	public void testBatchDelivery() throws Exception {
+		RoboSystem system = new RoboSystem();
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch entered = new CountDownLatch(1);
+		BatchingUnit batching = new BatchingUnit(system, "batching", release, entered);
+		system.addUnits(batching);
+		system.start();
+
+		batching.sendMessage("block");
+		entered.await();
+		for (int i = 0; i < 10; i++) {
+			batching.sendMessage("message" + i);
+		}
+		release.countDown();
+		system.shutdown();
+		Assert.assertEquals(2, batching.batchSizes.size());
+		Assert.assertEquals(Integer.valueOf(1), batching.batchSizes.get(0));
+		Assert.assertEquals(Integer.valueOf(10), batching.batchSizes.get(1));
+	}
+
+	@Test
+	public void testBlockingUnitRouting() throws Exception {
+		// A single system thread, which the blocked unit must not take
+		RoboSystem system = new RoboSystem(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch entered = new CountDownLatch(1);
+		BlockingUnit blocking = new BlockingUnit(system, "blocking", release, entered);
+		Configuration config = ConfigurationFactory.createEmptyConfiguration();
+		config.setBoolean(RoboUnit.CONFIGURATION_KEY_BLOCKING, true);
+		blocking.initialize(config);
+		StringConsumer consumer = new StringConsumer(system, "consumer");
+		system.addUnits(blocking, consumer);
+		system.start();
+
+		blocking.sendMessage("block");
+		entered.await();
+		for (int i = 0; i < ORDERED_MESSAGES; i++) {
+			consumer.sendMessage("message" + i);
+		}
+		for (int i = 0; i < 100 && consumer.getReceivedMessages().size() < ORDERED_MESSAGES; i++) {
+			Thread.sleep(20);
+		}
+		Assert.assertEquals(ORDERED_MESSAGES, consumer.getReceivedMessages().size());
+		release.countDown();
+		system.shutdown();
+	}
+
+	@Test
+	public void testBlockingTrait() {
+		RoboSystem system = new RoboSystem();
+		Assert.assertFalse(new BlockingUnit(system, "plain", new CountDownLatch(0)).isBlocking());
+		RoboUnit<String> annotated = new AnnotatedBlockingUnit(system, "annotated");
+		Assert.assertTrue(annotated.isBlocking());
+		Configuration config = ConfigurationFactory.createEmptyConfiguration();
+		config.setBoolean(RoboUnit.CONFIGURATION_KEY_BLOCKING, false);
+		try {
+			annotated.initialize(config);
+		} catch (ConfigurationException e) {
+			Assert.fail(e.getMessage());
+		}
+		Assert.assertFalse(annotated.isBlocking());
+		system.shutdown();
+	}
+
+	@Test
+	public void testAdaptiveSystemAttributes() throws Exception {
+		RoboSystem system = new RoboSystem(ExecutionMode.ADAPTIVE, 2, 16);
+		Assert.assertTrue(system.getKnownSystemAttributes().contains(RoboSystem.ATTRIBUTE_POOL_DECISION));
+		Assert.assertEquals(Integer.valueOf(2), system.getSystemAttribute(RoboSystem.ATTRIBUTE_POOL_SIZE));
+		runMessageOrdering(system);
+		Assert.assertNotNull(system.getSystemAttribute(RoboSystem.ATTRIBUTE_POOL_DECISION));
+	}
+
+	@Test
+	public void testPublishedAttributes() throws Exception {
+		// A single system thread, blocked, so that only published attributes
+		// can be read
+		RoboSystem system = new RoboSystem(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch entered = new CountDownLatch(1);
+		BlockingUnit blocking = new BlockingUnit(system, "blocking", release, entered);
+		StringConsumer consumer = new StringConsumer(system, "consumer");
+		system.addUnits(blocking, consumer);
+		system.start();
+		blocking.sendMessage("block");
+		entered.await();
+
+		AttributeDescriptor<String> descriptor = DefaultAttributeDescriptor.create(String.class, "last");
+		consumer.publishAttribute(descriptor, "first");
+		consumer.publishAttribute(descriptor, "second");
+		RoboReference<String> ref = system.getReference(consumer.getId());
+		Assert.assertEquals("second", ref.getAttribute(descriptor).get(1, TimeUnit.SECONDS));
+		Assert.assertEquals(2, consumer.getAttributeStore().get(descriptor).getVersion());
+		// Same name, different type
+		Assert.assertNull(consumer.getAttributeStore().get(DefaultAttributeDescriptor.create(Integer.class, "last")));
+
+		release.countDown();
+		system.shutdown();
+	}
+
+	@Test
+	public void testAttributeSubscription() throws Exception {
+		RoboSystem system = new RoboSystem();
+		StringConsumer producer = new StringConsumer(system, "producer");
+		CollectingUnit<Float> all = new CollectingUnit<>(Float.class, system, "all");
+		CollectingUnit<Float> filtered = new CollectingUnit<>(Float.class, system, "filtered");
+		system.addUnits(producer, all, filtered);
+		system.start();
+
+		AttributeDescriptor<Float> descriptor = DefaultAttributeDescriptor.create(Float.class, "level");
+		producer.publishAttribute(descriptor, 1.0f);
+		AttributeSubscription<Float> allSubscription = producer.subscribe(descriptor, all);
+		AttributeSubscription<Float> filteredSubscription = producer.subscribe(descriptor, filtered, 200,
+				TimeUnit.MILLISECONDS, 0.5);
+		// Within the deadband
+		producer.publishAttribute(descriptor, 1.2f);
+		// Within the interval, coalesced to the last one
+		producer.publishAttribute(descriptor, 3.0f);
+		producer.publishAttribute(descriptor, 4.0f);
+
+		all.awaitMessages(4);
+		filtered.awaitMessages(2);
+		Assert.assertEquals(Arrays.asList(1.0f, 1.2f, 3.0f, 4.0f), all.getMessages());
+		Assert.assertEquals(Arrays.asList(1.0f, 4.0f), filtered.getMessages());
+
+		allSubscription.cancel();
+		filteredSubscription.cancel();
+		Assert.assertTrue(allSubscription.isCancelled());
+		producer.publishAttribute(descriptor, 10.0f);
+		Thread.sleep(300);
+		Assert.assertEquals(4, all.getMessages().size());
+		Assert.assertEquals(2, filtered.getMessages().size());
+		system.shutdown();
+	}
+
+	@Test
+	public void testAttributeSubscriptionVersions() throws Exception {
+		RoboSystem system = new RoboSystem();
+		StringConsumer producer = new StringConsumer(system, "producer");
+		CollectingUnit<Float> subscriber = new CollectingUnit<>(Float.class, system, "subscriber");
+		system.addUnits(producer, subscriber);
+		system.start();
+
+		AttributeDescriptor<Float> descriptor = DefaultAttributeDescriptor.create(Float.class, "level");
+		producer.publishAttribute(descriptor, 1.0f);
+		producer.publishAttribute(descriptor, 2.0f);
+		AttributeSubscription<Float> subscription = producer.subscribe(descriptor, subscriber);
+		// Published concurrently, but notified after the newer value
+		subscription.onPublish(new AttributeValue<>(descriptor, 1.0f, 1));
+		// Removing keeps the version increasing
+		producer.getAttributeStore().remove(descriptor);
+		Assert.assertNull(producer.getAttributeStore().get(descriptor));
+		producer.publishAttribute(descriptor, 3.0f);
+		Assert.assertEquals(4, producer.getAttributeStore().get(descriptor).getVersion());
+
+		subscriber.awaitMessages(2);
+		Thread.sleep(50);
+		Assert.assertEquals(Arrays.asList(2.0f, 3.0f), subscriber.getMessages());
+		subscription.cancel();
+		system.shutdown();
+	}
+
+	@Test
+	public void testAsk() throws Exception {
+		RoboSystem system = new RoboSystem();
+		LengthUnit length = new LengthUnit(system, "length");
+		system.addUnits(length);
+		system.start();
+
+		CompletableFuture<Integer> reply = length.ask(replyTo -> new LengthRequest("four", replyTo), Integer.class, 1,
+				TimeUnit.SECONDS);
+		Assert.assertEquals(Integer.valueOf(5), reply.thenApply(l -> l + 1).get(1, TimeUnit.SECONDS));
+
+		// A request which is never replied to times out
+		CompletableFuture<Integer> ignored = length.ask(replyTo -> new LengthRequest(null, replyTo), Integer.class,
+				100, TimeUnit.MILLISECONDS);
+		try {
+			ignored.get(1, TimeUnit.SECONDS);
+			Assert.fail("Expected the request to time out");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof TimeoutException);
+		}
+
+		// Replies can go to ordinary references too
+		CollectingUnit<Integer> collector = new CollectingUnit<>(Integer.class, system, "collector");
+		system.addUnits(collector);
+		length.sendMessage(new LengthRequest("one", system.getReference(collector.getId())));
+		collector.awaitMessages(1);
+		Assert.assertEquals(Arrays.asList(3), collector.getMessages());
+
+		// Reply references have no attributes, and can not be asked
+		AtomicReference<RoboReference<Integer>> replyReference = new AtomicReference<>();
+		length.ask(replyTo -> {
+			replyReference.set(replyTo);
+			return new LengthRequest("two", replyTo);
+		}, Integer.class, 1, TimeUnit.SECONDS).get(1, TimeUnit.SECONDS);
+		Assert.assertTrue(replyReference.get().subscribe(DefaultAttributeDescriptor.create(Integer.class, "any"),
+				collector).isCancelled());
+		try {
+			replyReference.get().ask(replyTo -> 1, Integer.class, 1, TimeUnit.SECONDS).get(1, TimeUnit.SECONDS);
+			Assert.fail("Expected asking a reply reference to fail");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof UnsupportedOperationException);
+		}
+		system.shutdown();
+	}
+
+	private static class LengthRequest {
+		private final String text;
+		private final RoboReference<?> replyTo;
+
+		LengthRequest(String text, RoboReference<?> replyTo) {
+			this.text = text;
+			this.replyTo = replyTo;
+		}
+	}
+
+	private static class LengthUnit extends RoboUnit<LengthRequest> {
+		LengthUnit(RoboContext context, String id) {
+			super(LengthRequest.class, context, id);
+		}
+
+		@Override
+		protected void onInitialization(Configuration configuration) throws ConfigurationException {
+		}
+
+		@Override
+		public void onMessage(LengthRequest message) {
+			if (message.text != null) {
+				reply(message.replyTo, message.text.length());
+			}
+		}
+	}
+
+	@Test
+	public void testInlineDelivery() throws Exception {
+		RoboSystem system = new RoboSystem();
+		InlineUnit inline = new InlineUnit(system, "inline");
+		InlineUnit configured = new InlineUnit(system, "configured");
+		Configuration configuration = ConfigurationFactory.createEmptyConfiguration();
+		configuration.setBoolean(RoboUnit.CONFIGURATION_KEY_INLINE_DELIVERY, false);
+		configured.initialize(configuration);
+		system.addUnits(inline, configured);
+		system.start();
+
+		RoboReference<String> reference = system.getReference(inline.getId());
+		reference.sendMessage("first");
+		// Delivered on this thread, before sendMessage returned
+		Assert.assertEquals(Thread.currentThread(), inline.threads.get(0));
+		// Sends to itself; the second message is enqueued, not nested
+		reference.sendMessage(InlineUnit.AGAIN);
+		inline.awaitMessages(3);
+		Assert.assertFalse(inline.reentered);
+		Assert.assertEquals(Thread.currentThread(), inline.threads.get(1));
+		Assert.assertFalse(Thread.currentThread() == inline.threads.get(2));
+
+		configured.sendMessage("first");
+		configured.awaitMessages(1);
+		Assert.assertFalse(Thread.currentThread() == configured.threads.get(0));
+		system.shutdown();
+	}
+
+	@Test
+	public void testDeadlineMessages() throws Exception {
+		// A single system thread, blocked, so that the messages queue up
+		Configuration systemConfig = ConfigurationFactory.createEmptyConfiguration();
+		systemConfig.setInteger(RoboSystem.CONFIGURATION_KEY_POOL_SIZE, 1);
+		systemConfig.setBoolean(RoboSystem.CONFIGURATION_KEY_DEADLINE_DISPATCH, true);
+		RoboSystem system = new RoboSystem(systemConfig);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch entered = new CountDownLatch(1);
+		BlockingUnit blocking = new BlockingUnit(system, "blocking", release, entered);
+		List<String> log = new CopyOnWriteArrayList<>();
+		LoggingUnit telemetry = new LoggingUnit(system, "telemetry", log);
+		LoggingUnit motor = new LoggingUnit(system, "motor", log);
+		Configuration config = ConfigurationFactory.createEmptyConfiguration();
+		config.setString(MailboxFactory.CONFIGURATION_KEY_MAILBOX, MailboxFactory.MAILBOX_DEADLINE);
+		motor.initialize(config);
+		system.addUnits(blocking, telemetry, motor);
+		system.start();
+
+		blocking.sendMessage("block");
+		entered.await();
+		for (int i = 0; i < 3; i++) {
+			telemetry.sendMessage("telemetry" + i);
+			motor.sendMessage("status" + i);
+		}
+		motor.sendMessage("stale", 1, TimeUnit.MILLISECONDS);
+		motor.sendMessage("stop", 10, TimeUnit.SECONDS);
+		motor.sendMessage("expired", 0, TimeUnit.SECONDS);
+		Thread.sleep(20);
+		release.countDown();
+		for (int i = 0; i < 100 && log.size() < 7; i++) {
+			Thread.sleep(20);
+		}
+		// The turn of the motor overtakes the turn of the telemetry unit, and
+		// the stop command the pending status messages
+		Assert.assertEquals(Arrays.asList("motor:stop", "motor:status0", "motor:status1", "motor:status2",
+				"telemetry:telemetry0", "telemetry:telemetry1", "telemetry:telemetry2"), log);
+		RoboReference<String> reference = system.getReference(motor.getId());
+		Assert.assertTrue(reference.getKnownAttributes().contains(RoboSystem.ATTRIBUTE_EXPIRED_MESSAGES));
+		Assert.assertEquals(Long.valueOf(2), reference.getAttribute(RoboSystem.ATTRIBUTE_EXPIRED_MESSAGES).get());
+		system.shutdown();
+	}
+
+	@Test
+	public void testTopics() throws Exception {
+		RoboSystem system = new RoboSystem();
+		CollectingUnit<Object> configured = new CollectingUnit<>(Object.class, system, "configured");
+		Configuration configuration = ConfigurationFactory.createEmptyConfiguration();
+		configuration.setString(RoboUnit.CONFIGURATION_KEY_TOPICS, "other, scans");
+		configured.initialize(configuration);
+		CollectingUnit<Object> subscribed = new CollectingUnit<>(Object.class, system, "subscribed");
+		system.addUnits(configured, subscribed);
+		system.start();
+
+		Topic<Object> topic = system.getTopic("scans");
+		Assert.assertTrue(topic == system.getTopic("scans"));
+		Assert.assertTrue(topic.subscribe(subscribed));
+		Assert.assertFalse(topic.subscribe(system.getReference(subscribed.getId())));
+		Assert.assertEquals(2, topic.getSubscribers().size());
+		Assert.assertEquals(1, system.getTopic("other").getSubscribers().size());
+
+		Object scan = new Object();
+		topic.publish(scan);
+		topic.publish("fix", 10, TimeUnit.SECONDS);
+		topic.publish("stale", 0, TimeUnit.SECONDS);
+		configured.awaitMessages(2);
+		subscribed.awaitMessages(2);
+		// The very same instance, to every subscriber
+		Assert.assertTrue(scan == configured.getMessages().get(0));
+		Assert.assertTrue(scan == subscribed.getMessages().get(0));
+		Assert.assertEquals("fix", configured.getMessages().get(1));
+		Assert.assertEquals("fix", subscribed.getMessages().get(1));
+		Assert.assertEquals(Long.valueOf(1),
+				system.getReference(configured.getId()).getAttribute(RoboSystem.ATTRIBUTE_EXPIRED_MESSAGES).get());
+
+		Assert.assertTrue(topic.unsubscribe(subscribed));
+		topic.publish("last");
+		configured.awaitMessages(3);
+		Assert.assertEquals(3, configured.getMessages().size());
+		Assert.assertEquals(2, subscribed.getMessages().size());
+		system.shutdown();
+	}
+
+	@Test
+	public void testAddingAndRemovingUnits() throws Exception {
+		RoboSystem system = new RoboSystem();
+		CollectingUnit<String> first = new CollectingUnit<>(String.class, system, "first");
+		system.addUnits(first);
+		system.start();
+
+		CollectingUnit<String> added = new CollectingUnit<>(String.class, system, "added");
+		Configuration configuration = ConfigurationFactory.createEmptyConfiguration();
+		configuration.setString(RoboUnit.CONFIGURATION_KEY_TOPICS, "fixes");
+		added.initialize(configuration);
+		system.addUnits(added);
+		Assert.assertEquals(LifecycleState.STARTED, added.getState());
+		Assert.assertEquals(2, system.getUnits().size());
+		RoboReference<String> reference = system.getReference("added");
+		Assert.assertTrue(reference == system.getReference(added));
+		reference.sendMessage("direct");
+		system.<String> getTopic("fixes").publish("published");
+		added.awaitMessages(2);
+		Assert.assertEquals(Arrays.asList("direct", "published"), added.getMessages());
+
+		try {
+			system.addUnits(new CollectingUnit<>(String.class, system, "added"));
+			Assert.fail("Expected the duplicate id to be rejected");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+
+		Assert.assertTrue(added == system.removeUnit("added"));
+		Assert.assertNull(system.removeUnit("added"));
+		Assert.assertEquals(LifecycleState.SHUTDOWN, added.getState());
+		Assert.assertNull(system.getReference("added"));
+		Assert.assertEquals(0, system.getTopic("fixes").getSubscribers().size());
+		// Stale references no longer deliver
+		reference.sendMessage("stale");
+		first.sendMessage("first");
+		first.awaitMessages(1);
+		Thread.sleep(20);
+		Assert.assertEquals(2, added.getMessages().size());
+		system.shutdown();
+	}
+
+	@Test
+	public void testLazyUnitCreation() throws Exception {
+		RoboSystem system = new RoboSystem();
+		system.start();
+		CountDownLatch creating = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger creations = new AtomicInteger();
+		system.addLazyUnit("slow", () -> {
+			creations.incrementAndGet();
+			creating.countDown();
+			release.await();
+			return new CollectingUnit<>(String.class, system, "slow");
+		});
+		system.addLazyUnit("fast", () -> new CollectingUnit<>(String.class, system, "fast"));
+		CompletableFuture<RoboReference<String>> first = CompletableFuture.supplyAsync(() -> system.getReference("slow"));
+		creating.await();
+		CompletableFuture<RoboReference<String>> second = CompletableFuture.supplyAsync(() -> system.getReference("slow"));
+
+		// Not held up by the creation of the other unit
+		Assert.assertNotNull(system.getReference("fast"));
+		Assert.assertFalse(first.isDone());
+		Assert.assertFalse(second.isDone());
+		release.countDown();
+		Assert.assertTrue(first.get(5, TimeUnit.SECONDS) == second.get(5, TimeUnit.SECONDS));
+		Assert.assertEquals(1, creations.get());
+		Assert.assertEquals(LifecycleState.STARTED, system.getUnits().stream()
+				.filter(unit -> unit.getId().equals("slow")).findFirst().get().getState());
+		system.shutdown();
+	}
+
+	@Test
+	public void testDependencyOrderedLifecycle() throws Exception {
+		RoboSystem system = new RoboSystem();
+		List<String> log = new CopyOnWriteArrayList<>();
+		// b is the target of a, and c depends on b; e and f depend on each
+		// other, and d on nothing
+		// b and d depend on nothing, and can only start if started together
+		CountDownLatch together = new CountDownLatch(2);
+		SlowStartingUnit b = new SlowStartingUnit(system, "b", log, null, null, together);
+		SlowStartingUnit d = new SlowStartingUnit(system, "d", log, null, null, together);
+		system.addUnits(new SlowStartingUnit(system, "a", log, RoboBuilder.CONFIGURATION_KEY_TARGET, "b", null), b,
+				new SlowStartingUnit(system, "c", log, RoboUnit.CONFIGURATION_KEY_DEPENDS_ON, "b, missing", null), d,
+				new SlowStartingUnit(system, "e", log, RoboUnit.CONFIGURATION_KEY_DEPENDS_ON, "f", null),
+				new SlowStartingUnit(system, "f", log, RoboUnit.CONFIGURATION_KEY_DEPENDS_ON, "e", null));
+		system.start();
+		Assert.assertEquals(LifecycleState.STARTED, system.getState());
+		Assert.assertEquals(6, log.size());
+		Assert.assertTrue(log.indexOf("start:b") < log.indexOf("start:a"));
+		Assert.assertTrue(log.indexOf("start:b") < log.indexOf("start:c"));
+		Assert.assertTrue(b.startedTogether && d.startedTogether);
+		long startTime = system.getReference("a").getAttribute(RoboSystem.ATTRIBUTE_START_TIME).get();
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(startTime) >= SlowStartingUnit.START_TIME);
+
+		log.clear();
+		system.stop();
+		Assert.assertEquals(6, log.size());
+		Assert.assertTrue(log.indexOf("stop:a") < log.indexOf("stop:b"));
+		Assert.assertTrue(log.indexOf("stop:c") < log.indexOf("stop:b"));
+		system.shutdown();
+	}
+
+	@Test
+	public void testFailingLifecycle() throws Exception {
+		RoboSystem system = new RoboSystem();
+		List<String> log = new CopyOnWriteArrayList<>();
+		SlowStartingUnit failing = new SlowStartingUnit(system, "failing", log, null, null, null) {
+			@Override
+			public void start() {
+				throw new IllegalStateException("Failing on purpose");
+			}
+		};
+		SlowStartingUnit dependent = new SlowStartingUnit(system, "dependent", log,
+				RoboUnit.CONFIGURATION_KEY_DEPENDS_ON, "failing", null);
+		system.addUnits(failing, dependent, new SlowStartingUnit(system, "other", log, null, null, null));
+		try {
+			system.start();
+			Assert.fail("Expected the start to fail");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		Assert.assertEquals(LifecycleState.FAILED, system.getState());
+		Assert.assertEquals(LifecycleState.FAILED, failing.getState());
+		// Not held up by the failed unit
+		Assert.assertEquals(LifecycleState.STARTED, dependent.getState());
+		Assert.assertEquals(2, log.size());
+		system.shutdown();
+
+		// Rejected actions count as done, rather than leaving the traversal
+		// waiting for them
+		log.clear();
+		DependencyGraph graph = new DependencyGraph(system.getUnits());
+		try {
+			graph.traverse(task -> {
+				throw new RejectedExecutionException("Shut down");
+			}, false, unit -> log.add("run:" + unit.getId()));
+			Assert.fail("Expected the rejection to be reported");
+		} catch (RejectedExecutionException e) {
+			Assert.assertEquals(2, e.getSuppressed().length);
+		}
+		Assert.assertTrue(log.isEmpty());
+	}
+
+	private static class SlowStartingUnit extends RoboUnit<String> {
+		static final long START_TIME = 100;
+		private final List<String> log;
+		private final CountDownLatch together;
+		private volatile boolean startedTogether;
+
+		SlowStartingUnit(RoboContext context, String id, List<String> log, String key, String value,
+				CountDownLatch together) {
+			super(String.class, context, id);
+			this.log = log;
+			this.together = together;
+			Configuration configuration = ConfigurationFactory.createEmptyConfiguration();
+			if (key != null) {
+				configuration.setString(key, value);
+			}
+			try {
+				initialize(configuration);
+			} catch (ConfigurationException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		protected void onInitialization(Configuration configuration) throws ConfigurationException {
+		}
+
+		@Override
+		public void start() {
+			try {
+				if (together != null) {
+					together.countDown();
+					startedTogether = together.await(5, TimeUnit.SECONDS);
+				}
+				Thread.sleep(START_TIME);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			log.add("start:" + getId());
+			super.start();
+		}
+
+		@Override
+		public void stop() {
+			log.add("stop:" + getId());
+			super.stop();
+		}
+
+		@Override
+		public void onMessage(String message) {
+		}
+	}
+
+	private static class LoggingUnit extends RoboUnit<String> {
+		private final List<String> log;
+
+		LoggingUnit(RoboContext context, String id, List<String> log) {
+			super(String.class, context, id);
+			this.log = log;
+		}
+
+		@Override
+		protected void onInitialization(Configuration configuration) throws ConfigurationException {
+		}
+
+		@Override
+		public void onMessage(String message) {
+			log.add(getId() + ":" + message);
+		}
+	}
+
+	@InlineDeliveryTrait
+	private static class InlineUnit extends RoboUnit<String> {
+		static final String AGAIN = "again";
+		private final List<Thread> threads = new CopyOnWriteArrayList<>();
+		private volatile boolean handling;
+		private volatile boolean reentered;
+
+		InlineUnit(RoboContext context, String id) {
+			super(String.class, context, id);
+		}
+
+		@Override
+		protected void onInitialization(Configuration configuration) throws ConfigurationException {
+		}
+
+		@Override
+		public void onMessage(String message) {
+			reentered |= handling;
+			handling = true;
+			try {
+				if (AGAIN.equals(message)) {
+					sendMessage("second");
+				}
+				synchronized (threads) {
+					threads.add(Thread.currentThread());
+					threads.notifyAll();
+				}
+			} finally {
+				handling = false;
+			}
+		}
+
+		void awaitMessages(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5000;
+			synchronized (threads) {
+				while (threads.size() < count && System.currentTimeMillis() < deadline) {
+					threads.wait(100);
+				}
+			}
+		}
+	}
+
+	private static class CollectingUnit<T> extends RoboUnit<T> {
+		private final List<T> messages = new CopyOnWriteArrayList<>();
+
+		CollectingUnit(Class<T> messageType, RoboContext context, String id) {
+			super(messageType, context, id);
+		}
+
+		@Override
+		protected void onInitialization(Configuration configuration) throws ConfigurationException {
+		}
+
+		@Override
+		public void onMessage(T message) {
+			synchronized (messages) {
+				messages.add(message);
+				messages.notifyAll();
+			}
+		}
+
+		void awaitMessages(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5000;
+			synchronized (messages) {
+				while (messages.size() < count && System.currentTimeMillis() < deadline) {
+					messages.wait(100);
+				}
+			}
+		}
+
+		List<T> getMessages() {
+			return messages;
+		}
+	}
+
+	@BlockingTrait
+	private static class AnnotatedBlockingUnit extends BlockingUnit {
+		AnnotatedBlockingUnit(RoboContext context, String id) {
+			super(context, id, new CountDownLatch(0));
+		}
+	}
+
+	private static class BatchingUnit extends RoboUnit<String> {
+		private final CountDownLatch release;
+		private final CountDownLatch entered;
+		private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+		BatchingUnit(RoboContext context, String id, CountDownLatch release, CountDownLatch entered) {
+			super(String.class, context, id);
+			this.release = release;
+			this.entered = entered;
+		}
+
+		@Override
+		protected void onInitialization(Configuration configuration) throws ConfigurationException {
+		}
+
+		@Override
+		public void onMessage(String message) {
+			batchSizes.add(1);
+			entered.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public void onMessages(List<String> messages) {
+			batchSizes.add(messages.size());
+		}
+	}
+
+	private static class BlockingUnit extends RoboUnit<String> {
+		private final CountDownLatch release;
+		private final CountDownLatch entered;
+
+		BlockingUnit(RoboContext context, String id, CountDownLatch release) {
+			this(context, id, release, new CountDownLatch(1));
+		}
+
+		BlockingUnit(RoboContext context, String id, CountDownLatch release, CountDownLatch entered) {
+			super(String.class, context, id);
+			this.release = release;
+			this.entered = entered;
+		}
+
+		@Override
+		protected void onInitialization(Configuration configuration) throws ConfigurationException {
+		}
+
+		@Override
+		public void onMessage(String message) {
+			entered.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
 }
@@ -23,10 +23,13 @@ import java.util.concurrent.atomic.AtomicInteger;
 import com.robo4j.core.configuration.Configuration;
 
 /**
+ * Records the messages received. Allows inline delivery, so that messages
+ * sent by the scheduler have been received once the schedule completes.
  * 
  * @author Marcus Hirt (@hirt)
  * @author Miroslav Wengner (@miragemiko)
  */
+@InlineDeliveryTrait
 public class StringConsumer extends RoboUnit<String> {
 	private static final int DEFAULT = 0;
 	private volatile List<String> receivedMessages = new ArrayList<>();
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link AdaptivePoolController}.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public class AdaptivePoolControllerTests {
+	private static final long PERIOD = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	public void testGrowAndShrink() throws InterruptedException {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+		AdaptivePoolController controller = new AdaptivePoolController(pool, 1, 3);
+		CountDownLatch release = new CountDownLatch(1);
+		for (int i = 0; i < 4; i++) {
+			pool.execute(() -> {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					// Don't care
+				}
+			});
+		}
+		long now = System.nanoTime();
+		// Busy all the time, with turns waiting
+		controller.recordTurn(10, PERIOD);
+		controller.adapt(now + PERIOD);
+		Assert.assertEquals(AdaptivePoolController.DECISION_GROW, controller.getLastDecision());
+		Assert.assertEquals(2, controller.getPoolSize());
+		Assert.assertEquals(PERIOD / 10, controller.getServiceTime());
+
+		controller.recordTurn(10, 2 * PERIOD);
+		controller.adapt(now + 2 * PERIOD);
+		Assert.assertEquals(3, controller.getPoolSize());
+
+		// Bounded by the max
+		controller.recordTurn(10, 3 * PERIOD);
+		controller.adapt(now + 3 * PERIOD);
+		Assert.assertEquals(3, controller.getPoolSize());
+		Assert.assertEquals(AdaptivePoolController.DECISION_HOLD, controller.getLastDecision());
+
+		release.countDown();
+		while (pool.getActiveCount() > 0 || !pool.getQueue().isEmpty()) {
+			Thread.sleep(1);
+		}
+		// Idle, shrinks one thread per period
+		controller.adapt(now + 4 * PERIOD);
+		Assert.assertEquals(AdaptivePoolController.DECISION_SHRINK, controller.getLastDecision());
+		Assert.assertEquals(2, controller.getPoolSize());
+		controller.adapt(now + 5 * PERIOD);
+		controller.adapt(now + 6 * PERIOD);
+		Assert.assertEquals(1, controller.getPoolSize());
+		Assert.assertEquals(4, controller.getAdjustments());
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link CoreBusQueue}.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public class CoreBusQueueTests {
+	private static final int PRIORITIES = 3;
+
+	private static class Signal implements TransferSignal, Comparable<Signal> {
+		private final int priority;
+		private final int value;
+
+		Signal(int priority, int value) {
+			this.priority = priority;
+			this.value = value;
+		}
+
+		@Override
+		public int compareTo(Signal other) {
+			return Integer.compare(priority, other.priority);
+		}
+	}
+
+	private static class Entry extends QueueFIFOEntry<Signal> {
+		Entry(int priority, int value) {
+			super(new Signal(priority, value));
+		}
+
+		Entry(int priority, int value, AtomicLong sequence) {
+			super(new Signal(priority, value), sequence);
+		}
+	}
+
+	private static class SignalQueue extends CoreBusQueue<Entry> {
+		private static final long serialVersionUID = 1L;
+
+		SignalQueue() {
+			super(1, PRIORITIES);
+		}
+
+		@Override
+		protected int getPriority(Entry element) {
+			return element.getEntry().priority;
+		}
+	}
+
+	private static class OrderedQueue extends CoreBusQueue<Entry> {
+		private static final long serialVersionUID = 1L;
+
+		OrderedQueue() {
+			super(0);
+		}
+	}
+
+	@Test
+	public void testPriorityOrder() {
+		SignalQueue queue = new SignalQueue();
+		queue.offer(new Entry(2, 0));
+		queue.offer(new Entry(1, 1));
+		queue.offer(new Entry(0, 2));
+		queue.offer(new Entry(1, 3));
+		queue.offer(new Entry(0, 4));
+		Assert.assertEquals(5, queue.size());
+		int[] expected = { 2, 4, 1, 3, 0 };
+		for (int value : expected) {
+			Assert.assertEquals(value, queue.poll().getEntry().value);
+		}
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertNull(queue.poll());
+	}
+
+	@Test
+	public void testQueueSequence() {
+		SignalQueue queue = new SignalQueue();
+		SignalQueue other = new SignalQueue();
+		Entry first = new Entry(1, 0, queue.getSequence());
+		new Entry(1, 1, other.getSequence());
+		Entry second = new Entry(1, 2, queue.getSequence());
+		Entry third = new Entry(0, 3, queue.getSequence());
+		Assert.assertTrue(first.compareTo(second) < 0);
+		Assert.assertTrue(second.compareTo(first) > 0);
+		Assert.assertTrue(third.compareTo(first) < 0);
+		Assert.assertEquals(3, queue.getSequence().get());
+		Assert.assertEquals(1, other.getSequence().get());
+	}
+
+	@Test
+	public void testStampedOnOffer() {
+		OrderedQueue queue = new OrderedQueue();
+		OrderedQueue other = new OrderedQueue();
+		Entry first = new Entry(1, 0);
+		Entry second = new Entry(1, 1);
+		Entry third = new Entry(1, 2);
+		// Comparing does not stamp
+		Assert.assertEquals(0, first.compareTo(second));
+		other.offer(new Entry(1, 3));
+		queue.offer(second);
+		queue.offer(first);
+		queue.offer(third);
+		Assert.assertEquals(3, queue.getSequence().get());
+		Assert.assertEquals(1, other.getSequence().get());
+		Assert.assertTrue(second.compareTo(first) < 0);
+		Assert.assertTrue(first.compareTo(third) < 0);
+
+		// Lanes keep the order by themselves, no stamping needed
+		SignalQueue lanes = new SignalQueue();
+		lanes.offer(new Entry(1, 4));
+		Assert.assertEquals(0, lanes.getSequence().get());
+	}
+
+	@Test
+	public void testTake() throws InterruptedException {
+		SignalQueue queue = new SignalQueue();
+		Thread producer = new Thread(() -> {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				// Don't care
+			}
+			queue.offer(new Entry(1, 42));
+		});
+		producer.start();
+		Assert.assertEquals(42, queue.take().getEntry().value);
+		producer.join();
+	}
+
+	@Test
+	public void testTransfer() throws InterruptedException {
+		SignalQueue queue = new SignalQueue();
+		Assert.assertFalse(queue.tryTransfer(new Entry(0, 0)));
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertFalse(queue.tryTransfer(new Entry(0, 0), 10, TimeUnit.MILLISECONDS));
+		Assert.assertTrue(queue.isEmpty());
+
+		CountDownLatch transferred = new CountDownLatch(1);
+		Thread producer = new Thread(() -> {
+			try {
+				queue.transfer(new Entry(0, 42));
+				transferred.countDown();
+			} catch (InterruptedException e) {
+				// Don't care
+			}
+		});
+		producer.start();
+		Assert.assertFalse(transferred.await(20, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(42, queue.take().getEntry().value);
+		Assert.assertTrue(transferred.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testRemoveReleasesTransfer() throws InterruptedException {
+		SignalQueue queue = new SignalQueue();
+		Entry entry = new Entry(0, 42);
+		CountDownLatch transferred = new CountDownLatch(1);
+		Thread producer = new Thread(() -> {
+			try {
+				queue.transfer(entry);
+				transferred.countDown();
+			} catch (InterruptedException e) {
+				// Don't care
+			}
+		});
+		producer.start();
+		while (queue.isEmpty()) {
+			Thread.sleep(1);
+		}
+		Assert.assertTrue(queue.remove(entry));
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertTrue(transferred.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testIteratorRemove() {
+		SignalQueue queue = new SignalQueue();
+		queue.offer(new Entry(1, 0));
+		queue.offer(new Entry(0, 1));
+		queue.offer(new Entry(1, 2));
+		Iterator<Entry> iterator = queue.iterator();
+		Assert.assertEquals(1, iterator.next().getEntry().value);
+		Assert.assertEquals(0, iterator.next().getEntry().value);
+		iterator.remove();
+		Assert.assertEquals(2, queue.size());
+		Assert.assertEquals(1, queue.poll().getEntry().value);
+		Assert.assertEquals(2, queue.poll().getEntry().value);
+		Assert.assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testNaturalOrderWithoutAwaitTime() throws InterruptedException {
+		OrderedQueue queue = new OrderedQueue();
+		// Ordered by priority, and in the order offered within a priority
+		queue.offer(new Entry(1, 0));
+		queue.offer(new Entry(0, 1));
+		queue.offer(new Entry(1, 2));
+		queue.offer(new Entry(0, 3));
+		Iterator<Entry> iterator = queue.iterator();
+		Assert.assertEquals(1, iterator.next().getEntry().value);
+		Assert.assertEquals(1, queue.peek().getEntry().value);
+		int[] expected = { 1, 3, 0, 2 };
+		for (int value : expected) {
+			Assert.assertEquals(value, queue.take().getEntry().value);
+		}
+
+		Thread producer = new Thread(() -> {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				// Don't care
+			}
+			queue.offer(new Entry(1, 42));
+		});
+		producer.start();
+		Assert.assertEquals(42, queue.take().getEntry().value);
+		producer.join();
+
+		Thread consumer = new Thread(() -> {
+			try {
+				Assert.assertNull(queue.take());
+			} catch (InterruptedException e) {
+				// Don't care
+			}
+		});
+		consumer.start();
+		while (!queue.hasWaitingConsumer()) {
+			Thread.sleep(1);
+		}
+		queue.deactivate();
+		consumer.join(1000);
+		Assert.assertFalse(consumer.isAlive());
+	}
+
+	@Test
+	public void testDeactivate() throws InterruptedException {
+		SignalQueue queue = new SignalQueue();
+		Thread consumer = new Thread(() -> {
+			try {
+				Assert.assertNull(queue.take());
+			} catch (InterruptedException e) {
+				// Don't care
+			}
+		});
+		consumer.start();
+		while (!queue.hasWaitingConsumer()) {
+			Thread.sleep(1);
+		}
+		queue.deactivate();
+		consumer.join(1000);
+		Assert.assertFalse(consumer.isAlive());
+	}
+}
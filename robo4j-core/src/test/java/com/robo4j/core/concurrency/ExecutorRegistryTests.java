@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the executor registry.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public class ExecutorRegistryTests {
+	// More than any of the fixed pools would run at once
+	private static final int BLOCKING_TASKS = 32;
+
+	@Test
+	public void testBlockingExecutorGrowsWithTheTasks() throws InterruptedException {
+		ExecutorRegistry registry = new ExecutorRegistry(null, false);
+		ExecutorService blocking = registry.getExecutor(ExecutorRegistry.EXECUTOR_BLOCKING);
+		Assert.assertEquals(0, ((ThreadPoolExecutor) blocking).getCorePoolSize());
+		Assert.assertEquals(ExecutorRegistry.DEFAULT_BLOCKING_POOL_SIZE,
+				((ThreadPoolExecutor) blocking).getMaximumPoolSize());
+
+		CountDownLatch started = new CountDownLatch(BLOCKING_TASKS);
+		CountDownLatch release = new CountDownLatch(1);
+		for (int i = 0; i < BLOCKING_TASKS; i++) {
+			blocking.execute(() -> {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+		// None of the tasks are queued behind the others
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		release.countDown();
+		registry.shutdown();
+	}
+
+	@Test
+	public void testBlockingExecutorRunsOverflowInCaller() throws InterruptedException {
+		ExecutorRegistry registry = new ExecutorRegistry(null, false);
+		ExecutorService blocking = registry.getExecutor(ExecutorRegistry.EXECUTOR_BLOCKING);
+		((ThreadPoolExecutor) blocking).setMaximumPoolSize(1);
+
+		CountDownLatch release = new CountDownLatch(1);
+		blocking.execute(() -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		Thread[] runner = new Thread[1];
+		blocking.execute(() -> runner[0] = Thread.currentThread());
+		Assert.assertTrue(Thread.currentThread() == runner[0]);
+		release.countDown();
+		registry.shutdown();
+	}
+}
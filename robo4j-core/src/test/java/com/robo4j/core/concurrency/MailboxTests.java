@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2014, 2017, Marcus Hirt, Miroslav Wengner
+ * 
+ * Robo4J is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Robo4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Robo4J. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.robo4j.core.concurrency;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.robo4j.core.ConfigurationException;
+import com.robo4j.core.configuration.Configuration;
+import com.robo4j.core.configuration.ConfigurationFactory;
+
+/**
+ * Tests for the mailbox implementations.
+ * 
+ * @author Marcus Hirt (@hirt)
+ * @author Miroslav Wengner (@miragemiko)
+ */
+public class MailboxTests {
+	private static final int PRODUCERS = 4;
+	private static final int MESSAGES_PER_PRODUCER = 50000;
+	private static final long BLOCK_TIMEOUT = 200;
+
+	@Test
+	public void testRingBufferCapacity() {
+		RingBufferMailbox<Integer> mailbox = new RingBufferMailbox<>(5);
+		Assert.assertEquals(8, mailbox.getCapacity());
+		Assert.assertTrue(mailbox.isEmpty());
+		for (int i = 0; i < 8; i++) {
+			Assert.assertTrue(mailbox.offer(i));
+		}
+		Assert.assertFalse(mailbox.offer(8));
+		Assert.assertEquals(8, mailbox.size());
+		Assert.assertEquals(Integer.valueOf(0), mailbox.poll());
+		Assert.assertTrue(mailbox.offer(8));
+		for (int i = 1; i <= 8; i++) {
+			Assert.assertEquals(Integer.valueOf(i), mailbox.poll());
+		}
+		Assert.assertNull(mailbox.poll());
+		Assert.assertTrue(mailbox.isEmpty());
+	}
+
+	@Test
+	public void testDropNewest() {
+		BoundedMailbox<Integer> mailbox = fill(OverflowPolicy.DROP_NEWEST);
+		Assert.assertFalse(mailbox.offer(3));
+		assertContents(mailbox, 0, 1, 2);
+		Assert.assertEquals(1, mailbox.getDroppedCount());
+	}
+
+	@Test
+	public void testDropOldest() {
+		BoundedMailbox<Integer> mailbox = fill(OverflowPolicy.DROP_OLDEST);
+		Assert.assertTrue(mailbox.offer(3));
+		Assert.assertTrue(mailbox.offer(4));
+		assertContents(mailbox, 2, 3, 4);
+		Assert.assertEquals(2, mailbox.getDroppedCount());
+	}
+
+	@Test
+	public void testConflate() {
+		BoundedMailbox<Integer> mailbox = fill(OverflowPolicy.CONFLATE);
+		Assert.assertTrue(mailbox.offer(3));
+		Assert.assertTrue(mailbox.offer(4));
+		assertContents(mailbox, 0, 1, 4);
+		Assert.assertEquals(2, mailbox.getDroppedCount());
+	}
+
+	@Test
+	public void testLatest() {
+		// Conflates on the tens
+		ConflatingMailbox<Integer> mailbox = new ConflatingMailbox<>(message -> message / 10);
+		Assert.assertTrue(mailbox.offer(10));
+		Assert.assertTrue(mailbox.offer(20));
+		Assert.assertTrue(mailbox.offer(11));
+		Assert.assertTrue(mailbox.offer(12));
+		Assert.assertTrue(mailbox.offer(30));
+		Assert.assertTrue(mailbox.offer(21));
+		Assert.assertEquals(3, mailbox.size());
+		assertContents(mailbox, 12, 21, 30);
+		Assert.assertEquals(3, mailbox.getDroppedCount());
+
+		// No longer pending, so not conflated
+		Assert.assertTrue(mailbox.offer(13));
+		assertContents(mailbox, 13);
+	}
+
+	@Test
+	public void testDeadline() {
+		DeadlineMailbox<Object> mailbox = new DeadlineMailbox<>();
+		long now = System.nanoTime();
+		Assert.assertTrue(mailbox.offer("first"));
+		Assert.assertTrue(mailbox.offer(new DeadlineMessage<>("late", now + 2000)));
+		Assert.assertTrue(mailbox.offer("second"));
+		Assert.assertTrue(mailbox.offer(new DeadlineMessage<>("early", now + 1000)));
+		Assert.assertTrue(mailbox.offer(new DeadlineMessage<>("alsoLate", now + 2000)));
+		Assert.assertEquals(5, mailbox.size());
+		Assert.assertEquals(now + 1000, mailbox.getEarliestDeadline());
+		Assert.assertEquals("early", ((DeadlineMessage<?>) mailbox.poll()).getMessage());
+		Assert.assertEquals("late", ((DeadlineMessage<?>) mailbox.poll()).getMessage());
+		Assert.assertEquals("alsoLate", ((DeadlineMessage<?>) mailbox.poll()).getMessage());
+		Assert.assertEquals(Deadlined.NO_DEADLINE, mailbox.getEarliestDeadline());
+		assertContents(mailbox, "first", "second");
+	}
+
+	@Test
+	public void testDeadlineWorkQueue() {
+		DeadlineWorkQueue queue = new DeadlineWorkQueue();
+		Runnable first = () -> {
+		};
+		Runnable second = () -> {
+		};
+		Runnable third = () -> {
+		};
+		queue.offer(first);
+		queue.offer(second);
+		queue.offer(first);
+		queue.offer(third);
+		Assert.assertEquals(4, queue.size());
+		// Only the oldest entry of a task queued twice is moved ahead
+		Assert.assertTrue(queue.expedite(first, System.nanoTime()));
+		Assert.assertTrue(queue.expedite(third, System.nanoTime()));
+		Assert.assertFalse(queue.expedite(third, System.nanoTime()));
+		Assert.assertEquals(4, queue.size());
+		Assert.assertTrue(queue.remove(second));
+		Assert.assertFalse(queue.remove(second));
+		Assert.assertTrue(first == queue.poll());
+		Assert.assertTrue(third == queue.peek());
+		Assert.assertTrue(third == queue.poll());
+		Assert.assertTrue(first == queue.poll());
+		Assert.assertNull(queue.poll());
+		Assert.assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testValidate() throws ConfigurationException {
+		MailboxFactory.validate(null, MailboxFactory.MAILBOX_LINKED);
+		Configuration configuration = ConfigurationFactory.createEmptyConfiguration();
+		configuration.setString(MailboxFactory.CONFIGURATION_KEY_MAILBOX, MailboxFactory.MAILBOX_RING);
+		configuration.setInteger(MailboxFactory.CONFIGURATION_KEY_CAPACITY, 16);
+		MailboxFactory.validate(configuration, MailboxFactory.MAILBOX_LINKED);
+
+		configuration.setString(MailboxFactory.CONFIGURATION_KEY_OVERFLOW_POLICY, OverflowPolicy.DROP_OLDEST.getName());
+		assertInvalid(configuration);
+		configuration.setString(MailboxFactory.CONFIGURATION_KEY_OVERFLOW_POLICY, "unknown");
+		assertInvalid(configuration);
+		configuration.setString(MailboxFactory.CONFIGURATION_KEY_OVERFLOW_POLICY, OverflowPolicy.BLOCK.getName());
+		configuration.setInteger(MailboxFactory.CONFIGURATION_KEY_CAPACITY, 0);
+		assertInvalid(configuration);
+		configuration.setInteger(MailboxFactory.CONFIGURATION_KEY_CAPACITY, 16);
+		configuration.setString(MailboxFactory.CONFIGURATION_KEY_MAILBOX, "unknown");
+		assertInvalid(configuration);
+		// Deadline mailboxes are unbounded
+		configuration.setString(MailboxFactory.CONFIGURATION_KEY_MAILBOX, MailboxFactory.MAILBOX_DEADLINE);
+		assertInvalid(configuration);
+		Configuration deadline = ConfigurationFactory.createEmptyConfiguration();
+		deadline.setString(MailboxFactory.CONFIGURATION_KEY_MAILBOX, MailboxFactory.MAILBOX_DEADLINE);
+		MailboxFactory.validate(deadline, MailboxFactory.MAILBOX_LINKED);
+		deadline.setString(MailboxFactory.CONFIGURATION_KEY_OVERFLOW_POLICY, OverflowPolicy.DROP_OLDEST.getName());
+		assertInvalid(deadline);
+	}
+
+	private static void assertInvalid(Configuration configuration) {
+		try {
+			MailboxFactory.validate(configuration, MailboxFactory.MAILBOX_LINKED);
+			Assert.fail("Expected the configuration to be rejected");
+		} catch (ConfigurationException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testBlock() throws InterruptedException {
+		BoundedMailbox<Integer> mailbox = fill(OverflowPolicy.BLOCK);
+		// Times out
+		Assert.assertFalse(mailbox.offer(3));
+		Assert.assertEquals(1, mailbox.getDroppedCount());
+
+		Thread consumer = new Thread(() -> {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				// Don't care
+			}
+			mailbox.poll();
+		});
+		consumer.start();
+		// Gets room once the consumer polls
+		Assert.assertTrue(mailbox.offer(3));
+		consumer.join();
+		assertContents(mailbox, 1, 2, 3);
+		Assert.assertEquals(1, mailbox.getDroppedCount());
+	}
+
+	@Test
+	public void testLinkedMultipleProducers() throws InterruptedException {
+		runMultipleProducers(new LinkedMailbox<>());
+	}
+
+	@Test
+	public void testRingBufferMultipleProducers() throws InterruptedException {
+		runMultipleProducers(new RingBufferMailbox<>(64));
+	}
+
+	private BoundedMailbox<Integer> fill(OverflowPolicy policy) {
+		BoundedMailbox<Integer> mailbox = new BoundedMailbox<>(3, policy, BLOCK_TIMEOUT);
+		for (int i = 0; i < 3; i++) {
+			Assert.assertTrue(mailbox.offer(i));
+		}
+		Assert.assertEquals(3, mailbox.size());
+		return mailbox;
+	}
+
+	private void assertContents(Mailbox<?> mailbox, Object... expected) {
+		for (Object message : expected) {
+			Assert.assertEquals(message, mailbox.poll());
+		}
+		Assert.assertTrue(mailbox.isEmpty());
+	}
+
+	private void runMultipleProducers(Mailbox<long[]> mailbox) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> producers = new ArrayList<>();
+		for (int p = 0; p < PRODUCERS; p++) {
+			final int producer = p;
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < MESSAGES_PER_PRODUCER; i++) {
+					long[] message = new long[] { producer, i };
+					while (!mailbox.offer(message)) {
+						Thread.yield();
+					}
+				}
+			});
+			thread.start();
+			producers.add(thread);
+		}
+		start.countDown();
+
+		long[] expected = new long[PRODUCERS];
+		int received = 0;
+		while (received < PRODUCERS * MESSAGES_PER_PRODUCER) {
+			long[] message = mailbox.poll();
+			if (message == null) {
+				Thread.yield();
+				continue;
+			}
+			// Messages from one producer must arrive in the order sent
+			Assert.assertEquals(expected[(int) message[0]]++, message[1]);
+			received++;
+		}
+		for (Thread thread : producers) {
+			thread.join();
+		}
+		Assert.assertTrue(mailbox.isEmpty());
+		Assert.assertNull(mailbox.poll());
+	}
+}
@@ -19,27 +19,18 @@
 
 package com.robo4j.units.lego;
 
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-
+import com.robo4j.core.BlockingTrait;
 import com.robo4j.core.ConfigurationException;
 import com.robo4j.core.LifecycleState;
 import com.robo4j.core.RoboContext;
 import com.robo4j.core.RoboUnit;
-import com.robo4j.core.concurrency.RoboThreadFactory;
 import com.robo4j.core.configuration.Configuration;
-import com.robo4j.core.logging.SimpleLoggingUtil;
 import com.robo4j.hw.lego.ILegoSensor;
 import com.robo4j.hw.lego.enums.DigitalPortEnum;
 import com.robo4j.hw.lego.enums.SensorTypeEnum;
 import com.robo4j.hw.lego.provider.SensorProvider;
 import com.robo4j.hw.lego.wrapper.SensorWrapper;
 import com.robo4j.units.lego.sensor.LegoSensorMessage;
-import com.robo4j.units.lego.utils.LegoUtils;
 
 /**
  * @author Marcus Hirt (@hirt)
@@ -47,45 +38,36 @@ import com.robo4j.units.lego.utils.LegoUtils;
  * @since 04.02.2017
  */
 //TODO miro -> continue here
+@BlockingTrait
 public class BasicSonicUnit extends RoboUnit<LegoSensorMessage> {
 
-	private final ExecutorService executor = new ThreadPoolExecutor(LegoUtils.DEFAULT_THREAD_POOL_SIZE,
-			LegoUtils.DEFAULT_THREAD_POOL_SIZE, LegoUtils.KEEP_ALIVE_TIME, TimeUnit.SECONDS,
-			new LinkedBlockingQueue<>(), new RoboThreadFactory("Robo4J Lego BasicSensor ", true));
 	private String target;
+	private String topic;
 	protected ILegoSensor sensor;
 
 	public BasicSonicUnit(RoboContext context, String id) {
 		super(LegoSensorMessage.class, context, id);
 	}
 
+	/**
+	 * Reads the sensor and forwards the result. The unit is a
+	 * {@link BlockingTrait} unit, so this already runs on the blocking
+	 * executor, and the sensor is read right away.
+	 */
 	@Override
 	public void onMessage(LegoSensorMessage message) {
-
-		final Future<String> future = executor.submit(() -> sensor.getData());
-		String result;
-		try {
-			result = future.get();
-		} catch (InterruptedException | ExecutionException e) {
-			SimpleLoggingUtil.error(getClass(), "onMessage", e);
-			result = "";
+		String result = sensor.getData();
+		if (topic != null) {
+			getContext().<String> getTopic(topic).publish(result);
+		} else {
+			getContext().getReference(target).sendMessage(result);
 		}
-		getContext().getReference(target).sendMessage(result);
 	}
 
 	@Override
 	public void shutdown() {
 		setState(LifecycleState.SHUTTING_DOWN);
 		sensor.close();
-		try {
-			executor.awaitTermination(LegoUtils.TERMINATION_TIMEOUT, TimeUnit.SECONDS);
-			executor.shutdown();
-		} catch (InterruptedException e) {
-			SimpleLoggingUtil.error(getClass(), "termination failed");
-		}
-		if (executor.isShutdown()) {
-			SimpleLoggingUtil.debug(getClass(), "executor is down");
-		}
 		setState(LifecycleState.SHUTDOWN);
 	}
 
@@ -93,7 +75,9 @@ public class BasicSonicUnit extends RoboUnit<LegoSensorMessage> {
 	protected void onInitialization(Configuration configuration) throws ConfigurationException {
 		setState(LifecycleState.UNINITIALIZED);
 		target = configuration.getString("target", null);
-		if (target == null) {
+		// Publishing on a topic, for several consumers, replaces the target
+		topic = configuration.getString("topic", null);
+		if (target == null && topic == null) {
 			throw ConfigurationException.createMissingConfigNameException("target");
 		}
 
@@ -104,5 +88,4 @@ public class BasicSonicUnit extends RoboUnit<LegoSensorMessage> {
 
 		setState(LifecycleState.INITIALIZED);
 	}
-
 }
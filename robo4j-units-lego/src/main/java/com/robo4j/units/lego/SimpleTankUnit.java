@@ -19,20 +19,15 @@
 
 package com.robo4j.units.lego;
 
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.robo4j.core.BlockingTrait;
 import com.robo4j.core.ConfigurationException;
 import com.robo4j.core.LifecycleState;
 import com.robo4j.core.RoboContext;
 import com.robo4j.core.RoboReference;
-import com.robo4j.core.RoboResult;
 import com.robo4j.core.RoboUnit;
-import com.robo4j.core.concurrency.RoboThreadFactory;
+import com.robo4j.core.concurrency.MailboxFactory;
 import com.robo4j.core.configuration.Configuration;
 import com.robo4j.core.logging.SimpleLoggingUtil;
 import com.robo4j.hw.lego.ILegoMotor;
@@ -40,6 +35,7 @@ import com.robo4j.hw.lego.enums.AnalogPortEnum;
 import com.robo4j.hw.lego.enums.MotorTypeEnum;
 import com.robo4j.hw.lego.provider.MotorProvider;
 import com.robo4j.hw.lego.wrapper.MotorWrapper;
+import com.robo4j.units.lego.enums.LegoPlatformMessageTypeEnum;
 import com.robo4j.units.lego.platform.LegoPlatformMessage;
 import com.robo4j.units.lego.platform.MotorRotationEnum;
 import com.robo4j.units.lego.utils.LegoUtils;
@@ -51,29 +47,56 @@ import com.robo4j.units.lego.utils.LegoUtils;
  * @author Miro Wengner (@miragemiko)
  * @since 30.01.2017
  */
+@BlockingTrait
 public class SimpleTankUnit extends RoboUnit<LegoPlatformMessage> implements RoboReference<LegoPlatformMessage> {
 
 	/* test visible  */
 	protected volatile ILegoMotor rightMotor;
 	protected volatile ILegoMotor leftMotor;
-	private ExecutorService executor = new ThreadPoolExecutor(LegoUtils.DEFAULT_THREAD_POOL_SIZE, LegoUtils.DEFAULT_THREAD_POOL_SIZE,
-			LegoUtils.KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
-			new RoboThreadFactory("Robo4J Lego Platform ", true));
+	private final AtomicLong barriers = new AtomicLong();
 
 	public SimpleTankUnit(RoboContext context, String id) {
 		super(LegoPlatformMessage.class, context, id);
 	}
 
 	/**
+	 * Executes the platform command, and, if the message was sent with
+	 * {@link #ask(java.util.function.Function, Class, long, java.util.concurrent.TimeUnit)},
+	 * replies with whether the motors are moving.
 	 *
 	 * @param message
 	 *            the message received by this unit.
-	 *
-	 * @return result
 	 */
 	@Override
 	public void onMessage(LegoPlatformMessage message) {
-		processPlatformMessage(message);
+		Boolean moving = processPlatformMessage(message);
+		if (isReplyReference(message.getSource())) {
+			reply(message.getSource(), moving);
+		}
+	}
+
+	/**
+	 * Every platform command drives both engines, so only the latest pending
+	 * command needs to be executed.
+	 */
+	@Override
+	protected String getDefaultMailboxType() {
+		return MailboxFactory.MAILBOX_LATEST;
+	}
+
+	/**
+	 * A stop, or a command someone waits for a reply to, is never conflated,
+	 * and separates the commands sent before it from the ones sent after it,
+	 * so that a later command can neither replace it, nor be executed before
+	 * it.
+	 */
+	@Override
+	protected Object getConflationKey(LegoPlatformMessage message) {
+		if (message.getType() == LegoPlatformMessageTypeEnum.STOP || isReplyReference(message.getSource())) {
+			barriers.incrementAndGet();
+			return new Object();
+		}
+		return barriers.get();
 	}
 
 	@Override
@@ -81,15 +104,6 @@ public class SimpleTankUnit extends RoboUnit<LegoPlatformMessage> implements Rob
 		setState(LifecycleState.SHUTTING_DOWN);
 		rightMotor.close();
 		leftMotor.close();
-		try {
-			executor.awaitTermination(LegoUtils.TERMINATION_TIMEOUT, TimeUnit.SECONDS);
-			executor.shutdown();
-		} catch (InterruptedException e) {
-			SimpleLoggingUtil.error(getClass(), "termination failed");
-		}
-		if (executor.isShutdown()) {
-			SimpleLoggingUtil.debug(getClass(), "executor is down");
-		}
 		setState(LifecycleState.SHUTDOWN);
 	}
 
@@ -118,85 +132,66 @@ public class SimpleTankUnit extends RoboUnit<LegoPlatformMessage> implements Rob
 	}
 
 	// Private Methods
-	private RoboResult<LegoPlatformMessage, Boolean> processPlatformMessage(LegoPlatformMessage message) {
+	private Boolean processPlatformMessage(LegoPlatformMessage message) {
 		switch (message.getType()) {
 		case STOP:
-			return createResult(executeBothEnginesStop(rightMotor, leftMotor));
+			return executeBothEnginesStop(rightMotor, leftMotor);
 		case MOVE:
-			return createResult(executeBothEngines(MotorRotationEnum.FORWARD, rightMotor, leftMotor));
+			return executeBothEngines(MotorRotationEnum.FORWARD, rightMotor, leftMotor);
 		case BACK:
-			return createResult(executeBothEngines(MotorRotationEnum.BACKWARD, rightMotor, leftMotor));
+			return executeBothEngines(MotorRotationEnum.BACKWARD, rightMotor, leftMotor);
 		case LEFT:
-			return createResult(executeTurn(leftMotor, rightMotor));
+			return executeTurn(leftMotor, rightMotor);
 		case RIGHT:
-			return createResult(executeTurn(rightMotor, leftMotor));
+			return executeTurn(rightMotor, leftMotor);
 		default:
 			SimpleLoggingUtil.error(getClass(), message.getType() + " not supported!");
 			throw new LegoUnitException("PLATFORM COMMAND: " + message);
 		}
 	}
 
-	private RoboResult<LegoPlatformMessage, Boolean> createResult(boolean result) {
-		return new RoboResult<>(this, result);
-	}
-
+	/*
+	 * The unit is drained on the blocking executor, so the motors are driven
+	 * right here, rather than handed to another thread and waited for.
+	 */
 	private boolean executeTurn(ILegoMotor... motors) {
-		ILegoMotor rOne = motors[LegoUtils.DEFAULT_0];
-		ILegoMotor rTwo = motors[LegoUtils.DEFAULT_1];
-		Future<Boolean> first = runEngine(rOne, MotorRotationEnum.BACKWARD);
-		Future<Boolean> second = runEngine(rTwo, MotorRotationEnum.FORWARD);
-		try {
-			return first.get() && second.get();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new LegoUnitException("executeTurnByCycles error: ", e);
-		}
+		boolean first = runEngine(motors[LegoUtils.DEFAULT_0], MotorRotationEnum.BACKWARD);
+		boolean second = runEngine(motors[LegoUtils.DEFAULT_1], MotorRotationEnum.FORWARD);
+		return first && second;
 	}
 
 	private boolean executeBothEngines(MotorRotationEnum rotation, ILegoMotor... motors) {
-		Future<Boolean> motorLeft = runEngine(motors[LegoUtils.DEFAULT_0], rotation);
-		Future<Boolean> motorRight = runEngine(motors[LegoUtils.DEFAULT_1], rotation);
-
-		try {
-			return motorLeft.get() && motorRight.get();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new LegoUnitException("BothEnginesByCycles error: ", e);
-		}
+		boolean motorLeft = runEngine(motors[LegoUtils.DEFAULT_0], rotation);
+		boolean motorRight = runEngine(motors[LegoUtils.DEFAULT_1], rotation);
+		return motorLeft && motorRight;
 	}
 
-	private Future<Boolean> runEngine(ILegoMotor motor, MotorRotationEnum rotation) {
-		return executor.submit(() -> {
-			switch (rotation) {
-			case FORWARD:
-				motor.forward();
-				SimpleLoggingUtil.debug(getClass(), "runEngine FORWARD rotation= " + motor.isMoving());
-				return motor.isMoving();
-			case STOP:
-				motor.stop();
-				return motor.isMoving();
-			case BACKWARD:
-				motor.backward();
-				SimpleLoggingUtil.debug(getClass(), "runEngine BACKWARD rotation= " + motor.isMoving());
-				return motor.isMoving();
-			default:
-				throw new LegoUnitException("no such rotation= " + rotation);
-			}
-		});
+	private boolean runEngine(ILegoMotor motor, MotorRotationEnum rotation) {
+		switch (rotation) {
+		case FORWARD:
+			motor.forward();
+			SimpleLoggingUtil.debug(getClass(), "runEngine FORWARD rotation= " + motor.isMoving());
+			return motor.isMoving();
+		case STOP:
+			motor.stop();
+			return motor.isMoving();
+		case BACKWARD:
+			motor.backward();
+			SimpleLoggingUtil.debug(getClass(), "runEngine BACKWARD rotation= " + motor.isMoving());
+			return motor.isMoving();
+		default:
+			throw new LegoUnitException("no such rotation= " + rotation);
+		}
 	}
 
 	private boolean executeBothEnginesStop(ILegoMotor... motors) {
-		Future<Boolean> motorLeft = executeEngineStop(motors[LegoUtils.DEFAULT_0]);
-		Future<Boolean> motorRight = executeEngineStop(motors[LegoUtils.DEFAULT_1]);
-		try {
-			return motorLeft.get() && motorRight.get();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new LegoUnitException("executeBothEnginesStop error: ", e);
-		}
+		boolean motorLeft = executeEngineStop(motors[LegoUtils.DEFAULT_0]);
+		boolean motorRight = executeEngineStop(motors[LegoUtils.DEFAULT_1]);
+		return motorLeft && motorRight;
 	}
 
-	private Future<Boolean> executeEngineStop(ILegoMotor motor) {
-		return executor.submit(() -> {
-			motor.stop();
-			return motor.isMoving();
-		});
+	private boolean executeEngineStop(ILegoMotor motor) {
+		motor.stop();
+		return motor.isMoving();
 	}
 }
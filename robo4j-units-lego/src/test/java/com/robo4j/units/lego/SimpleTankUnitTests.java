@@ -23,12 +23,18 @@ import com.robo4j.core.DefaultAttributeDescriptor;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.robo4j.core.RoboReference;
 import com.robo4j.core.RoboSystem;
+import com.robo4j.core.concurrency.ConflatingMailbox;
 import com.robo4j.core.configuration.Configuration;
 import com.robo4j.core.configuration.ConfigurationFactory;
+import com.robo4j.units.lego.enums.LegoPlatformMessageTypeEnum;
 import com.robo4j.units.lego.platform.LegoPlatformMessage;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author Marcus Hirt (@hirt)
@@ -59,4 +65,50 @@ public class SimpleTankUnitTests {
 
     }
 
+    @Test
+    public void stopIsNotConflatedTest() {
+        SimpleTankUnitMock tank = new SimpleTankUnitMock(new RoboSystem(), "tank");
+        ConflatingMailbox<LegoPlatformMessage> mailbox = new ConflatingMailbox<>(tank::getConflationKey);
+        mailbox.offer(new LegoPlatformMessage("move"));
+        mailbox.offer(new LegoPlatformMessage("left"));
+        mailbox.offer(new LegoPlatformMessage("stop"));
+        mailbox.offer(new LegoPlatformMessage("move"));
+        mailbox.offer(new LegoPlatformMessage("back"));
+
+        Assert.assertEquals(LegoPlatformMessageTypeEnum.LEFT, mailbox.poll().getType());
+        Assert.assertEquals(LegoPlatformMessageTypeEnum.STOP, mailbox.poll().getType());
+        Assert.assertEquals(LegoPlatformMessageTypeEnum.BACK, mailbox.poll().getType());
+        Assert.assertNull(mailbox.poll());
+
+        // A plain source is conflated like any other command
+        mailbox.offer(new LegoPlatformMessage(tank, LegoPlatformMessageTypeEnum.MOVE));
+        mailbox.offer(new LegoPlatformMessage("back"));
+        Assert.assertEquals(LegoPlatformMessageTypeEnum.BACK, mailbox.poll().getType());
+        Assert.assertNull(mailbox.poll());
+    }
+
+    @Test
+    public void askIsRepliedAndNotConflatedTest() throws Exception {
+        RoboSystem system = new RoboSystem();
+        SimpleTankUnitMock tank = new SimpleTankUnitMock(system, "tank");
+        tank.initialize(ConfigurationFactory.createEmptyConfiguration());
+        system.addUnits(tank);
+        system.start();
+
+        AtomicReference<RoboReference<Boolean>> replyReference = new AtomicReference<>();
+        CompletableFuture<Boolean> reply = tank.ask(replyTo -> {
+            replyReference.set(replyTo);
+            return new LegoPlatformMessage(replyTo, LegoPlatformMessageTypeEnum.MOVE);
+        }, Boolean.class, 1, TimeUnit.SECONDS);
+        Assert.assertTrue(reply.get(1, TimeUnit.SECONDS));
+        system.shutdown();
+
+        // A command someone waits for a reply to is never conflated
+        ConflatingMailbox<LegoPlatformMessage> mailbox = new ConflatingMailbox<>(tank::getConflationKey);
+        mailbox.offer(new LegoPlatformMessage(replyReference.get(), LegoPlatformMessageTypeEnum.MOVE));
+        mailbox.offer(new LegoPlatformMessage("back"));
+        Assert.assertEquals(LegoPlatformMessageTypeEnum.MOVE, mailbox.poll().getType());
+        Assert.assertEquals(LegoPlatformMessageTypeEnum.BACK, mailbox.poll().getType());
+    }
+
 }
@@ -20,9 +20,9 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.concurrent.atomic.AtomicReference;
 
 import com.robo4j.core.AttributeDescriptor;
+import com.robo4j.core.BlockingTrait;
 import com.robo4j.core.ConfigurationException;
 import com.robo4j.core.DefaultAttributeDescriptor;
 import com.robo4j.core.LifecycleState;
@@ -43,16 +43,20 @@ import com.robo4j.units.rpi.I2CRegistry;
  * @author Marcus Hirt (@hirt)
  * @author Miroslav Wengner (@miragemiko)
  */
+@BlockingTrait
 public class AdafruitLcdUnit extends I2CRoboUnit<LcdMessage> {
 	private static final String ATTRIBUTE_NAME_COLOR = "color";
 	private static final String ATTRIBUTE_NAME_TEXT = "text";
 
-	public static Collection<AttributeDescriptor<?>> KNOWN_ATTRIBUTES = Collections.unmodifiableCollection(Arrays
-			.asList(DefaultAttributeDescriptor.create(String.class, ATTRIBUTE_NAME_TEXT),
-					DefaultAttributeDescriptor.create(Color.class, ATTRIBUTE_NAME_COLOR)));
+	private static final AttributeDescriptor<String> DESCRIPTOR_TEXT = DefaultAttributeDescriptor
+			.create(String.class, ATTRIBUTE_NAME_TEXT);
+	private static final AttributeDescriptor<Color> DESCRIPTOR_COLOR = DefaultAttributeDescriptor.create(Color.class,
+			ATTRIBUTE_NAME_COLOR);
+
+	public static Collection<AttributeDescriptor<?>> KNOWN_ATTRIBUTES = Collections
+			.unmodifiableCollection(Arrays.asList(DESCRIPTOR_TEXT, DESCRIPTOR_COLOR));
 
 	private AdafruitLcd lcd;
-	private AtomicReference<String> stringMessage = new AtomicReference<>("");
 
 	public AdafruitLcdUnit(RoboContext context, String id) {
 		super(LcdMessage.class, context, id);
@@ -112,6 +116,7 @@ public class AdafruitLcdUnit extends I2CRoboUnit<LcdMessage> {
 		} catch (IOException e) {
 			throw new ConfigurationException("Could not initialize LCD", e);
 		}
+		publishAttribute(DESCRIPTOR_TEXT, "");
 	}
 
 	@Override
@@ -158,11 +163,12 @@ public class AdafruitLcdUnit extends I2CRoboUnit<LcdMessage> {
 		case SET_TEXT:
 			if (message.getColor() != null) {
 				lcd.setBacklight(message.getColor());
+				publishAttribute(DESCRIPTOR_COLOR, message.getColor());
 			}
 			if (message.getText() != null) {
 				String text = message.getText();
 				lcd.setText(text);
-				stringMessage.set(text);
+				publishAttribute(DESCRIPTOR_TEXT, text);
 			}
 			break;
 		case STOP:
@@ -177,9 +183,8 @@ public class AdafruitLcdUnit extends I2CRoboUnit<LcdMessage> {
 	@SuppressWarnings("unchecked")
 	@Override
 	public <R> R onGetAttribute(AttributeDescriptor<R> attribute) {
-		if (ATTRIBUTE_NAME_TEXT.equals(attribute.getAttributeName())) {
-			return (R) stringMessage.get();
-		} else if (ATTRIBUTE_NAME_COLOR.equals(attribute.getAttributeName())) {
+		// The text is published, the color is read from the LCD until set
+		if (ATTRIBUTE_NAME_COLOR.equals(attribute.getAttributeName())) {
 			try {
 				return (R) lcd.getBacklight();
 			} catch (IOException e) {
@@ -17,6 +17,7 @@
 package com.robo4j.units.rpi.lcd;
 
 import java.io.IOException;
+import java.util.function.Consumer;
 
 import com.robo4j.core.ConfigurationException;
 import com.robo4j.core.LifecycleState;
@@ -42,6 +43,7 @@ public class ButtonUnit extends I2CRoboUnit<Object> {
 	private AdafruitLcd lcd;
 	private ButtonPressedObserver observer;
 	private String target;
+	private String topic;
 	private ButtonListener buttonListener;
 
 	public ButtonUnit(RoboContext context, String id) {
@@ -52,7 +54,9 @@ public class ButtonUnit extends I2CRoboUnit<Object> {
 	protected void onInitialization(Configuration configuration) throws ConfigurationException {
 		super.onInitialization(configuration);
 		target = configuration.getString("target", null);
-		if (target == null) {
+		// Publishing on a topic, for several consumers, replaces the target
+		topic = configuration.getString("topic", null);
+		if (target == null && topic == null) {
 			throw ConfigurationException.createMissingConfigNameException("target");
 		}
 		try {
@@ -65,7 +69,7 @@ public class ButtonUnit extends I2CRoboUnit<Object> {
 
 	@Override
 	public void start() {
-		final RoboReference<AdafruitButtonPlateEnum> targetRef = getContext().getReference(target);
+		final Consumer<AdafruitButtonPlateEnum> buttonConsumer = getButtonConsumer();
 		setState(LifecycleState.STARTING);
 		observer = new ButtonPressedObserver(lcd);
 		buttonListener = (Button button) -> {
@@ -73,19 +77,19 @@ public class ButtonUnit extends I2CRoboUnit<Object> {
 				try {
 					switch (button) {
 					case UP:
-						targetRef.sendMessage(AdafruitButtonPlateEnum.UP);
+						buttonConsumer.accept(AdafruitButtonPlateEnum.UP);
 						break;
 					case DOWN:
-						targetRef.sendMessage(AdafruitButtonPlateEnum.DOWN);
+						buttonConsumer.accept(AdafruitButtonPlateEnum.DOWN);
 						break;
 					case RIGHT:
-						targetRef.sendMessage(AdafruitButtonPlateEnum.LEFT);
+						buttonConsumer.accept(AdafruitButtonPlateEnum.LEFT);
 						break;
 					case LEFT:
-						targetRef.sendMessage(AdafruitButtonPlateEnum.RIGHT);
+						buttonConsumer.accept(AdafruitButtonPlateEnum.RIGHT);
 						break;
 					case SELECT:
-						targetRef.sendMessage(AdafruitButtonPlateEnum.SELECT);
+						buttonConsumer.accept(AdafruitButtonPlateEnum.SELECT);
 						break;
 					default:
 						lcd.clear();
@@ -101,6 +105,14 @@ public class ButtonUnit extends I2CRoboUnit<Object> {
 		setState(LifecycleState.STARTED);
 	}
 
+	private Consumer<AdafruitButtonPlateEnum> getButtonConsumer() {
+		if (topic != null) {
+			return getContext().<AdafruitButtonPlateEnum> getTopic(topic)::publish;
+		}
+		RoboReference<AdafruitButtonPlateEnum> targetRef = getContext().getReference(target);
+		return targetRef::sendMessage;
+	}
+
 	public void stop() {
 		observer.removeButtonListener(buttonListener);
 		observer = null;
@@ -17,6 +17,12 @@
 package com.robo4j.units.rpi.lidarlite;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.robo4j.core.BlockingTrait;
 import com.robo4j.core.ConfigurationException;
 import com.robo4j.core.RoboContext;
 import com.robo4j.core.RoboReference;
@@ -54,15 +60,21 @@ import com.robo4j.units.rpi.lcd.I2CRoboUnit;
  * <ul>
  * target: the target to send completed scans to. Defaults to "scanController".
  * </ul>
+ * <ul>
+ * topic: the topic to publish completed scans on, instead of sending them to
+ * the target. Use when the scans have several consumers.
+ * </ul>
  * </li>
  * 
  * @author Marcus Hirt (@hirt)
  * @author Miroslav Wengner (@miragemiko)
  */
+@BlockingTrait
 public class LaserScanner extends I2CRoboUnit<ScanRequest> {
 	private String pan;
 	private String tilt;
 	private String target;
+	private String topic;
 	private LidarLiteDevice lidar;
 	private volatile boolean currentScanDirection;
 	private float panServoRange;
@@ -97,6 +109,7 @@ public class LaserScanner extends I2CRoboUnit<ScanRequest> {
 		angularOffset = configuration.getFloat("angularOffset", 3.0f);
 		
 		target = configuration.getString("target", "scanController");
+		topic = configuration.getString("topic", null);
 		try {
 			lidar = new LidarLiteDevice(getBus(), getAddress());
 		} catch (IOException e) {
@@ -106,17 +119,38 @@ public class LaserScanner extends I2CRoboUnit<ScanRequest> {
 		}
 	}
 
+	/**
+	 * The servos must be started before the scanner.
+	 */
+	@Override
+	protected Collection<String> getDependencies() {
+		List<String> result = new ArrayList<>(super.getDependencies());
+		if (pan != null && !pan.equals("null")) {
+			result.add(pan);
+		}
+		if (tilt != null && !tilt.equals("null")) {
+			result.add(tilt);
+		}
+		return result;
+	}
+
 	@Override
 	public void onMessage(ScanRequest message) {
 		RoboReference<Long> panServo = getReference(pan);
 		RoboReference<Long> tiltServo = getReference(tilt);
-		RoboReference<ScanResult2D> targetRef = getContext().getReference(target);
+		scheduleScan(message, panServo, tiltServo, getScanConsumer());
+	}
 
-		scheduleScan(message, panServo, tiltServo, targetRef);
+	private Consumer<ScanResult2D> getScanConsumer() {
+		if (topic != null) {
+			return getContext().<ScanResult2D> getTopic(topic)::publish;
+		}
+		RoboReference<ScanResult2D> targetRef = getContext().getReference(target);
+		return targetRef::sendMessage;
 	}
 
 	private void scheduleScan(ScanRequest message, RoboReference<Long> panServo, RoboReference<Long> tiltServo,
-			RoboReference<ScanResult2D> targetRef) {
+			Consumer<ScanResult2D> scanConsumer) {
 		final ScanResultImpl result = new ScanResultImpl();
 		
 		float minimumServoMovementTime = message.getRange() / panAngularSpeed;
@@ -21,9 +21,11 @@ import java.util.Collection;
 import java.util.Collections;
 
 import com.robo4j.core.AttributeDescriptor;
+import com.robo4j.core.BlockingTrait;
 import com.robo4j.core.ConfigurationException;
 import com.robo4j.core.DefaultAttributeDescriptor;
 import com.robo4j.core.RoboContext;
+import com.robo4j.core.concurrency.MailboxFactory;
 import com.robo4j.core.configuration.Configuration;
 import com.robo4j.core.logging.SimpleLoggingUtil;
 import com.robo4j.hw.rpi.i2c.pwm.PWMPCA9685Device;
@@ -38,6 +40,7 @@ import com.robo4j.units.rpi.lcd.I2CRoboUnit;
  * @author Marcus Hirt (@hirt)
  * @author Miroslav Wengner (@miragemiko)
  */
+@BlockingTrait
 public class PCA9685ServoUnit extends I2CRoboUnit<Float> {
 	public static String CONFIGURATION_KEY_CHANNEL = "channel";
 	public static String CONFIGURATION_KEY_TRIM = "trim";
@@ -45,8 +48,11 @@ public class PCA9685ServoUnit extends I2CRoboUnit<Float> {
 	public static String CONFIGURATION_KEY_DUAL_RATE = "dualRate";
 	public static String CONFIGURATION_KEY_EXPO = "expo";
 
+	private static final AttributeDescriptor<Float> DESCRIPTOR_INPUT = DefaultAttributeDescriptor.create(Float.class,
+			"input");
+
 	public static Collection<AttributeDescriptor<?>> KNOWN_ATTRIBUTES = Collections.unmodifiableCollection(
-			Collections.singleton(DefaultAttributeDescriptor.create(Float.class, "input") ));
+			Collections.singleton(DESCRIPTOR_INPUT));
 
 	private Servo servo;
 	private Integer channel;
@@ -100,11 +106,22 @@ public class PCA9685ServoUnit extends I2CRoboUnit<Float> {
 	public void onMessage(Float message) {
 		try {
 			servo.setInput(message);
+			// Readers get the last input without a round trip to the device
+			publishAttribute(DESCRIPTOR_INPUT, message);
 		} catch (IOException e) {
 			SimpleLoggingUtil.error(getClass(), "Could not set servo input", e);
 		}
 	}
 
+	/**
+	 * Only the latest input is of interest to the servo. Inputs arriving
+	 * faster than they can be written to the device replace each other.
+	 */
+	@Override
+	protected String getDefaultMailboxType() {
+		return MailboxFactory.MAILBOX_LATEST;
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
 	protected <R> R onGetAttribute(AttributeDescriptor<R> descriptor) {